@@ -17,6 +17,7 @@ import org.apache.pdfbox.printing.PDFPageable;
 import org.apache.pdfbox.printing.PDFPrintable;
 
 import de.renber.swing.controls.documentview.PageDisplay;
+import de.renber.swing.controls.documentview.predefined.AbstractBufferedPage;
 import de.renber.swing.controls.documentview.predefined.CompoundAdorner;
 import de.renber.swing.controls.documentview.predefined.ContinuousFacingPagePreviewLayout;
 import de.renber.swing.controls.documentview.predefined.ContinuousPagePreviewLayout;
@@ -28,6 +29,7 @@ import de.renber.swing.controls.documentview.predefined.SinglePagePreviewLayout;
 import de.renber.swing.controls.documentview.types.PagePreviewEventListener;
 import de.renber.swing.controls.documentview.types.PageSource;
 import de.renber.swing.controls.documentview.types.PageVisibility;
+import de.renber.swing.controls.documentview.types.caching.PersistentRenderCache;
 import de.renber.swing.demos.pdfviewer.types.PdfPageSource;
 
 import javax.swing.JToolBar;
@@ -152,7 +154,13 @@ public class PdfViewerFrame extends JFrame {
 						try {
 							PDDocument oldDoc = pdfDoc;
 							pdfDoc = PDDocument.load(chooser.getSelectedFile());
-							pageDisplay.setPageSource(new PdfPageSource(pdfDoc));
+							// the hash identifies the renderings of the file in the render cache
+							PdfPageSource pageSource = new PdfPageSource(pdfDoc, PersistentRenderCache.hashFile(chooser.getSelectedFile()));
+							// only render the visible parts of pages at high zoom levels
+							pageSource.setTiledRendering(true);
+							// keep pages without colour in grayscale
+							pageSource.setColorMode(AbstractBufferedPage.ColorMode.AUTO);
+							pageDisplay.setPageSource(pageSource);
 
 							if (oldDoc != null)
 								oldDoc.close();
@@ -353,6 +361,8 @@ public class PdfViewerFrame extends JFrame {
 		pageDisplay.setPageAdorner(new CompoundAdorner(new ShadowPageAdorner(5, Color.BLACK),
 				new PageNumberAdorner(contentPane.getFont(), Color.BLACK)));
 		pageDisplay.setPreviewLayout(new ContinuousFacingPagePreviewLayout());
+		// keep the renderings of opened documents on disk, so that they show up instantly when reopened
+		pageDisplay.setRenderCache(new PersistentRenderCache(PersistentRenderCache.getDefaultDirectory()));
 
 		// event handling
 		pageDisplay.addPagePreviewEventListeners(new PagePreviewEventListener() {
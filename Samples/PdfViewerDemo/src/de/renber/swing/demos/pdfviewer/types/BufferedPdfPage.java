@@ -5,24 +5,24 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.geom.Rectangle2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
-import de.renber.swing.controls.documentview.types.Page;
+import de.renber.swing.controls.documentview.predefined.AbstractBufferedPage;
+import de.renber.swing.controls.documentview.types.GraphicsUtilities;
+import de.renber.swing.controls.documentview.types.RegionRenderablePage;
 
 /**
  * A page implementation which holds an image buffer of its contents
  *
  * @author Ren Bergelt
  */
-public class BufferedPdfPage implements Page {
+public class BufferedPdfPage extends AbstractBufferedPage implements RegionRenderablePage {
 
-	BufferedImage imgBuffer = null;
-	Dimension scaleDimension = new Dimension(0, 0);
 	Dimension pageSize;	
 	Dimension originalPrintSize;
 
@@ -32,40 +32,13 @@ public class BufferedPdfPage implements Page {
 	public static String renderingPlaceholderText = "Rendering page...";  
 
 	@Override
-	public void draw(Graphics2D g, int x, int y, int w, int h) {				
-		if (imgBuffer == null) {
-			Color oldColor = g.getColor();
-
-			g.setColor(Color.WHITE);
-			g.fillRect(x, y, w, h);
-			
-			// print the renderin ghint if there is enough place
-			Rectangle2D stringBounds = g.getFontMetrics().getStringBounds(renderingPlaceholderText, g);			
-			if (stringBounds.getWidth() + 30 < w && stringBounds.getHeight() + 30 < h) {			
-				g.setColor(Color.BLACK);						
-				g.drawString(renderingPlaceholderText, x + 20, y + 20);
-			}
-
-			g.setColor(oldColor);
-		} else {
-			g.drawImage(imgBuffer, x, y, w, h, null);			
-		}
+	protected void drawPlaceholder(Graphics2D g, int x, int y, int w, int h) {
+		GraphicsUtilities.drawPlaceholder(g, renderingPlaceholderText, x, y, w, h);
 	}
 
 	@Override
-	public boolean isScaled(int w, int h) {
-		return scaleDimension.width == w && scaleDimension.height == h;
-	}
-
-	@Override
-	public void hiQualityScale(final int w, final int h) {
-		if (isScaled(w, h))
-			return;
-		
-		scaleDimension.width = w;
-		scaleDimension.height = h;	
-		
-		BufferedImage scaledBuf = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+	protected BufferedImage render(int w, int h) throws IOException {
+		BufferedImage scaledBuf = new BufferedImage(w, h, getImageType());
 		Graphics2D g = null;
 		try {													
 			g = (Graphics2D)scaledBuf.createGraphics();			
@@ -75,16 +48,20 @@ public class BufferedPdfPage implements Page {
 			g.fillRect(0, 0, w, h);			
 			
 			renderer.renderPageToGraphics(pageIndex, g, w / (float)originalPrintSize.width);			
-		} catch (Exception e) {
-			scaledBuf = null;
 		} finally {
 			if (g != null) {
 				g.dispose();
 			}
 		}
-		
-		if (scaledBuf != null)
-			imgBuffer = scaledBuf;		
+		return scaledBuf;
+	}
+
+	@Override
+	public void renderRegion(Graphics2D g, int w, int h, Rectangle region) throws IOException {
+		g.translate(-region.x, -region.y);
+		// the renderer skips what is outside of the clip (see RegionPdfRenderer)
+		g.clipRect(region.x, region.y, region.width, region.height);
+		renderer.renderPageToGraphics(pageIndex, g, w / (float)originalPrintSize.width);
 	}
 
 	public BufferedPdfPage(int pageIndex, PDFRenderer renderer, Dimension pageSize) {
@@ -95,13 +72,6 @@ public class BufferedPdfPage implements Page {
 		originalPrintSize = new Dimension((int)(pageSize.width / 96.0f * 72.0f), (int)(pageSize.height / 96.0f * 72.0f));
 	}
 
-	@Override
-	public void freeResources() {
-		if (imgBuffer != null) {
-			imgBuffer.flush();
-		}
-	}
-
 	@Override
 	public Dimension getPageSize() {
 		return pageSize;
@@ -10,6 +10,9 @@ import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.printing.PDFPageable;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
+import de.renber.swing.controls.documentview.predefined.AbstractBufferedPage;
+import de.renber.swing.controls.documentview.predefined.TiledPage;
+import de.renber.swing.controls.documentview.types.ContentHashedPageSource;
 import de.renber.swing.controls.documentview.types.Page;
 import de.renber.swing.controls.documentview.types.PageSource;
 
@@ -17,7 +20,7 @@ import de.renber.swing.controls.documentview.types.PageSource;
 * Page source which returns the pages of a pdf document
 * @author renber
 */
-public class PdfPageSource implements PageSource {
+public class PdfPageSource implements PageSource, ContentHashedPageSource {
 
    //public static final int DPI = 96;
    static int dpi = java.awt.Toolkit.getDefaultToolkit().getScreenResolution(); 
@@ -25,6 +28,12 @@ public class PdfPageSource implements PageSource {
    PDDocument document;
    Dimension originalPageSize;
    PDFRenderer renderer; 
+   // render large pages in tiles?
+   boolean tiledRendering = false;
+   // hash of the pdf file (null if unknown)
+   String contentHash;
+   // the colour mode of the pages
+   AbstractBufferedPage.ColorMode colorMode = AbstractBufferedPage.ColorMode.COLOR;
 
    /**
     *
@@ -32,8 +41,24 @@ public class PdfPageSource implements PageSource {
     * @param pageSize The page size in pixels
     */
    public PdfPageSource(PDDocument document) {
+       this(document, null);
+   }
+
+   /**
+    * @param document The pdf document to show
+    * @param contentHash hash of the pdf file which identifies its renderings in a render cache
+    * (see PersistentRenderCache.hashFile()), null if the renderings should not be persisted
+    */
+   public PdfPageSource(PDDocument document, String contentHash) {
        this.document = document;              
-       renderer = new PDFRenderer(document);
+       this.contentHash = contentHash;
+       // skips the parts of a page which are outside of a rendered tile
+       renderer = new RegionPdfRenderer(document);
+   }
+
+   @Override
+   public String getContentHash() {
+       return contentHash;
    }
 
    @Override
@@ -59,12 +84,40 @@ public class PdfPageSource implements PageSource {
    @Override
    public Page getPage(int pageIndex) {
        if (pageIndex < getPageCount()) {
-        return new BufferedPdfPage(pageIndex, renderer, getPageSize(pageIndex)); 
+        BufferedPdfPage page = new BufferedPdfPage(pageIndex, renderer, getPageSize(pageIndex));
+        page.setColorMode(colorMode);
+        return tiledRendering ? new TiledPage(page) : page;
        } else {
            return null;
        }
    }
 
+	public boolean getTiledRendering() {
+		return tiledRendering;
+	}
+
+	/**
+	 * Render pages which are displayed at a large size (high zoom levels) in tiles,
+	 * so that only their visible parts are rendered
+	 */
+	public void setTiledRendering(boolean tiledRendering) {
+		this.tiledRendering = tiledRendering;
+	}
+
+	public AbstractBufferedPage.ColorMode getColorMode() {
+		return colorMode;
+	}
+
+	/**
+	 * Set the colour mode in which the pages are rendered, e.g. ColorMode.AUTO to keep
+	 * black and white documents in grayscale (affects pages which are requested afterwards)
+	 */
+	public void setColorMode(AbstractBufferedPage.ColorMode colorMode) {
+		if (colorMode == null)
+			throw new IllegalArgumentException("colorMode");
+		this.colorMode = colorMode;
+	}
+
 	@Override
 	public void freeResources() {
 		try {
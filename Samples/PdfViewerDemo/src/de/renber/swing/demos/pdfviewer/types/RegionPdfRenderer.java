@@ -0,0 +1,79 @@
+package de.renber.swing.demos.pdfviewer.types;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.rendering.PageDrawer;
+import org.apache.pdfbox.rendering.PageDrawerParameters;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+/**
+ * PDFRenderer which skips the images and glyphs of a page which lie outside of the
+ * clip of the target graphics, so that rendering a region of a page (e.g. a tile)
+ * only decodes and rasterizes what is inside of the region
+ *
+ * @author renber
+ */
+public class RegionPdfRenderer extends PDFRenderer {
+
+	public RegionPdfRenderer(PDDocument document) {
+		super(document);
+	}
+
+	@Override
+	protected PageDrawer createPageDrawer(PageDrawerParameters parameters) throws IOException {
+		return new RegionPageDrawer(parameters);
+	}
+
+	/**
+	 * Page drawer which culls images and glyphs against the clip
+	 */
+	static class RegionPageDrawer extends PageDrawer {
+
+		// area around a glyph's em square which its outline may extend into (in ems)
+		static final double GLYPH_MARGIN = 1;
+
+		final Rectangle2D.Double area = new Rectangle2D.Double();
+
+		RegionPageDrawer(PageDrawerParameters parameters) throws IOException {
+			super(parameters);
+		}
+
+		@Override
+		public void drawImage(PDImage pdImage) throws IOException {
+			// images are drawn to the unit square of the current transformation matrix
+			area.setRect(0, 0, 1, 1);
+			if (isOutsideClip(getGraphicsState().getCurrentTransformationMatrix().createAffineTransform()))
+				return;
+			super.drawImage(pdImage);
+		}
+
+		@Override
+		protected void showFontGlyph(Matrix textRenderingMatrix, PDFont font, int code, Vector displacement) throws IOException {
+			// glyphs of clipping text render modes have to be shown to build the clip
+			if (!getGraphicsState().getTextState().getRenderingMode().isClip()) {
+				area.setRect(-GLYPH_MARGIN, -GLYPH_MARGIN, 1 + 2 * GLYPH_MARGIN, 1 + 2 * GLYPH_MARGIN);
+				if (isOutsideClip(textRenderingMatrix.createAffineTransform()))
+					return;
+			}
+			super.showFontGlyph(textRenderingMatrix, font, code, displacement);
+		}
+
+		/**
+		 * Return true if the area transformed by the given transform does not intersect the clip
+		 */
+		private boolean isOutsideClip(AffineTransform at) {
+			Rectangle clip = getGraphics().getClipBounds();
+			if (clip == null)
+				return false;
+			return !at.createTransformedShape(area).getBounds2D().intersects(clip);
+		}
+	}
+}
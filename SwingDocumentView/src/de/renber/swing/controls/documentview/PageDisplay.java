@@ -30,32 +30,55 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 import javax.swing.DefaultBoundedRangeModel;
 import javax.swing.JPanel;
 import javax.swing.JScrollBar;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import de.renber.swing.controls.documentview.predefined.ShadowPageAdorner;
 import de.renber.swing.controls.documentview.predefined.SinglePagePreviewLayout;
+import de.renber.swing.controls.documentview.types.ArrayPageGeometry;
+import de.renber.swing.controls.documentview.types.ContentHashedPageSource;
 import de.renber.swing.controls.documentview.types.Page;
 import de.renber.swing.controls.documentview.types.PageAdorner;
+import de.renber.swing.controls.documentview.types.PageGeometry;
 import de.renber.swing.controls.documentview.types.PagePreviewEventListener;
+import de.renber.swing.controls.documentview.types.PageSizeRunSource;
 import de.renber.swing.controls.documentview.types.PageSource;
 import de.renber.swing.controls.documentview.types.PageVisibility;
+import de.renber.swing.controls.documentview.types.PageVisibilityBuffer;
 import de.renber.swing.controls.documentview.types.PreviewLayout;
+import de.renber.swing.controls.documentview.types.RunLengthPageGeometry;
+import de.renber.swing.controls.documentview.types.caching.CompressedPageCache;
+import de.renber.swing.controls.documentview.types.caching.CompressiblePage;
+import de.renber.swing.controls.documentview.types.caching.PageCache;
+import de.renber.swing.controls.documentview.types.caching.PageSpillCache;
+import de.renber.swing.controls.documentview.types.caching.PageStore;
+import de.renber.swing.controls.documentview.types.caching.PersistablePage;
+import de.renber.swing.controls.documentview.types.caching.PersistentRenderCache;
+import de.renber.swing.controls.documentview.types.caching.SpillablePage;
 import de.renber.swing.controls.documentview.types.scaling.PageScaler;
+import de.renber.swing.controls.documentview.types.scaling.ScaleJob;
 import de.renber.swing.controls.documentview.types.scaling.ScalingListener;
 
 /**
@@ -73,8 +96,19 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 	private static float MIN_ZOOM_LEVEL = 0.05f;
 	// the maximum zoom level
 	private static float MAX_ZOOM_LEVEL = 4f;
-	// The pages which already have been loaded
-	List<Page> bufferedPages = new ArrayList<Page>();	
+	// priority of prefetch jobs (added to the distance in view elements
+	// so that they are processed after all visible pages)
+	private static float PREFETCH_PRIORITY = 1000000f;
+	// time span to look ahead when adapting the prefetch count to the scroll velocity
+	private static int PREFETCH_LOOKAHEAD_MS = 250;
+	// scroll events which are further apart do not count as continuous scrolling
+	private static int SCROLL_VELOCITY_TIMEOUT_MS = 250;
+	// interval in which the repaints of finished pages are collected (about one frame)
+	private static int REPAINT_COALESCE_MS = 16;
+	// the number of pages which are kept in memory
+	int pageWorkingSetSize = PageStore.DEFAULT_CAPACITY;
+	// The pages of the page source (which are created on demand)
+	volatile PageStore bufferedPages = createPageStore(null, null, null, null, null);
 	// The current zoom level (0 .. 1 (=100 %) .. max
 	float zoomLevel = 1;
 	// the page source
@@ -82,7 +116,7 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 	// the page layout
 	PreviewLayout layout = new SinglePagePreviewLayout();	
 	// size of the pages @ 100%
-	Dimension[] originalPageSizes = new Dimension[0];	
+	PageGeometry originalPageSizes = new ArrayPageGeometry(new int[0], new int[0]);
 	// the page adorner
 	PageAdorner adorner;
 	// the background color of the view port
@@ -92,19 +126,87 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 	JScrollBar verticalScrollBar;
 	Point scrollPosition = new Point(0, 0);
 	// threaded scaling
-	PageScaler pageScaler = new PageScaler();
+	PageScaler pageScaler = new PageScaler() {
+		@Override
+		protected boolean isStale(ScaleJob job) {
+			// pages which have been recycled must not be rendered again
+			return super.isStale(job) || !bufferedPages.isMaterialized(job.page);
+		}
+	};
+	// memory budget for the rendered pages
+	PageCache pageCache = new PageCache();
+	// second cache tier which keeps released renderings of the current page source compressed in memory
+	CompressedPageCache compressedCache = null;
+	// third cache tier which keeps released renderings of the current page source on disk
+	PageSpillCache spillCache = null;
+	// optional cache which keeps renderings across sessions
+	PersistentRenderCache renderCache = null;
+	// the content hash of the current page source (null if unknown)
+	String contentHash = null;
 	// allow high quality scaling to be used
 	boolean allowHiQualityScale = true;
+	// number of view elements which are rendered in advance in scroll direction
+	int prefetchCount = 2;
+	// upper bound for the prefetch count when scrolling fast
+	int maxPrefetchCount = 10;
+	// direction of the last scroll or page movement (1 = forward, -1 = backward)
+	int scrollDirection = 1;
+	// smoothed vertical scroll velocity (pixels per millisecond)
+	float scrollVelocity = 0;
+	long lastScrollTime = 0;
 	// is repainting allowed?
 	boolean suppressPainting = false;
+	// keep the painted view port in a back buffer and only draw the exposed parts when scrolling
+	volatile boolean scrollBlitting = false;
+	// the view port contents (in device pixels)
+	BufferedImage backBuffer;
+	// the state the back buffer has been painted with
+	Point backBufferScrollPosition = new Point(0, 0);
+	float backBufferZoomLevel;
+	PreviewLayout backBufferLayout;
+	double backBufferScaleX = 1;
+	double backBufferScaleY = 1;
+	// the device the scale of the back buffer has been determined for
+	GraphicsConfiguration deviceConfiguration;
+	double deviceScaleX = 1;
+	double deviceScaleY = 1;
+	// the area of the back buffer which has to be painted again (guarded by itself,
+	// repaints are requested from any thread) and whether there is such an area
+	final Rectangle dirtyRegion = new Rectangle();
+	boolean dirty = false;
+	// the dirty area taken over by the current paint
+	final Rectangle paintDirtyRegion = new Rectangle();
+	// indices of the pages whose rendering changed since the last coalesced repaint
+	// (guarded by itself)
+	final BitSet pendingPageRepaints = new BitSet();
+	// repaints the pages in pendingPageRepaints once per frame interval
+	final Timer pageRepaintTimer;
+	// buffers which are reused by every paint (painting only happens on the EDT)
+	final Dimension paintArea = new Dimension();
+	final Rectangle paintViewPort = new Rectangle();
+	final PageVisibilityBuffer paintVisiblePages = new PageVisibilityBuffer();
+	final List<Page> paintPinnedPages = new ArrayList<Page>();
+	final Rectangle[] exposedRegions = { new Rectangle(), new Rectangle(), new Rectangle() };
+	// the visible pages of the last paint (scrolling only outdates the scheduled jobs when they change)
+	int[] scheduledPages = new int[16];
+	int scheduledPageCount = 0;
 	// registered event listeners
 	List<PagePreviewEventListener> pagePreviewEventListeners = new ArrayList<PagePreviewEventListener>();
 
 	public PageDisplay() {
 		
+		pageRepaintTimer = new Timer(REPAINT_COALESCE_MS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				repaintPendingPages();
+			}
+		});
+		pageRepaintTimer.setRepeats(false);
+		
 		this.addComponentListener(new ComponentAdapter() {
 			@Override
 			public void componentResized(ComponentEvent e) {
+				pageScaler.advanceGeneration();
 				updateScrollBars();
 				repaint();
 			}
@@ -215,39 +317,304 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 
 		Graphics2D g = (Graphics2D) gr;
 
-		g.setColor(backgroundColor);
-		g.fillRect(0, 0, getWidth(), getHeight());
+		Dimension d = paintArea;
+		d.setSize(getWidth() - verticalScrollBar.getWidth(), getHeight() - horizontalScrollBar.getHeight());
+		int w = d.width;
+		int h = d.height;
+		paintViewPort.setBounds(0, 0, w, h);
+
+		if (pageSource == null || layout == null || !scrollBlitting || w <= 0 || h <= 0) {
+			g.setColor(backgroundColor);
+			g.fillRect(0, 0, getWidth(), getHeight());
+		}
 
 		if (pageSource == null) {
 			// no pages to draw
 			return;
 		}
 
-		Dimension d = getPaintArea();
-		int w = d.width;
-		int h = d.height;
-
 		if (layout != null) {
+			// draw first: pages may learn which of their parts are visible (see TiledPage)
+			if (scrollBlitting && w > 0 && h > 0) {
+				paintBackBuffer(g, w, h);
+			} else {
+				layout.draw(g, backgroundColor, paintViewPort, zoomLevel, originalPageSizes, scrollPosition, bufferedPages, adorner);
+			}
+
+			PageVisibilityBuffer pages = paintVisiblePages;
+			layout.getVisiblePages(d, zoomLevel, originalPageSizes, scrollPosition, pages);
+			
+			// the visible pages must stay in memory
+			List<Page> visiblePages = paintPinnedPages;
+			visiblePages.clear();
+			for (int i = 0; i < pages.size(); i++) {
+				visiblePages.add(bufferedPages.get(pages.getPageIndex(i)));
+			}
+			bufferedPages.setPinnedPages(visiblePages);
+			pageCache.setPinnedPages(visiblePages);
+
 			// page scaling
 			if (allowHiQualityScale) {
-				Dimension[] requestedPageSizes = layout.getPageSizes(zoomLevel, originalPageSizes);
-				List<PageVisibility> pages = new ArrayList<PageVisibility>(layout.getVisiblePages(new Dimension(w, h), zoomLevel, originalPageSizes, scrollPosition, bufferedPages));
-				
-				// scale the first unscaled page with high priority
-				boolean highPriorityScale = true;
+				if (updateScheduledPages(pages))
+					pageScaler.advanceGeneration();
+				PageGeometry requestedPageSizes = layout.getPageSizes(zoomLevel, originalPageSizes);
 				
-				for (PageVisibility pv: pages) {
-					int pageIndex = pv.getPageIndex();
-					Page p = bufferedPages.get(pageIndex);															
-					if (!p.isScaled(requestedPageSizes[pageIndex].width, requestedPageSizes[pageIndex].height)) {
-						scalePage(p, requestedPageSizes[pageIndex].width, requestedPageSizes[pageIndex].height, highPriorityScale);
-						highPriorityScale = false;
+				// pages in the center of the view port are scaled first
+				for (int i = 0; i < pages.size(); i++) {
+					int pageIndex = pages.getPageIndex(i);
+					Page p = visiblePages.get(i);
+					if (!p.isScaled(requestedPageSizes.getWidth(pageIndex), requestedPageSizes.getHeight(pageIndex))) {
+						Rectangle bounds = layout.getPageBounds(d, zoomLevel, originalPageSizes, scrollPosition, pageIndex);
+						double distance = bounds == null ? 0 : Point.distance(bounds.getCenterX(), bounds.getCenterY(), w / 2.0, h / 2.0);
+						scalePage(p, requestedPageSizes.getWidth(pageIndex), requestedPageSizes.getHeight(pageIndex), PageScaler.getPriority(distance, pages.getVisiblePercentage(i)));
 					}
 				}
+				
+				prefetchPages(pages, requestedPageSizes);
+				
+				// drop the jobs which are not needed for the current view anymore
+				pageScaler.cancelStaleJobs();
 			}
+		}
+	}
 
-			layout.draw(g, backgroundColor, new Rectangle(0, 0, w, h), zoomLevel, originalPageSizes, scrollPosition, bufferedPages, adorner);
+	/**
+	 * Remembers the given visible pages
+	 * @return true if they differ from the visible pages of the last call
+	 */
+	private boolean updateScheduledPages(PageVisibilityBuffer pages) {
+		int count = pages.size();
+		boolean changed = count != scheduledPageCount;
+		for (int i = 0; i < count && !changed; i++) {
+			int pageIndex = pages.getPageIndex(i);
+			changed = true;
+			for (int j = 0; j < scheduledPageCount; j++) {
+				if (scheduledPages[j] == pageIndex) {
+					changed = false;
+					break;
+				}
+			}
+		}
+		if (changed) {
+			if (scheduledPages.length < count)
+				scheduledPages = new int[count * 2];
+			for (int i = 0; i < count; i++) {
+				scheduledPages[i] = pages.getPageIndex(i);
+			}
+			scheduledPageCount = count;
+		}
+		return changed;
+	}
+
+	/**
+	 * Brings the back buffer up to date and draws it to the given graphics.
+	 * When only the scroll position changed since the last paint the buffered
+	 * pixels are shifted and only the exposed strips are drawn by the layout
+	 * 
+	 * @param w the width of the view port
+	 * @param h the height of the view port
+	 */
+	private void paintBackBuffer(Graphics2D g, int w, int h) {
+		// the buffer holds device pixels (the graphics may be scaled on HiDPI screens),
+		// the scale is only queried when the device changes since getting a transform allocates
+		GraphicsConfiguration gc = g.getDeviceConfiguration();
+		if (gc != deviceConfiguration) {
+			AffineTransform tx = gc.getDefaultTransform();
+			deviceScaleX = tx.getScaleX();
+			deviceScaleY = tx.getScaleY();
+			deviceConfiguration = gc;
+		}
+		double sx = deviceScaleX;
+		double sy = deviceScaleY;
+		int bw = (int) Math.ceil(w * sx);
+		int bh = (int) Math.ceil(h * sy);
+		Rectangle viewPort = paintViewPort;
+
+		// take over the repaints which have been requested so far
+		Rectangle dirtyArea = paintDirtyRegion;
+		boolean hasDirtyArea;
+		synchronized (dirtyRegion) {
+			hasDirtyArea = dirty;
+			if (dirty)
+				dirtyArea.setBounds(dirtyRegion);
+			dirty = false;
+		}
+
+		if (backBuffer == null || backBuffer.getWidth() != bw || backBuffer.getHeight() != bh) {
+			backBuffer = g.getDeviceConfiguration().createCompatibleImage(bw, bh);
+			dirtyArea.setBounds(viewPort);
+			hasDirtyArea = true;
+		}
+		if (backBufferZoomLevel != zoomLevel || backBufferLayout != layout || backBufferScaleX != sx || backBufferScaleY != sy) {
+			dirtyArea.setBounds(viewPort);
+			hasDirtyArea = true;
+		}
+
+		Rectangle[] exposed = exposedRegions;
+		int exposedCount = 0;
+		int dx = scrollPosition.x - backBufferScrollPosition.x;
+		int dy = scrollPosition.y - backBufferScrollPosition.y;
+		if ((dx != 0 || dy != 0) && !(hasDirtyArea && viewPort.equals(dirtyArea))) {
+			double ddx = dx * sx;
+			double ddy = dy * sy;
+			if (Math.abs(dx) < w && Math.abs(dy) < h && ddx == Math.rint(ddx) && ddy == Math.rint(ddy)) {
+				// shift the pixels which stay visible
+				Graphics2D bg = backBuffer.createGraphics();
+				bg.copyArea(0, 0, bw, bh, (int) -ddx, (int) -ddy);
+				bg.dispose();
+				// pending repaints have been shifted along with the pixels
+				if (hasDirtyArea)
+					dirtyArea.translate(-dx, -dy);
+
+				if (dy > 0)
+					exposed[exposedCount++].setBounds(0, h - dy, w, dy);
+				else if (dy < 0)
+					exposed[exposedCount++].setBounds(0, 0, w, -dy);
+				if (dx > 0)
+					exposed[exposedCount++].setBounds(w - dx, 0, dx, h);
+				else if (dx < 0)
+					exposed[exposedCount++].setBounds(0, 0, -dx, h);
+			} else {
+				dirtyArea.setBounds(viewPort);
+				hasDirtyArea = true;
+			}
+		}
+		if (hasDirtyArea) {
+			Rectangle.intersect(dirtyArea, viewPort, exposed[exposedCount++]);
+		}
+
+		if (exposedCount > 0) {
+			Graphics2D bg = backBuffer.createGraphics();
+			bg.setRenderingHints(g.getRenderingHints());
+			bg.scale(sx, sy);
+			for (int i = 0; i < exposedCount; i++) {
+				Rectangle r = exposed[i];
+				if (r.isEmpty())
+					continue;
+				bg.setClip(r);
+				bg.setColor(backgroundColor);
+				bg.fillRect(r.x, r.y, r.width, r.height);
+				layout.draw(bg, backgroundColor, viewPort, zoomLevel, originalPageSizes, scrollPosition, bufferedPages, adorner);
+			}
+			bg.dispose();
 		}
+
+		backBufferScrollPosition.setLocation(scrollPosition);
+		backBufferZoomLevel = zoomLevel;
+		backBufferLayout = layout;
+		backBufferScaleX = sx;
+		backBufferScaleY = sy;
+
+		g.drawImage(backBuffer, 0, 0, w, h, null);
+	}
+
+	/**
+	 * Every repaint request which is not caused by scrolling invalidates
+	 * the requested area of the back buffer (may be called from any thread)
+	 */
+	@Override
+	public void repaint(long tm, int x, int y, int width, int height) {
+		// the field is not initialized yet when the super constructor repaints
+		if (scrollBlitting && dirtyRegion != null) {
+			synchronized (dirtyRegion) {
+				if (dirty) {
+					dirtyRegion.add(x, y);
+					dirtyRegion.add(x + width, y + height);
+				} else {
+					dirtyRegion.setBounds(x, y, width, height);
+					dirty = true;
+				}
+			}
+		}
+		super.repaint(tm, x, y, width, height);
+	}
+
+	/**
+	 * Repaint the view port after the scroll position changed
+	 * (the back buffer contents are reused)
+	 */
+	private void repaintScrolled() {
+		super.repaint(0, 0, 0, getWidth(), getHeight());
+	}
+
+	/**
+	 * Schedules the pages of the next view elements in scroll direction
+	 * with low priority, so that they are already rendered when they scroll into view
+	 * 
+	 * @param visiblePages the currently visible pages
+	 * @param requestedPageSizes the page sizes at the current zoom level
+	 */
+	private void prefetchPages(PageVisibilityBuffer visiblePages, PageGeometry requestedPageSizes) {
+		if (visiblePages.isEmpty())
+			return;
+
+		// start at the outermost visible page in scroll direction
+		int pageIndex = visiblePages.getPageIndex(0);
+		for (int i = 1; i < visiblePages.size(); i++) {
+			int index = visiblePages.getPageIndex(i);
+			if (scrollDirection > 0 ? index > pageIndex : index < pageIndex)
+				pageIndex = index;
+		}
+
+		int count = getEffectivePrefetchCount(requestedPageSizes.getHeight(pageIndex));
+		int pageCount = bufferedPages.size();
+
+		for (int i = 1; i <= count; i++) {
+			// the first page of the next view element in scroll direction
+			int elementStart = scrollDirection > 0 ? layout.getPageIndexOfNextViewElement(pageIndex) : layout.getPageIndexOfPreviousViewElement(pageIndex);
+			if (elementStart < 0 || elementStart >= pageCount || (scrollDirection > 0 ? elementStart <= pageIndex : elementStart >= pageIndex))
+				break;
+
+			// schedule all pages of this view element (but never touch the visible ones)
+			int elementEnd = Math.min(pageCount, layout.getPageIndexOfNextViewElement(elementStart));
+			if (scrollDirection < 0)
+				elementEnd = Math.min(elementEnd, pageIndex);
+			for (int p = elementStart; p < Math.max(elementEnd, elementStart + 1); p++) {
+				Page page = bufferedPages.get(p);
+				if (!page.isScaled(requestedPageSizes.getWidth(p), requestedPageSizes.getHeight(p))) {
+					scalePage(page, requestedPageSizes.getWidth(p), requestedPageSizes.getHeight(p), PREFETCH_PRIORITY + i);
+				}
+			}
+
+			pageIndex = elementStart;
+		}
+	}
+
+	/**
+	 * Return the number of view elements to prefetch, which grows with the scroll velocity
+	 * @param pageHeight the height of a page at the current zoom level
+	 */
+	private int getEffectivePrefetchCount(int pageHeight) {
+		if (prefetchCount <= 0)
+			return 0;
+
+		int count = prefetchCount;
+		if (System.currentTimeMillis() - lastScrollTime < SCROLL_VELOCITY_TIMEOUT_MS && pageHeight > 0) {
+			// add the pages which will scroll into view within the look ahead time
+			count += (int) Math.ceil(scrollVelocity * PREFETCH_LOOKAHEAD_MS / pageHeight);
+		}
+		return Math.min(count, Math.max(prefetchCount, maxPrefetchCount));
+	}
+
+	/**
+	 * Updates the scroll direction and velocity after the vertical scroll position changed
+	 */
+	private void updateScrollVelocity(int delta) {
+		if (delta == 0)
+			return;
+
+		long now = System.currentTimeMillis();
+		long elapsed = now - lastScrollTime;
+		scrollDirection = delta > 0 ? 1 : -1;
+
+		if (elapsed >= SCROLL_VELOCITY_TIMEOUT_MS) {
+			// scrolling just started
+			scrollVelocity = 0;
+		} else {
+			float velocity = Math.abs(delta) / (float) Math.max(1, elapsed);
+			scrollVelocity = (scrollVelocity + velocity) / 2;
+		}
+		lastScrollTime = now;
 	}
 
 	/**
@@ -266,7 +633,8 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 	 */
 	public int getCurrentPage() {
 		if (pageSource != null && layout != null) {
-			List<PageVisibility> visPages = layout.getVisiblePages(getPaintArea(), zoomLevel, originalPageSizes, scrollPosition, bufferedPages);
+			PageVisibilityBuffer visPages = new PageVisibilityBuffer();
+			layout.getVisiblePages(getPaintArea(), zoomLevel, originalPageSizes, scrollPosition, visPages);
 			if (visPages.isEmpty()) {
 				return -1;
 			} else {
@@ -275,12 +643,12 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 				int vIndex = 0;
 				
 				for(int i = 0; i < visPages.size(); i++)
-					if (visPages.get(i).getVisiblePercentage() > maxPagePercentage) {
-						maxPagePercentage = visPages.get(i).getVisiblePercentage();
+					if (visPages.getVisiblePercentage(i) > maxPagePercentage) {
+						maxPagePercentage = visPages.getVisiblePercentage(i);
 						vIndex = i;
 					}
 				
-				return visPages.get(vIndex).getPageIndex();
+				return visPages.getPageIndex(vIndex);
 			}
 		} else {
 			return -1;
@@ -292,8 +660,10 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 	 * the percentage of their content visible in the viewport
 	 */
 	public PageVisibility[] getVisiblePages() {
-		List<PageVisibility> visPages = layout.getVisiblePages(getPaintArea(), zoomLevel, originalPageSizes, scrollPosition, bufferedPages);		
-		return visPages.toArray(new PageVisibility[visPages.size()]);
+		PageVisibilityBuffer visPages = new PageVisibilityBuffer();
+		layout.getVisiblePages(getPaintArea(), zoomLevel, originalPageSizes, scrollPosition, visPages);
+		List<PageVisibility> list = visPages.toList();
+		return list.toArray(new PageVisibility[list.size()]);
 	}
 
 	private Dimension getPaintArea() {
@@ -315,7 +685,14 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 	 */
 	public void gotoPage(int index) {
 		if (layout != null && index < getPageCount()) {
+			int currentPage = getCurrentPage();
+			if (index != currentPage) {
+				scrollDirection = index > currentPage ? 1 : -1;
+			}
+
 			Point newScrollPos = layout.ensureVisible(getPaintArea(), zoomLevel, originalPageSizes, index);
+			// paged layouts may switch to another view element without scrolling
+			pageScaler.advanceGeneration();
 
 			beginUpdate();
 			horizontalScrollBar.setValue(newScrollPos.x);
@@ -397,11 +774,69 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 		}
 	}
 
+	/**
+	 * Creates the store which materializes the pages of the given page source on demand
+	 * and releases the rendered buffers and scale jobs of the pages it recycles
+	 * @param compressed the compressed cache for the pages (may be null)
+	 * @param spill the spill cache for the pages (may be null)
+	 * @param persistent the persistent render cache for the pages (may be null)
+	 * @param hash the content hash of the page source (may be null)
+	 */
+	private PageStore createPageStore(PageSource source, final CompressedPageCache compressed, final PageSpillCache spill, final PersistentRenderCache persistent, final String hash) {
+		return new PageStore(source, pageWorkingSetSize) {
+			@Override
+			protected void pageCreated(int pageIndex, Page page) {
+				if (compressed != null && page instanceof CompressiblePage)
+					((CompressiblePage) page).setCompressedCache(compressed, pageIndex);
+				if (spill != null && page instanceof SpillablePage)
+					((SpillablePage) page).setSpillCache(spill, pageIndex);
+				if (persistent != null && hash != null && page instanceof PersistablePage)
+					((PersistablePage) page).setRenderCache(persistent, hash, pageIndex);
+			}
+
+			@Override
+			protected void pageMaterialized(int pageIndex, Page page) {
+				// the page's placeholder may be visible
+				schedulePageRepaint(pageIndex);
+			}
+
+			@Override
+			protected void recycle(int pageIndex, Page page) {
+				pageScaler.cancel(page);
+				// wait for a running rendering of the page, jobs which have already
+				// been taken are skipped since the page is no longer materialized
+				Lock lock = pageScaler.getPageLock(page);
+				lock.lock();
+				try {
+					pageCache.remove(page);
+					super.recycle(pageIndex, page);
+				} finally {
+					lock.unlock();
+				}
+			}
+		};
+	}
+
 	/**
 	 * Scales the given page asynchronously and updates the preview when done
 	 */
-	private void scalePage(final Page page, final int w, final int h, boolean highPriority) {
-		pageScaler.enqeue(page, new Dimension(w, h), highPriority);
+	private void scalePage(final Page page, final int w, final int h, float priority) {
+		// spilled and persisted renderings are restored by the scaler (they may have to be read from disk)
+		pageScaler.enqeue(page, new Dimension(w, h), priority);
+	}
+
+	/**
+	 * Creates the compressed cache for a new page source (null = renderings are not compressed)
+	 */
+	protected CompressedPageCache createCompressedCache() {
+		return new CompressedPageCache();
+	}
+
+	/**
+	 * Creates the spill cache for a new page source (null = renderings are not spilled)
+	 */
+	protected PageSpillCache createSpillCache() {
+		return new PageSpillCache();
 	}
 
 	/**
@@ -448,28 +883,25 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 	 */
 	public void setPageSource(PageSource newValue) {
 		pageSource = newValue;
+		pageScaler.advanceGeneration();
 
 		setZoomLevel(1);		
 
-		// get the page sizes
-		originalPageSizes = new Dimension[pageSource.getPageCount()];
-		for(int i = 0; i < originalPageSizes.length; i++)
-			originalPageSizes[i] = pageSource.getPageSize(i);
+		originalPageSizes = getPageGeometry(pageSource);
+		
+		// the renderings of the old pages are not needed anymore
+		if (compressedCache != null)
+			compressedCache.clear();
+		compressedCache = createCompressedCache();
+		if (spillCache != null)
+			spillCache.close();
+		spillCache = createSpillCache();
 		
+		// pages are created when they become visible or are prefetched
 		bufferedPages.clear();
-
-		Thread loadThread = new Thread(new Runnable() {
-			@Override
-			public void run() {
-				for (int i = 0; i < getPageCount(); i++) {
-					bufferedPages.add(pageSource.getPage(i));
-					updateScrollBars();
-					fireCurrentPageChanged();
-					repaint();
-				}
-			}
-		});
-		loadThread.start();
+		contentHash = pageSource instanceof ContentHashedPageSource ? ((ContentHashedPageSource) pageSource).getContentHash() : null;
+		bufferedPages = createPageStore(pageSource, compressedCache, spillCache, renderCache, contentHash);
+		pageCache.clear();
 
 		updateScrollBars();
 		fireCurrentPageChanged();
@@ -477,6 +909,37 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 		repaint();
 	}
 
+	/**
+	 * Return the sizes of the pages of the given source
+	 * (sources which report their page sizes as runs do not have to be queried for every single page)
+	 */
+	protected PageGeometry getPageGeometry(PageSource source) {
+		if (source instanceof PageSizeRunSource) {
+			PageSizeRunSource runSource = (PageSizeRunSource) source;
+			int runCount = runSource.getPageSizeRunCount();
+			int[] runLengths = new int[runCount];
+			int[] widths = new int[runCount];
+			int[] heights = new int[runCount];
+			for(int r = 0; r < runCount; r++) {
+				Dimension size = runSource.getPageSizeOfRun(r);
+				runLengths[r] = runSource.getPageSizeRunLength(r);
+				widths[r] = size.width;
+				heights[r] = size.height;
+			}
+			return new RunLengthPageGeometry(runLengths, widths, heights);
+		}
+		
+		int pageCount = source.getPageCount();
+		int[] widths = new int[pageCount];
+		int[] heights = new int[pageCount];
+		for(int i = 0; i < pageCount; i++) {
+			Dimension size = source.getPageSize(i);
+			widths[i] = size.width;
+			heights[i] = size.height;
+		}
+		return new ArrayPageGeometry(widths, heights);
+	}
+
 	public PageSource getPageSource() {
 		return pageSource;
 	}
@@ -488,6 +951,7 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 	 */
 	public void setPreviewLayout(PreviewLayout newValue) {
 		layout = newValue;
+		pageScaler.advanceGeneration();
 
 		updateScrollBars();
 		repaint();
@@ -497,6 +961,51 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 		return layout;
 	}
 
+	/**
+	 * Return the scaler which renders the pages in the background
+	 * (can be used to configure the worker threads)
+	 */
+	public PageScaler getPageScaler() {
+		return pageScaler;
+	}
+
+	/**
+	 * Return the cache which limits the memory used by rendered pages
+	 * (can be used to change the memory budget)
+	 */
+	public PageCache getPageCache() {
+		return pageCache;
+	}
+
+	public PersistentRenderCache getRenderCache() {
+		return renderCache;
+	}
+
+	/**
+	 * Set the cache which keeps the renderings of page sources which are able to identify
+	 * their contents (see ContentHashedPageSource) across sessions (null = none).
+	 * Applies to page sources which are set afterwards
+	 */
+	public void setRenderCache(PersistentRenderCache renderCache) {
+		this.renderCache = renderCache;
+	}
+
+	/**
+	 * Return the cache which keeps released renderings of the current page source compressed
+	 * in memory (null if there is no page source or compression has been disabled)
+	 */
+	public CompressedPageCache getCompressedCache() {
+		return compressedCache;
+	}
+
+	/**
+	 * Return the cache which keeps released renderings of the current page source
+	 * on disk (null if there is no page source or spilling has been disabled)
+	 */
+	public PageSpillCache getSpillCache() {
+		return spillCache;
+	}
+
 	/**
 	 * Set the adorner to use or null if none shall be used
 	 *
@@ -531,6 +1040,8 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 		if (Math.abs(zoomLevel - newValue) > 0.01) {
 
 			zoomLevel = newValue;
+			// all scheduled jobs target the old zoom level
+			pageScaler.advanceGeneration();
 			updateScrollBars();
 
 			fireCurrentPageChanged();
@@ -544,6 +1055,80 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 		return zoomLevel;
 	}
 
+	/**
+	 * Return the number of view elements which are rendered in advance
+	 * in scroll direction
+	 */
+	public int getPrefetchCount() {
+		return prefetchCount;
+	}
+
+	/**
+	 * Set the number of view elements (pages or groups of pages) which are rendered
+	 * in advance in scroll direction (0 disables prefetching). When scrolling fast the
+	 * count is increased up to getMaxPrefetchCount()
+	 */
+	public void setPrefetchCount(int newValue) {
+		if (newValue < 0) {
+			throw new IllegalArgumentException("The prefetch count must not be negative.");
+		}
+		prefetchCount = newValue;
+	}
+
+	public int getMaxPrefetchCount() {
+		return maxPrefetchCount;
+	}
+
+	/**
+	 * Set the maximum number of view elements which are rendered in advance
+	 * when scrolling fast
+	 */
+	public void setMaxPrefetchCount(int newValue) {
+		if (newValue < 0) {
+			throw new IllegalArgumentException("The prefetch count must not be negative.");
+		}
+		maxPrefetchCount = newValue;
+	}
+
+	/**
+	 * Return the number of pages which are kept in memory
+	 */
+	public int getPageWorkingSetSize() {
+		return pageWorkingSetSize;
+	}
+
+	/**
+	 * Set the number of pages which are kept in memory. Pages outside of this
+	 * working set are created again when they are needed (the visible pages are always kept)
+	 */
+	public void setPageWorkingSetSize(int newValue) {
+		if (newValue < 1) {
+			throw new IllegalArgumentException("The working set must contain at least one page.");
+		}
+		pageWorkingSetSize = newValue;
+		bufferedPages.setCapacity(newValue);
+	}
+
+	/**
+	 * Return if the view port is kept in a back buffer which is reused when scrolling
+	 */
+	public boolean getScrollBlitting() {
+		return scrollBlitting;
+	}
+
+	/**
+	 * Enable / disable the view port back buffer. When enabled, scrolling shifts the already
+	 * painted pixels and only the newly exposed parts of the view port are drawn
+	 * (which is faster where painting is done in software)
+	 */
+	public void setScrollBlitting(boolean newValue) {
+		scrollBlitting = newValue;
+		if (!scrollBlitting) {
+			backBuffer = null;
+		}
+		repaint();
+	}
+
 	/**
 	 * Return if high quality scaling is allowed
 	 */
@@ -592,8 +1177,15 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 			pageSource.freeResources();
 		}
 
-		for (Page page : bufferedPages) {
-			page.freeResources();
+		bufferedPages.clear();
+		pageCache.clear();
+		if (compressedCache != null) {
+			compressedCache.clear();
+			compressedCache = null;
+		}
+		if (spillCache != null) {
+			spillCache.close();
+			spillCache = null;
 		}
 	}
 
@@ -605,11 +1197,12 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 		if (e.getSource() == verticalScrollBar) {
 			// change the y scroll
 			int oldPage = getCurrentPage();
+			updateScrollVelocity(e.getValue() - scrollPosition.y);
 			scrollPosition.y = e.getValue();
 			//if (getCurrentPage() != oldPage) {
 				fireCurrentPageChanged();
 			//}
-			repaint();
+			repaintScrolled();
 		} else if (e.getSource() == horizontalScrollBar) {
 			// change the x scroll
 			int oldPage = getCurrentPage();
@@ -617,18 +1210,78 @@ public class PageDisplay extends JPanel implements AdjustmentListener, ScalingLi
 			//if (getCurrentPage() != oldPage) {
 				fireCurrentPageChanged();
 			//}
-			repaint();
+			repaintScrolled();
 		}
 	}
 
 	@Override
 	public void scalingDone(Page p, Dimension targetResolution) {
-		SwingUtilities.invokeLater(new Runnable() {
-			@Override
-			public void run() {
-				repaint();
-			}
-		});
+		pageBufferChanged(p);
+	}
+
+	/**
+	 * Called when a page has a new rendering
+	 */
+	private void pageBufferChanged(Page p) {
+		// account for the new buffer (may release other pages)
+		// unless the page has been recycled in the meantime
+		int pageIndex = bufferedPages.getPageIndex(p);
+		if (pageIndex >= 0) {
+			pageCache.update(p);
+			schedulePageRepaint(pageIndex);
+		}
+	}
+
+	/**
+	 * Marks the area of the given page as changed, the areas of all pages which
+	 * change within one frame interval are repainted together (may be called from any thread)
+	 */
+	private void schedulePageRepaint(int pageIndex) {
+		boolean first;
+		synchronized (pendingPageRepaints) {
+			first = pendingPageRepaints.isEmpty();
+			pendingPageRepaints.set(pageIndex);
+		}
+		if (first) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if (!pageRepaintTimer.isRunning())
+						pageRepaintTimer.start();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Repaints the union of the on-screen bounds of all pages which changed
+	 * since the last call (pages outside the current view element are skipped)
+	 */
+	private void repaintPendingPages() {
+		BitSet pages;
+		synchronized (pendingPageRepaints) {
+			pages = (BitSet) pendingPageRepaints.clone();
+			pendingPageRepaints.clear();
+		}
+		if (layout == null || pageSource == null)
+			return;
+
+		Dimension d = getPaintArea();
+		Rectangle viewPort = new Rectangle(0, 0, d.width, d.height);
+		Rectangle region = null;
+		for (int i = pages.nextSetBit(0); i >= 0 && i < originalPageSizes.getPageCount(); i = pages.nextSetBit(i + 1)) {
+			Rectangle bounds = layout.getPageBounds(d, zoomLevel, originalPageSizes, scrollPosition, i);
+			if (bounds == null)
+				continue;
+			// allow for rounding of the scaled page position
+			bounds.grow(1, 1);
+			bounds = bounds.intersection(viewPort);
+			if (bounds.isEmpty())
+				continue;
+			region = region == null ? bounds : region.union(bounds);
+		}
+		if (region != null)
+			repaint(region);
 	}
 
 	// *******************
@@ -0,0 +1,753 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.predefined;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.renber.swing.controls.documentview.types.ProgressivePage;
+import de.renber.swing.controls.documentview.types.caching.CompressedPageCache;
+import de.renber.swing.controls.documentview.types.caching.CompressiblePage;
+import de.renber.swing.controls.documentview.types.caching.OffHeapCacheablePage;
+import de.renber.swing.controls.documentview.types.caching.OffHeapImage;
+import de.renber.swing.controls.documentview.types.caching.OffHeapPixelStore;
+import de.renber.swing.controls.documentview.types.caching.PageCache;
+import de.renber.swing.controls.documentview.types.caching.PageSpillCache;
+import de.renber.swing.controls.documentview.types.caching.PersistablePage;
+import de.renber.swing.controls.documentview.types.caching.PersistentRenderCache;
+import de.renber.swing.controls.documentview.types.caching.SpillablePage;
+
+/**
+ * Base class for pages which keep rendered image buffers of their contents.
+ * Renderings of different sizes are kept in a small pyramid with one level per
+ * power-of-two width bucket, so that after a zoom change the page can be drawn
+ * immediately from the nearest level while the exact size is rendered.
+ * A level which is only slightly larger than the requested size is considered
+ * good enough (see setTolerance()), so small zoom changes do not cause re-rendering.
+ * Until the first rendering is available a quick draft can be rendered (see renderPreview())<br/>
+ * Renderings are kept in the raster type of the colour mode (see setColorMode()), grayscale and
+ * monochrome renderings take a quarter or a 32nd of the memory of colour renderings.
+ * The pixels of the renderings can be moved to an OffHeapPixelStore (see setPixelStore()),
+ * so that they do not occupy the Java heap. Such renderings are copied to the screen strip by strip
+ * on every paint, so by default the renderings are kept on the heap where Java2D draws them directly.
+ * Released renderings are kept in a CompressedPageCache if one has been set (see setCompressedCache())
+ * and decoded from there when the page is scaled again. Renderings which do not compress well are
+ * written to a PageSpillCache instead if one has been set (see setSpillCache()),
+ * new renderings are stored in a PersistentRenderCache if one has been set (see setRenderCache())
+ *
+ * @author berre
+ */
+public abstract class AbstractBufferedPage implements OffHeapCacheablePage, CompressiblePage, SpillablePage, PersistablePage, ProgressivePage {
+
+	public static final int DEFAULT_MAX_LEVELS = 3;
+	public static final float DEFAULT_TOLERANCE = 0.15f;
+	// how much the colour channels of a pixel may differ for the pixel to be considered gray
+	public static final int GRAY_TOLERANCE = 8;
+
+	/**
+	 * The colour modes in which a page can be rendered
+	 */
+	public enum ColorMode {
+		/** 24 bit colour (TYPE_INT_RGB) */
+		COLOR(BufferedImage.TYPE_INT_RGB),
+		/** 8 bit grayscale (TYPE_BYTE_GRAY) */
+		GRAYSCALE(BufferedImage.TYPE_BYTE_GRAY),
+		/** 1 bit black and white (TYPE_BYTE_BINARY), drawn more slowly than the other modes unless Java2D accelerates the image */
+		MONOCHROME(BufferedImage.TYPE_BYTE_BINARY),
+		/** colour until the first rendering has shown that the page has no colour, grayscale then */
+		AUTO(BufferedImage.TYPE_INT_RGB);
+
+		final int imageType;
+
+		ColorMode(int imageType) {
+			this.imageType = imageType;
+		}
+
+		/**
+		 * Return the type of the images which are rendered in this mode
+		 */
+		public int getImageType() {
+			return imageType;
+		}
+	}
+
+	// the rendered levels (replaced as a whole, never modified)
+	volatile Rendering[] levels = new Rendering[0];
+	final Object levelLock = new Object();
+	// number of levels to keep
+	volatile int maxLevels = DEFAULT_MAX_LEVELS;
+	// how much larger than the requested size a level may be to be used without re-rendering
+	volatile float tolerance = DEFAULT_TOLERANCE;
+	// the colour mode and the mode which has been detected for ColorMode.AUTO (null = not yet)
+	volatile ColorMode colorMode = ColorMode.COLOR;
+	volatile ColorMode detectedColorMode = null;
+	// the store for the pixels of new renderings (null = keep them on the heap)
+	volatile OffHeapPixelStore pixelStore = null;
+	// the cache released renderings are compressed to (null = none) and the index of the page there
+	volatile CompressedPageCache compressedCache = null;
+	volatile int compressedIndex = -1;
+	// the cache released renderings are written to (null = none) and the index of the page there
+	volatile PageSpillCache spillCache = null;
+	volatile int spillIndex = -1;
+	// the cache new renderings are stored in (null = none) and the key of the page there
+	volatile PersistentRenderCache renderCache = null;
+	volatile String renderCacheHash = null;
+	volatile int renderCacheIndex = -1;
+
+	/**
+	 * Render the page contents to a new image of the given size
+	 * @return the image or null if the page could not be rendered
+	 */
+	protected abstract BufferedImage render(int w, int h) throws Exception;
+
+	/**
+	 * Render a draft of the page contents to a new image of the given size,
+	 * faster but in lower quality than render() (the default implementation
+	 * calls render())
+	 * @return the image or null if the page could not be rendered
+	 */
+	protected BufferedImage renderDraft(int w, int h) throws Exception {
+		return render(w, h);
+	}
+
+	/**
+	 * Return the type of the images render() should create for the colour mode
+	 * (renderings of another type are converted)
+	 */
+	protected int getImageType() {
+		ColorMode mode = colorMode;
+		if (mode == ColorMode.AUTO && detectedColorMode != null)
+			mode = detectedColorMode;
+		return mode.getImageType();
+	}
+
+	/**
+	 * Draw the page while nothing has been rendered yet
+	 */
+	protected abstract void drawPlaceholder(Graphics2D g, int x, int y, int w, int h);
+
+	@Override
+	public void draw(Graphics2D g, int x, int y, int w, int h) {
+		Rendering level = findRendering(levels, w, h);
+		if (level == null) {
+			drawPlaceholder(g, x, y, w, h);
+		} else if (level.width == w && level.height == h) {
+			if (!level.draw(g, x, y, w, h))
+				drawPlaceholder(g, x, y, w, h);
+		} else {
+			// a level of another size stands in until the exact size has been rendered
+			Object oldInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			boolean drawn = level.draw(g, x, y, w, h);
+			if (oldInterpolation != null)
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterpolation);
+			if (!drawn)
+				drawPlaceholder(g, x, y, w, h);
+		}
+	}
+
+	/**
+	 * Return true if there is a level of the given size or one which is larger
+	 * by no more than the tolerance
+	 */
+	@Override
+	public boolean isScaled(int w, int h) {
+		for (Rendering level : levels) {
+			if (level.width >= w && level.height >= h && level.width <= w * (1 + tolerance) && level.height <= h * (1 + tolerance))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void hiQualityScale(int w, int h) {
+		if (isScaled(w, h) || restoreFromCompressed(w, h))
+			return;
+
+		ColorMode mode = colorMode;
+		BufferedImage img;
+		try {
+			img = render(w, h);
+		} catch (Exception e) {
+			Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Could not render the page", e);
+			return;
+		}
+		if (img != null && mode == colorMode) {
+			BufferedImage converted = applyColorMode(img);
+			PersistentRenderCache cache = renderCache;
+			if (cache != null) {
+				// ColorMode.AUTO keeps the colour rendering, which looks the same for pages without colour
+				cache.put(getRenderCacheHash(mode), renderCacheIndex, mode == ColorMode.AUTO ? img : converted);
+			}
+			addRendering(createRendering(w, h, converted, true));
+		}
+	}
+
+	@Override
+	public boolean needsPreview(int w, int h) {
+		return levels.length == 0;
+	}
+
+	@Override
+	public void renderPreview(int w, int h) {
+		if (levels.length > 0)
+			return;
+
+		ColorMode mode = colorMode;
+		BufferedImage img;
+		try {
+			img = renderDraft(w, h);
+		} catch (Exception e) {
+			Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Could not render the page preview", e);
+			return;
+		}
+		if (img != null && mode == colorMode) {
+			addRendering(createRendering(w, h, applyColorMode(img), false));
+		}
+	}
+
+	@Override
+	public void setCompressedCache(CompressedPageCache cache, int pageIndex) {
+		compressedIndex = pageIndex;
+		compressedCache = cache;
+	}
+
+	/**
+	 * Decodes the rendering of the given size from the compressed cache
+	 * @return true if the page has been restored
+	 */
+	private boolean restoreFromCompressed(int w, int h) {
+		CompressedPageCache cache = compressedCache;
+		if (cache == null || !hasColorRenderings() || !cache.contains(compressedIndex, w, h))
+			return false;
+
+		// the compressed rendering is kept, so the restored level does not have to be compressed again
+		OffHeapPixelStore store = pixelStore;
+		OffHeapImage offHeapImg = store == null ? null : cache.get(compressedIndex, w, h, store);
+		if (offHeapImg != null) {
+			addRendering(new Rendering(w, h, offHeapImg, false));
+			return true;
+		}
+		BufferedImage img = cache.get(compressedIndex, w, h);
+		if (img == null)
+			return false;
+		addRendering(new Rendering(w, h, img, false));
+		return true;
+	}
+
+	@Override
+	public void setSpillCache(PageSpillCache cache, int pageIndex) {
+		spillIndex = pageIndex;
+		spillCache = cache;
+	}
+
+	@Override
+	public boolean restoreFromSpill(int w, int h) {
+		PageSpillCache cache = spillCache;
+		if (cache == null || !hasColorRenderings())
+			return false;
+
+		OffHeapImage img = cache.get(spillIndex, w, h);
+		if (img == null)
+			return false;
+
+		Rendering level = createRestoredRendering(img);
+		if (level == null)
+			return false;
+		addRendering(level);
+		return true;
+	}
+
+	@Override
+	public void setRenderCache(PersistentRenderCache cache, String contentHash, int pageIndex) {
+		renderCacheHash = contentHash;
+		renderCacheIndex = pageIndex;
+		renderCache = contentHash == null ? null : cache;
+	}
+
+	@Override
+	public boolean restoreFromRenderCache(int w, int h) {
+		PersistentRenderCache cache = renderCache;
+		if (cache == null)
+			return false;
+
+		// the cache keeps one rendering per bucket, which the page has already if it has a level of the bucket
+		int bucket = Rendering.getBucket(w);
+		for (Rendering level : levels) {
+			if (level.bucket == bucket)
+				return false;
+		}
+
+		ColorMode mode = colorMode;
+		OffHeapImage img = cache.get(getRenderCacheHash(mode), renderCacheIndex, w, h);
+		if (img == null)
+			return false;
+
+		Rendering level;
+		if (mode == ColorMode.COLOR) {
+			level = createRestoredRendering(img);
+		} else {
+			// the cache keeps int pixels, convert them back to the compact raster type of the colour mode
+			BufferedImage copy = img.copyToHeap();
+			img.release();
+			level = copy == null || mode != colorMode ? null : createRendering(copy.getWidth(), copy.getHeight(), applyColorMode(copy), false);
+		}
+		if (level == null)
+			return false;
+		addRendering(level);
+		return true;
+	}
+
+	/**
+	 * Return true if the colour mode shows colour renderings. Only those are kept in the
+	 * compressed and spill cache, so renderings from there must not be used otherwise
+	 * (the caches are shared by the pages which are created for a page index over time)
+	 */
+	private boolean hasColorRenderings() {
+		ColorMode mode = colorMode;
+		return mode == ColorMode.COLOR || mode == ColorMode.AUTO;
+	}
+
+	/**
+	 * Return the content hash under which the renderings of the given colour mode
+	 * are kept in the render cache
+	 */
+	private String getRenderCacheHash(ColorMode mode) {
+		switch (mode) {
+			case GRAYSCALE:
+				return renderCacheHash + "gray";
+			case MONOCHROME:
+				return renderCacheHash + "mono";
+			default:
+				return renderCacheHash;
+		}
+	}
+
+	/**
+	 * Converts the given rendering to the image type of the colour mode
+	 * (detects the colour mode first if it is ColorMode.AUTO)
+	 */
+	private BufferedImage applyColorMode(BufferedImage img) {
+		if (colorMode == ColorMode.AUTO && detectedColorMode == null)
+			detectedColorMode = isGray(img) ? ColorMode.GRAYSCALE : ColorMode.COLOR;
+
+		return convert(img, getImageType());
+	}
+
+	/**
+	 * Converts a part of a rendering (a tile, see TiledPage) to the image type of the colour mode.
+	 * Unless the colour mode has been detected already, ColorMode.AUTO converts parts without colour
+	 * to grayscale (a single part does not tell if the whole page has colour)
+	 */
+	BufferedImage applyColorModeToRegion(BufferedImage img) {
+		ColorMode mode = colorMode;
+		if (mode == ColorMode.AUTO)
+			mode = detectedColorMode != null ? detectedColorMode : isGray(img) ? ColorMode.GRAYSCALE : ColorMode.COLOR;
+		return convert(img, mode.getImageType());
+	}
+
+	/**
+	 * Converts the given image to the given type (returns the image if it has the type already)
+	 */
+	private static BufferedImage convert(BufferedImage img, int type) {
+		if (img.getType() == type)
+			return img;
+
+		BufferedImage converted = new BufferedImage(img.getWidth(), img.getHeight(), type);
+		Graphics2D g = converted.createGraphics();
+		try {
+			g.drawImage(img, 0, 0, null);
+		} finally {
+			g.dispose();
+		}
+		img.flush();
+		return converted;
+	}
+
+	/**
+	 * Return true if the given image has no colour (see GRAY_TOLERANCE)
+	 */
+	private static boolean isGray(BufferedImage img) {
+		int type = img.getType();
+		if (type == BufferedImage.TYPE_BYTE_GRAY || type == BufferedImage.TYPE_BYTE_BINARY || type == BufferedImage.TYPE_USHORT_GRAY)
+			return true;
+
+		int w = img.getWidth();
+		int h = img.getHeight();
+		int[] data;
+		int offset;
+		int stride;
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& img.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& img.getRaster().getParent() == null) {
+			data = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+			offset = img.getRaster().getDataBuffer().getOffset();
+			stride = ((SinglePixelPackedSampleModel) img.getRaster().getSampleModel()).getScanlineStride();
+		} else {
+			data = new int[w];
+			offset = 0;
+			stride = 0;
+		}
+
+		for (int y = 0; y < h; y++) {
+			if (stride == 0)
+				img.getRGB(0, y, w, 1, data, 0, w);
+			int row = offset + y * stride;
+			for (int x = row; x < row + w; x++) {
+				int r = (data[x] >> 16) & 0xff;
+				int g = (data[x] >> 8) & 0xff;
+				int b = data[x] & 0xff;
+				if (Math.abs(r - g) > GRAY_TOLERANCE || Math.abs(g - b) > GRAY_TOLERANCE || Math.abs(r - b) > GRAY_TOLERANCE)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a level for the given image, whose pixels are moved to the pixel store if possible.
+	 * Grayscale and monochrome images are compact already and stay on the heap, they are not
+	 * kept in the compressed or spill cache either
+	 * @param spillable whether the level is kept in the compressed or spill cache when it is released (not for drafts)
+	 */
+	private Rendering createRendering(int w, int h, BufferedImage img, boolean spillable) {
+		if (img.getType() != BufferedImage.TYPE_INT_RGB && img.getType() != BufferedImage.TYPE_INT_ARGB)
+			return new Rendering(w, h, img, false);
+
+		OffHeapPixelStore store = pixelStore;
+		if (store != null) {
+			OffHeapImage copy = OffHeapImage.copyOf(img, store);
+			if (copy != null) {
+				img.flush();
+				return new Rendering(w, h, copy, spillable);
+			}
+		}
+		return new Rendering(w, h, img, spillable);
+	}
+
+	/**
+	 * Creates a level for an image which has been restored from the spill or render cache.
+	 * Without a pixel store its pixels are copied to the heap once, so that they are not
+	 * copied strip by strip on every paint
+	 */
+	private Rendering createRestoredRendering(OffHeapImage img) {
+		if (pixelStore != null)
+			return new Rendering(img.getWidth(), img.getHeight(), img, false);
+
+		BufferedImage copy = img.copyToHeap();
+		img.release();
+		return copy == null ? null : new Rendering(copy.getWidth(), copy.getHeight(), copy, false);
+	}
+
+	/**
+	 * Adds a level, replacing the level of the same bucket and dropping the levels
+	 * which are furthest from the new one if there are too many
+	 */
+	private void addRendering(Rendering level) {
+		Rendering[] dropped;
+		int droppedCount = 0;
+		synchronized (levelLock) {
+			Rendering[] old = levels;
+			Rendering[] tmp = new Rendering[old.length + 1];
+			dropped = new Rendering[old.length];
+			int count = 0;
+			for (Rendering l : old) {
+				if (l.bucket != level.bucket)
+					tmp[count++] = l;
+				else
+					dropped[droppedCount++] = l;
+			}
+			tmp[count++] = level;
+
+			while (count > maxLevels) {
+				// drop the level with the largest bucket distance
+				int furthest = 0;
+				for (int i = 1; i < count; i++) {
+					if (Math.abs(tmp[i].bucket - level.bucket) > Math.abs(tmp[furthest].bucket - level.bucket))
+						furthest = i;
+				}
+				dropped[droppedCount++] = tmp[furthest];
+				tmp[furthest] = tmp[--count];
+			}
+
+			Rendering[] newLevels = new Rendering[count];
+			System.arraycopy(tmp, 0, newLevels, 0, count);
+			levels = newLevels;
+		}
+		releaseRenderings(dropped, droppedCount);
+	}
+
+	/**
+	 * Releases the given levels, keeping them in the compressed cache or writing them to the
+	 * spill cache first (unless they are drafts or have been restored from a cache)
+	 */
+	private void releaseRenderings(Rendering[] dropped, int count) {
+		CompressedPageCache compressed = compressedCache;
+		PageSpillCache spill = spillCache;
+		for (int i = 0; i < count; i++) {
+			if (dropped[i].spillable) {
+				if (compressed == null || !dropped[i].compress(compressed, compressedIndex)) {
+					if (spill != null)
+						dropped[i].spill(spill, spillIndex);
+				}
+			}
+			dropped[i].release();
+		}
+	}
+
+	/**
+	 * Return the level to draw at the given size: the exact size, else the smallest
+	 * larger level, else the largest one (null if there is none)
+	 */
+	private static Rendering findRendering(Rendering[] levels, int w, int h) {
+		Rendering best = null;
+		for (Rendering level : levels) {
+			if (level.width == w && level.height == h)
+				return level;
+
+			if (best == null) {
+				best = level;
+			} else if (level.width >= w) {
+				if (best.width < w || level.width < best.width)
+					best = level;
+			} else if (best.width < w && level.width > best.width) {
+				best = level;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Return the number of rendered levels
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	public int getMaxLevels() {
+		return maxLevels;
+	}
+
+	/**
+	 * Set the number of renderings of different sizes which are kept
+	 */
+	public void setMaxLevels(int maxLevels) {
+		if (maxLevels < 1)
+			throw new IllegalArgumentException("At least one level must be kept.");
+		this.maxLevels = maxLevels;
+	}
+
+	public float getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Set by how much a rendered level may be larger than the requested size
+	 * (relative, e.g. 0.15 = 15 %) to be used without rendering the page again
+	 * (0 = only exact sizes)
+	 */
+	public void setTolerance(float tolerance) {
+		if (tolerance < 0)
+			throw new IllegalArgumentException("The tolerance must not be negative.");
+		this.tolerance = tolerance;
+	}
+
+	public ColorMode getColorMode() {
+		return colorMode;
+	}
+
+	/**
+	 * Set the colour mode in which the page is rendered, ColorMode.AUTO renders the page
+	 * in grayscale once a rendering has shown that it has no colour. Changing the mode
+	 * drops the renderings of the previous mode (including the ones in the compressed and spill cache)
+	 */
+	public void setColorMode(ColorMode colorMode) {
+		if (colorMode == null)
+			throw new IllegalArgumentException("colorMode");
+		if (colorMode == this.colorMode)
+			return;
+		this.colorMode = colorMode;
+		detectedColorMode = null;
+
+		Rendering[] old;
+		synchronized (levelLock) {
+			old = levels;
+			levels = new Rendering[0];
+		}
+		for (Rendering level : old) {
+			level.release();
+		}
+		CompressedPageCache compressed = compressedCache;
+		if (compressed != null)
+			compressed.remove(compressedIndex);
+		PageSpillCache spill = spillCache;
+		if (spill != null)
+			spill.remove(spillIndex);
+	}
+
+	/**
+	 * Return the colour mode which has been detected for ColorMode.AUTO
+	 * (null if the colour mode is not AUTO or nothing has been rendered yet)
+	 */
+	public ColorMode getDetectedColorMode() {
+		return colorMode == ColorMode.AUTO ? detectedColorMode : null;
+	}
+
+	public OffHeapPixelStore getPixelStore() {
+		return pixelStore;
+	}
+
+	/**
+	 * Set the store which keeps the pixels of new renderings outside of the Java heap
+	 * (null = keep them on the heap, the default). Renderings which do not fit into the store are
+	 * kept on the heap as well. Off-heap renderings cost a copy of the visible rows on every paint,
+	 * so a store pays off for many cached pages rather than for fast scrolling
+	 */
+	public void setPixelStore(OffHeapPixelStore pixelStore) {
+		this.pixelStore = pixelStore;
+	}
+
+	@Override
+	public long getBufferSize() {
+		long size = 0;
+		for (Rendering level : levels) {
+			size += PageCache.getImageSize(level.image);
+		}
+		return size;
+	}
+
+	@Override
+	public long getOffHeapBufferSize() {
+		long size = 0;
+		for (Rendering level : levels) {
+			if (level.offHeapImage != null)
+				size += level.offHeapImage.getSize();
+		}
+		return size;
+	}
+
+	@Override
+	public void releaseBuffer() {
+		Rendering[] old;
+		synchronized (levelLock) {
+			old = levels;
+			levels = new Rendering[0];
+		}
+		releaseRenderings(old, old.length);
+	}
+
+	@Override
+	public void freeResources() {
+		releaseBuffer();
+	}
+
+	/**
+	 * A rendering of the page at a specific size, its pixels are either
+	 * kept in an image on the heap or in an off-heap image
+	 */
+	static class Rendering {
+		final int width;
+		final int height;
+		// power-of-two bucket of the width
+		final int bucket;
+		final BufferedImage image;
+		final OffHeapImage offHeapImage;
+		// whether the rendering is kept in the compressed or spill cache when it is released
+		final boolean spillable;
+
+		Rendering(int width, int height, BufferedImage image, boolean spillable) {
+			this(width, height, image, null, spillable);
+		}
+
+		Rendering(int width, int height, OffHeapImage offHeapImage, boolean spillable) {
+			this(width, height, null, offHeapImage, spillable);
+		}
+
+		private Rendering(int width, int height, BufferedImage image, OffHeapImage offHeapImage, boolean spillable) {
+			this.width = width;
+			this.height = height;
+			this.bucket = getBucket(width);
+			this.image = image;
+			this.offHeapImage = offHeapImage;
+			this.spillable = spillable;
+		}
+
+		/**
+		 * Return the power-of-two bucket of the given width
+		 */
+		static int getBucket(int width) {
+			return 32 - Integer.numberOfLeadingZeros(Math.max(1, width) - 1);
+		}
+
+		/**
+		 * Draws the rendering at the given position and size
+		 * @return false if the rendering has been released in the meantime
+		 */
+		boolean draw(Graphics2D g, int x, int y, int w, int h) {
+			if (offHeapImage != null)
+				return offHeapImage.draw(g, x, y, w, h);
+
+			if (w == width && h == height)
+				g.drawImage(image, x, y, null);
+			else
+				g.drawImage(image, x, y, w, h, null);
+			return true;
+		}
+
+		/**
+		 * Keeps the rendering in the given compressed cache
+		 * @return false if the rendering does not compress well enough
+		 */
+		boolean compress(CompressedPageCache cache, int pageIndex) {
+			if (offHeapImage != null)
+				return cache.put(pageIndex, offHeapImage);
+			else
+				return cache.put(pageIndex, image);
+		}
+
+		/**
+		 * Writes the rendering to the given spill cache
+		 */
+		void spill(PageSpillCache cache, int pageIndex) {
+			if (offHeapImage != null)
+				cache.put(pageIndex, offHeapImage);
+			else
+				cache.put(pageIndex, image);
+		}
+
+		void release() {
+			if (offHeapImage != null)
+				offHeapImage.release();
+			else
+				image.flush();
+		}
+	}
+}
@@ -29,7 +29,7 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.image.BufferedImage;
@@ -38,57 +38,96 @@ import java.awt.print.Paper;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
 import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
-import de.renber.swing.controls.documentview.types.GraphicsUtilities;
-import de.renber.swing.controls.documentview.types.Page;
+import de.renber.swing.controls.documentview.types.ImageResampler;
+import de.renber.swing.controls.documentview.types.RegionRenderablePage;
 
 /**
  * A page implementation which uses an internal image buffer
  * @author renber
  */
-public class BufferedPrintablePage implements Page {
+public class BufferedPrintablePage extends AbstractBufferedPage implements RegionRenderablePage {
 
 	final static int DPI = 96;
 	
-    BufferedImage scaledImg = null;
-    Dimension scaleDimension = new Dimension(0, 0);
+	// resampler to reduce supersampled buffers to the target size
+	final static ImageResampler SUPERSAMPLING_RESAMPLER = new ImageResampler(ImageResampler.Filter.BOX);
+	// upper bound for the pixels of a supersampled buffer (64 MB), the factor is reduced for larger pages
+	final static long MAX_SUPERSAMPLED_PIXELS = 16L * 1024 * 1024;
+	
     Printable printable;
     PageFormat pageFormat;
     int pageIndex;
     Dimension pageSize;
     String renderingText = "Rendering preview...";
+    // print directly at the target resolution (instead of at 72 dpi and resampling the result)
+    volatile boolean directRendering = true;
+    // factor by which the target resolution is multiplied when rendering directly
+    volatile int supersampling = 1;
     
     @Override
-    public void draw(Graphics2D g, int x, int y, int w, int h) {
-        if (scaledImg != null) {            
-                g.drawImage(scaledImg, x, y, w, h, null);            
-        } else {
-        	// print "rendering"
-        	Color oldColor = g.getColor();
-        	g.setColor(Color.black);        	
-        	if (g.getFontMetrics().stringWidth(renderingText) < w - 10) {
-        		g.drawString(renderingText, x + 5, y + 15);	
-        	}                	        	
-        	g.setColor(oldColor);
-        }
+    protected void drawPlaceholder(Graphics2D g, int x, int y, int w, int h) {
+    	// print "rendering"
+    	Color oldColor = g.getColor();
+    	g.setColor(Color.black);        	
+    	if (g.getFontMetrics().stringWidth(renderingText) < w - 10) {
+    		g.drawString(renderingText, x + 5, y + 15);	
+    	}                	        	
+    	g.setColor(oldColor);
     }
 
     @Override
-    public boolean isScaled(int w, int h) {
-        return scaleDimension.width == w && scaleDimension.height == h;
-    }        
+    protected BufferedImage render(int w, int h) throws PrinterException {
+    	return directRendering ? renderDirect(w, h, supersampling, true) : renderResampled(w, h);
+    }
     
     @Override
-    public void hiQualityScale(final int w, final int h) {     
-    	
-    	if (isScaled(w, h))
-    		return;
+    protected BufferedImage renderDraft(int w, int h) throws PrinterException {
+    	return directRendering ? renderDirect(w, h, 1, false) : renderResampled(w, h);
+    }
+    
+    /**
+     * Print the page to a buffer of the given size, the graphics are transformed so that
+     * the printable paints at the target resolution (or a multiple of it when supersampling)
+     * @param quality use rendering hints for quality (antialiasing) or for speed
+     */
+    private BufferedImage renderDirect(int w, int h, int factor, boolean quality) throws PrinterException {
+    	// large renderings use a smaller factor (down to rendering at the target resolution)
+    	while (factor > 1 && (long) w * h * factor * factor > MAX_SUPERSAMPLED_PIXELS)
+    		factor--;
+    	int rw = w * factor;
+    	int rh = h * factor;
     	
-    	scaleDimension.width = w;
-        scaleDimension.height = h;
+    	// print to the raster of the colour mode unless the result has to be resampled
+    	BufferedImage buffer = new BufferedImage(rw, rh, factor > 1 ? BufferedImage.TYPE_INT_RGB : getImageType());
+    	Graphics2D g = buffer.createGraphics();
+    	try {
+    		// make sure that the page background is white
+    		g.setColor(Color.WHITE);
+    		g.fillRect(0, 0, rw, rh);
+    		g.setColor(Color.BLACK);
+    		if (quality) {
+    			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    			g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+    		} else {
+    			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+    			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+    			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+    			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    		}
+    		renderRegion(g, rw, rh, new Rectangle(0, 0, rw, rh));
+    	} finally {
+    		g.dispose();
+    	}
     	
+    	return factor > 1 ? SUPERSAMPLING_RESAMPLER.resample(buffer, w, h) : buffer;
+    }
+    
+    /**
+     * Print the page at 72 dpi and resample the result to the given size
+     */
+    private BufferedImage renderResampled(int w, int h) throws PrinterException {
         Graphics g = null;
         
     	try {
@@ -106,29 +145,19 @@ public class BufferedPrintablePage implements Page {
             printable.print(g, pageFormat, pageIndex);            
             g.setColor(oldColor);            
             
-            Image buf = tmpBuffer.getScaledInstance(w, h, BufferedImage.SCALE_SMOOTH);
-
-    		// the scaled instance will be evaluated on the first drawing attempt so
-    		// do this here
-    		BufferedImage scaledBuf = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-    		Graphics gbuf = null;
-    		try {
-    			gbuf = scaledBuf.createGraphics();
-    			gbuf.drawImage(buf, 0, 0, null);
-    		} finally {
-    			if (gbuf != null) {
-    				gbuf.dispose();
-    			}
-    		}
-    		
-    		scaledImg = scaledBuf;
-        } catch (PrinterException ex) {
-        	
+    		return ImageResampler.getDefault().resample(tmpBuffer, w, h);
+        } finally {
         	if (g != null)
         		g.dispose();
-        	
-            Logger.getLogger(BufferedPrintablePage.class.getName()).log(Level.SEVERE, null, ex);
-        } 
+        }
+    }
+
+    @Override
+    public void renderRegion(Graphics2D g, int w, int h, Rectangle region) throws PrinterException {
+        // map the 72 dpi based coordinates of the printable to the requested page size
+        g.translate(-region.x, -region.y);
+        g.scale(w / pageFormat.getWidth(), h / pageFormat.getHeight());
+        printable.print(g, pageFormat, pageIndex);
     }
 
     public BufferedPrintablePage(Printable printable, int pageIndex, PageFormat pageFormat) {
@@ -141,11 +170,34 @@ public class BufferedPrintablePage implements Page {
         pageSize = new Dimension((int)(pageFormat.getWidth() / 72.0f * DPI), (int)(pageFormat.getHeight() / 72.0f * DPI));
     }
 
-    @Override
-    public void freeResources() {
-        if(scaledImg != null) {
-            scaledImg.flush();
-        }
+    public boolean getDirectRendering() {
+    	return directRendering;
+    }
+    
+    /**
+     * Print the page directly at the requested resolution by transforming the graphics
+     * (crisp text, default) or print it at 72 dpi and resample the result to the requested
+     * resolution (for printables which expect an untransformed graphics).
+     * Affects the next rendering
+     */
+    public void setDirectRendering(boolean directRendering) {
+    	this.directRendering = directRendering;
+    }
+    
+    public int getSupersampling() {
+    	return supersampling;
+    }
+    
+    /**
+     * Set the factor by which the resolution is multiplied when rendering directly
+     * (the result is reduced to the requested resolution afterwards, 1 = no supersampling).
+     * The factor is reduced for renderings whose supersampled buffer would exceed
+     * MAX_SUPERSAMPLED_PIXELS
+     */
+    public void setSupersampling(int supersampling) {
+    	if (supersampling < 1)
+    		throw new IllegalArgumentException("The supersampling factor must be at least 1.");
+    	this.supersampling = supersampling;
     }
 
 	@Override
@@ -30,13 +30,13 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import de.renber.swing.controls.documentview.types.Page;
 import de.renber.swing.controls.documentview.types.PageAdorner;
+import de.renber.swing.controls.documentview.types.PageGeometry;
 import de.renber.swing.controls.documentview.types.PageVisibility;
+import de.renber.swing.controls.documentview.types.PageVisibilityBuffer;
 import de.renber.swing.controls.documentview.types.PreviewLayout;
 
 /**
@@ -49,138 +49,123 @@ public class ContinuousFacingPagePreviewLayout implements PreviewLayout {
     // vertical spacing between pages (at 100 %)
     int m_verticalSpacing = 40;    
 
+    // the geometry for the last used page sizes and zoom level
+    Geometry geometry = null;
+    // the page sizes at the last used zoom level (for getPageSizes(float, Dimension[]))
+    ScaledPageSizes scaledPageSizes = null;
+
+    /**
+     * Return the zoomed page sizes and the row offsets for the given page sizes and zoom level
+     * (which are calculated once and reused until the page sizes or the zoom level change)
+     */
+    private Geometry getGeometry(float zoomLevel, PageGeometry pageSizes) {
+    	Geometry geo = geometry;
+    	if (geo == null || !geo.pageSizes.isSameAs(pageSizes) || geo.zoomLevel != zoomLevel) {
+    		geo = new Geometry(zoomLevel, pageSizes);
+    		geometry = geo;
+    	}
+    	return geo;
+    }
+
     @Override
     public Dimension getNeededSpace(float zoomLevel, Dimension[] pageSizes) {
+    	return getNeededSpace(zoomLevel, PageGeometry.of(pageSizes));
+    }
+
+    @Override
+    public Dimension getNeededSpace(float zoomLevel, PageGeometry pageSizes) {
     	
-    	if (pageSizes.length == 0)
+    	if (pageSizes.getPageCount() == 0)
     		return new Dimension(0, 0);
     	
-    	int maxWidth = 0;
-    	int pageHeights = 0;
+    	Geometry geo = getGeometry(zoomLevel, pageSizes);
     	
-    	pageSizes = getPageSizes(zoomLevel, pageSizes);
-    	
-    	// calculate max width and the height of all pages (in groups of 2)
-    	for(int i = 0; i < pageSizes.length; i+=2) {
-    		// get width and height of the current row
-    		int localWidth;
-    		int localHeight;
-    		
-    		if (i == pageSizes.length - 1) {
-    			// last page is alone
-    			localWidth = pageSizes[i].width;
-    			localHeight = pageSizes[i].height;
-    		} else {
-    			localWidth = pageSizes[i].width + pageSizes[i+1].width;
-    			localHeight = Math.max(pageSizes[i].height, pageSizes[i+1].height);
-    		}    	
-    		        	
-        	if (localWidth > maxWidth)
-    			maxWidth = localWidth;
-    		
-        	pageHeights += localHeight + getZoomedVerticalSpacing(zoomLevel);
-    	}
-    	
-        int neededWidth = (int) (3 * getZoomedHorizontalSpacing(zoomLevel) + maxWidth);
-        int neededHeight = (int) (3*getZoomedVerticalSpacing(zoomLevel) + pageHeights);
+        int neededWidth = 3 * getZoomedHorizontalSpacing(zoomLevel) + geo.maxRowWidth;
+        int neededHeight = 3*getZoomedVerticalSpacing(zoomLevel) + geo.rowOffsets.getTotal();
 
         return new Dimension(neededWidth, neededHeight);        	       
     }
 
+    /**
+     * {@inheritDoc}
+     * The returned array is shared and must not be modified
+     */
     @Override
     public Dimension[] getPageSizes(float zoomLevel, Dimension[] pageSizes) {
-    	// calculate scaled page sizes
-    	Dimension[] scaled = Arrays.copyOf(pageSizes, pageSizes.length);
-    	for(int i = 0; i < pageSizes.length; i++) {
-    		scaled[i] = new Dimension((int) (pageSizes[i].width * zoomLevel), (int) (pageSizes[i].height * zoomLevel)); 
-    	}    
-    	return scaled;
+    	ScaledPageSizes sizes = ScaledPageSizes.get(scaledPageSizes, zoomLevel, pageSizes);
+    	scaledPageSizes = sizes;
+    	return sizes.scaled;
     }
-    
-    /**
-     * Return the maximum width of a row (for left and right pages) 
-     */
-    private static RowWidth getMaxWidth(Dimension[] pageSizes) {
-    	
-    	// we have to determine max left and max right separately
-    	// because we want to align all pages at the (virtual) middle
-    	
-    	RowWidth maxWidth = new RowWidth();
-        
-        for(int i = 0; i < pageSizes.length; i+=2) {
-    		// get width and height of the current row
-        	int leftWidth = pageSizes[i].width;
-        	int rightWidth = 0;    		
-    		
-    		if (i < pageSizes.length - 1) {
-    			// not the last page
-    			rightWidth = pageSizes[i + 1].width; 			
-    		}
-    		        	
-        	if (leftWidth > maxWidth.left)
-    			maxWidth.left = leftWidth;
-        	if (rightWidth > maxWidth.right)
-    			maxWidth.right = rightWidth;
-    	}
-        return maxWidth;
+
+    @Override
+    public PageGeometry getPageSizes(float zoomLevel, PageGeometry pageSizes) {
+    	return pageSizes.scale(zoomLevel);
     }
     
     /**
      * Return the height of the row the page with the given index is in     
      */
-    private static int getRowHeight(int pageIndex, Dimension[] pageSizes) {
-    	if (pageSizes.length == 0)
+    private static int getRowHeight(int pageIndex, PageGeometry pageSizes) {
+    	int pageCount = pageSizes.getPageCount();
+    	if (pageCount == 0)
     		return 0;
     	
     	// get the index of the left page
     	int actualIndex = pageIndex / 2 * 2;
     	
-    	if (actualIndex == pageSizes.length - 1)
-    		return pageSizes[actualIndex].height;
+    	if (actualIndex == pageCount - 1)
+    		return pageSizes.getHeight(actualIndex);
     	else
-    		return Math.max(pageSizes[actualIndex].height, pageSizes[actualIndex + 1].height);
+    		return Math.max(pageSizes.getHeight(actualIndex), pageSizes.getHeight(actualIndex + 1));
     }    
 
     @Override
     public List<PageVisibility> getVisiblePages(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages) {
-    	List<PageVisibility> visPages = new ArrayList<PageVisibility>(1);
+    	PageVisibilityBuffer visPages = new PageVisibilityBuffer();
+    	getVisiblePages(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pages.size(), visPages);
+    	return visPages.toList();
+    }
+
+    @Override
+    public void getVisiblePages(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, PageVisibilityBuffer visPages) {
+    	getVisiblePages(viewPortSize, zoomLevel, pageSizes, scrollPosition, pageSizes.getPageCount(), visPages);
+    }
+
+    private void getVisiblePages(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, int pageCount, PageVisibilityBuffer visPages) {
+    	visPages.clear();
 
-        pageSizes = getPageSizes(zoomLevel, pageSizes);
+        Geometry geo = getGeometry(zoomLevel, pageSizes);
+        PageGeometry scaled = geo.scaled;
                 
-        int py = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y;
-        int topPage = 0;
-        int rowHeight = getRowHeight(topPage, pageSizes);        
-        while (py + rowHeight < 0) {            
-            py += rowHeight + getZoomedVerticalSpacing(zoomLevel);
-            // move to the next row
-            topPage += 2;
-            rowHeight = getRowHeight(topPage, pageSizes);
-        }
+        int startY = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y;
+        int topRow = getTopRow(startY, zoomLevel, geo);
+        int topPage = topRow * 2;
+        int py = startY + geo.rowOffsets.getOffset(topRow);
 
         int p = topPage;
-        while (p < pages.size() && py < viewPortSize.height) {
+        while (p < pageCount && py < viewPortSize.height) {
         	// calculate the visibility of the actual page content (without adorners and spacing)
-        	float visibleHeight = Math.min(py + pageSizes[p].height, viewPortSize.height) - Math.max(0, py);        	
+        	int height = scaled.getHeight(p);
+        	float visibleHeight = Math.min(py + height, viewPortSize.height) - Math.max(0, py);        	
         	if (visibleHeight > 0)        		
-        		visPages.add(new PageVisibility(p, visibleHeight / (float)pageSizes[p].height));
+        		visPages.add(p, visibleHeight / (float)height);
 
-            if (p + 1 < pages.size()) {
-            	visibleHeight = Math.min(py + pageSizes[p + 1].height, viewPortSize.height) - Math.max(0, py);        	
+            if (p + 1 < pageCount) {
+            	height = scaled.getHeight(p + 1);
+            	visibleHeight = Math.min(py + height, viewPortSize.height) - Math.max(0, py);        	
             	if (visibleHeight > 0)        		
-            		visPages.add(new PageVisibility(p + 1, visibleHeight / (float)pageSizes[p + 1].height));                            
+            		visPages.add(p + 1, visibleHeight / (float)height);                            
             }
 
-            py += getRowHeight(p, pageSizes) + getZoomedVerticalSpacing(zoomLevel);
+            py += getRowHeight(p, scaled) + getZoomedVerticalSpacing(zoomLevel);
             p += 2;
         }
-
-        return visPages;
     }
     
-    private int getXOffset(Rectangle targetRect, int startx, int width) {    	
-    	if (width + 10 <= targetRect.width) {
+    private int getXOffset(int targetX, int targetWidth, int startx, int width) {    	
+    	if (width + 10 <= targetWidth) {
         	// center pages horizontally (enough room)
-    		return targetRect.x + targetRect.width / 2 - width / 2;
+    		return targetX + targetWidth / 2 - width / 2;
         } else {
             // scroll pages horizontally
         	return startx;
@@ -189,48 +174,72 @@ public class ContinuousFacingPagePreviewLayout implements PreviewLayout {
 
     @Override
     public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner) {        
+    	draw(g, backgroundColor, targetRect, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pages, adorner);
+    }
+
+    @Override
+    public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner) {        
     	if (pages.size() == 0)
     		return;
     	
-    	pageSizes = getPageSizes(zoomLevel, pageSizes);
+    	Geometry geo = getGeometry(zoomLevel, pageSizes);
+    	PageGeometry scaled = geo.scaled;
     	
-    	RowWidth maxWidth = getMaxWidth(pageSizes);
-    	int px_start = getXOffset(targetRect, getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x, maxWidth.total() + 2*getZoomedHorizontalSpacing(zoomLevel));
+    	RowWidth maxWidth = geo.maxWidth;
+    	int px_start = getXOffset(targetRect.x, targetRect.width, getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x, maxWidth.total() + 2*getZoomedHorizontalSpacing(zoomLevel));
     	       
-        int py = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y;
-        int topPage = 0;
-        int rowHeight = getRowHeight(topPage, pageSizes);
-        while (py + rowHeight < 0) {
-            topPage += 2;
-            py += rowHeight + getZoomedVerticalSpacing(zoomLevel);
-        }
+        int startY = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y;
+        int topRow = getTopRow(startY, zoomLevel, geo);
+        int py = startY + geo.rowOffsets.getOffset(topRow);
 
-        int p = topPage; // get the left top page
+        int p = topRow * 2; // get the left top page
         while (p < pages.size() && py < targetRect.y + targetRect.height) {
             Page page = pages.get(p);
+            int rowHeight = getRowHeight(p, scaled);
                                   
-            drawPage(g, backgroundColor, p + 1, zoomLevel, px_start, py + rowHeight/2 - pageSizes[p].height / 2, pageSizes[p], page, adorner);
+            drawPage(g, backgroundColor, p + 1, zoomLevel, px_start, py + rowHeight/2 - scaled.getHeight(p) / 2, scaled.getWidth(p), scaled.getHeight(p), page, adorner, targetRect);
 
             // a second page?
             if (p + 1 < pages.size()) {
-            	drawPage(g, backgroundColor, p + 2, zoomLevel, px_start + maxWidth.left + getZoomedHorizontalSpacing(zoomLevel),  py + rowHeight/2 - pageSizes[p + 1].height / 2, pageSizes[p + 1], pages.get(p + 1), adorner);            	                
+            	drawPage(g, backgroundColor, p + 2, zoomLevel, px_start + maxWidth.left + getZoomedHorizontalSpacing(zoomLevel),  py + rowHeight/2 - scaled.getHeight(p + 1) / 2, scaled.getWidth(p + 1), scaled.getHeight(p + 1), pages.get(p + 1), adorner, targetRect);            	                
             }
 
-            py += getRowHeight(p, pageSizes) + getZoomedVerticalSpacing(zoomLevel);
+            py += rowHeight + getZoomedVerticalSpacing(zoomLevel);
             p += 2;
         }
     }
 
-    void drawPage(Graphics2D g, Color backgroundColor, int pageNum, float zoomLevel, int x, int y, Dimension pageSize, Page page, PageAdorner adorner) {
+    @Override
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, int pageIndex) {
+    	return getPageBounds(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pageIndex);
+    }
+
+    @Override
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, int pageIndex) {
+    	Geometry geo = getGeometry(zoomLevel, pageSizes);
+    	PageGeometry scaled = geo.scaled;
+    	
+    	RowWidth maxWidth = geo.maxWidth;
+    	int px_start = getXOffset(0, viewPortSize.width, getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x, maxWidth.total() + 2*getZoomedHorizontalSpacing(zoomLevel));
+    	
+    	// get the top of the row the page is in
+    	int leftPage = pageIndex / 2 * 2;
+    	int py = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y + geo.rowOffsets.getOffset(leftPage / 2);
+    	
+    	int px = pageIndex == leftPage ? px_start : px_start + maxWidth.left + getZoomedHorizontalSpacing(zoomLevel);
+    	return new Rectangle(px, py + getRowHeight(leftPage, scaled) / 2 - scaled.getHeight(pageIndex) / 2, scaled.getWidth(pageIndex), scaled.getHeight(pageIndex));
+    }
+
+    void drawPage(Graphics2D g, Color backgroundColor, int pageNum, float zoomLevel, int x, int y, int width, int height, Page page, PageAdorner adorner, Rectangle targetRect) {
         if (adorner != null) {
-            adorner.drawPrePage(g, backgroundColor, pageNum, zoomLevel, x, y, pageSize.width, pageSize.height);
+            adorner.drawPrePage(g, backgroundColor, pageNum, zoomLevel, x, y, width, height);
         }
         // fill page with white
         g.setColor(Color.WHITE);
-        g.fillRect(x, y, pageSize.width, pageSize.height);
-        page.draw(g, x, y, pageSize.width, pageSize.height);
+        g.fillRect(x, y, width, height);
+        PagePainter.drawPage(g, page, x, y, width, height, targetRect);
         if (adorner != null) {
-            adorner.drawPostPage(g, backgroundColor, pageNum, zoomLevel, x, y, pageSize.width, pageSize.height);
+            adorner.drawPostPage(g, backgroundColor, pageNum, zoomLevel, x, y, width, height);
         }
     }
 
@@ -254,34 +263,41 @@ public class ContinuousFacingPagePreviewLayout implements PreviewLayout {
 
     @Override
     public Point ensureVisible(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, int pageIndex) {
+    	return ensureVisible(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), pageIndex);
+    }
+
+    @Override
+    public Point ensureVisible(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, int pageIndex) {
 
-    	pageSizes = getPageSizes(zoomLevel, pageSizes);
+    	Geometry geo = getGeometry(zoomLevel, pageSizes);
     	int row = pageIndex / 2;
-    	int sy = 0;
     	int sx = 0;
-    	for(int r = 0; r < row; r++)
-    		sy += getRowHeight(r*2, pageSizes);
     	    	
     	if (pageIndex % 2 == 0) {
     		// left page
     		sx = getZoomedHorizontalSpacing(zoomLevel);
     	} else {
     		// right page
-    		sx = pageSizes[pageIndex / 2 * 2].width + 2 * getZoomedHorizontalSpacing(zoomLevel);
+    		sx = geo.scaled.getWidth(pageIndex / 2 * 2) + 2 * getZoomedHorizontalSpacing(zoomLevel);
     	}
     	        
-        // add vertical spacing
-        sy += getZoomedVerticalSpacing(zoomLevel) + row* getZoomedVerticalSpacing(zoomLevel);
+        // the row offsets already contain the spacing between the rows
+        int sy = getZoomedVerticalSpacing(zoomLevel) + geo.rowOffsets.getOffset(row);
 
         return new Point(sx, sy);
     }   
 
     @Override
     public Dimension getViewElementSize(float zoomLevel, int pageIndex, Dimension[] pageSizes) {
-        pageSizes = getPageSizes(zoomLevel, pageSizes);        
-        int rowHeight = getRowHeight(pageIndex, pageSizes);                             
+    	return getViewElementSize(zoomLevel, pageIndex, PageGeometry.of(pageSizes));
+    }
+
+    @Override
+    public Dimension getViewElementSize(float zoomLevel, int pageIndex, PageGeometry pageSizes) {
+        Geometry geo = getGeometry(zoomLevel, pageSizes);
+        int rowHeight = getRowHeight(pageIndex, geo.scaled);                             
         
-        return new Dimension(getMaxWidth(pageSizes).total() + getZoomedHorizontalSpacing(zoomLevel), rowHeight + getZoomedVerticalSpacing(zoomLevel));
+        return new Dimension(geo.maxWidth.total() + getZoomedHorizontalSpacing(zoomLevel), rowHeight + getZoomedVerticalSpacing(zoomLevel));
     }
     
     @Override
@@ -303,6 +319,78 @@ public class ContinuousFacingPagePreviewLayout implements PreviewLayout {
     public int getPageIndexOfPreviousViewElement(int pageIndex) {
     	return Math.max(0, pageIndex / 2 * 2 - 2);
     }
+    
+    /**
+     * Return the index of the first row which is visible, when drawing begins at startY (may be negative if scrolled)
+     */
+    private int getTopRow(int startY, float zoomLevel, Geometry geo) {
+    	// the first row whose pages end at or below the top of the view port
+    	return geo.rowOffsets.findElement(getZoomedVerticalSpacing(zoomLevel) - startY);
+    }
+    
+    /**
+     * Zoomed page sizes and row offsets for specific page sizes and a zoom level
+     */
+    class Geometry {
+    	// the (unzoomed) page sizes this geometry has been calculated for
+    	final PageGeometry pageSizes;
+    	final float zoomLevel;
+    	
+    	final PageGeometry scaled;
+    	// the y offsets of the rows
+    	final OffsetIndex rowOffsets;
+    	// the maximum width of left and right pages
+    	final RowWidth maxWidth;
+    	// the maximum width of a row
+    	final int maxRowWidth;
+    	
+    	Geometry(float zoomLevel, PageGeometry pageSizes) {
+    		this.pageSizes = pageSizes;
+    		this.zoomLevel = zoomLevel;
+    		
+    		scaled = pageSizes.scale(zoomLevel);
+    		int pageCount = scaled.getPageCount();
+    		int runCount = scaled.getRunCount();
+    		
+    		// calculate the row heights and widths (in groups of 2),
+    		// rows whose pages belong to the same run are added at once
+    		rowOffsets = new OffsetIndex(getZoomedVerticalSpacing(zoomLevel), runCount);
+    		RowWidth max = new RowWidth();
+    		int maxLocalWidth = 0;
+    		int run = 0;
+    		int runEnd = 0;
+    		int i = 0;
+    		while (i < pageCount) {
+    			// find the run of the left page
+    			while (runEnd <= i) {
+    				runEnd += scaled.getRunLength(run);
+    				run++;
+    			}
+    			
+    			int rows = (runEnd - i) / 2;
+    			if (rows > 0) {
+    				// both pages of these rows belong to the current run
+    				int width = scaled.getRunWidth(run - 1);
+    				rowOffsets.add(rows, scaled.getRunHeight(run - 1));
+    				max.left = Math.max(max.left, width);
+    				max.right = Math.max(max.right, width);
+    				maxLocalWidth = Math.max(maxLocalWidth, 2 * width);
+    				i += 2 * rows;
+    			} else {
+    				// a row whose pages belong to different runs or the last page
+    				int leftWidth = scaled.getWidth(i);
+    				int rightWidth = i < pageCount - 1 ? scaled.getWidth(i + 1) : 0;
+    				rowOffsets.add(1, getRowHeight(i, scaled));
+    				max.left = Math.max(max.left, leftWidth);
+    				max.right = Math.max(max.right, rightWidth);
+    				maxLocalWidth = Math.max(maxLocalWidth, leftWidth + rightWidth);
+    				i += 2;
+    			}
+    		}
+    		maxRowWidth = maxLocalWidth;
+    		maxWidth = max;
+    	}
+    }
 }
 
 class RowWidth {
@@ -30,13 +30,13 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import de.renber.swing.controls.documentview.types.Page;
 import de.renber.swing.controls.documentview.types.PageAdorner;
+import de.renber.swing.controls.documentview.types.PageGeometry;
 import de.renber.swing.controls.documentview.types.PageVisibility;
+import de.renber.swing.controls.documentview.types.PageVisibilityBuffer;
 import de.renber.swing.controls.documentview.types.PreviewLayout;
 
 /**
@@ -49,140 +49,174 @@ public class ContinuousPagePreviewLayout implements PreviewLayout {
     int m_horizontalSpacing = 20;
     // vertical spacing between pages (at 100 %)
     int m_verticalSpacing = 40;    
+    // the geometry for the last used page sizes and zoom level
+    Geometry geometry = null;
+    // the page sizes at the last used zoom level (for getPageSizes(float, Dimension[]))
+    ScaledPageSizes scaledPageSizes = null;
+
+    /**
+     * Return the zoomed page sizes and the page offsets for the given page sizes and zoom level
+     * (which are calculated once and reused until the page sizes or the zoom level change)
+     */
+    private Geometry getGeometry(float zoomLevel, PageGeometry pageSizes) {
+    	Geometry geo = geometry;
+    	if (geo == null || !geo.pageSizes.isSameAs(pageSizes) || geo.zoomLevel != zoomLevel) {
+    		geo = new Geometry(zoomLevel, pageSizes);
+    		geometry = geo;
+    	}
+    	return geo;
+    }
 
     @Override
     public Dimension getNeededSpace(float zoomLevel, Dimension[] pageSizes) {
-    	if (pageSizes.length == 0)
+    	return getNeededSpace(zoomLevel, PageGeometry.of(pageSizes));
+    }
+
+    @Override
+    public Dimension getNeededSpace(float zoomLevel, PageGeometry pageSizes) {
+    	if (pageSizes.getPageCount() == 0)
     		return new Dimension(0, 0);
     	
-    	float maxWidth = 0;
-    	int pageHeights = 0;
-    	
-    	pageSizes = getPageSizes(zoomLevel, pageSizes);
+    	Geometry geo = getGeometry(zoomLevel, pageSizes);
     	
-    	// calculate max width and the height of all pages
-    	for(int i = 0; i < pageSizes.length; i++) {
-    		if (pageSizes[i].width > maxWidth)
-    			maxWidth = pageSizes[i].width ;
-    		
-    		pageHeights += pageSizes[i].height + getZoomedVerticalSpacing(zoomLevel);
-    	}
-    	
-        int neededWidth = (int) (2 * getZoomedHorizontalSpacing(zoomLevel) + maxWidth);
-        int neededHeight = (int) (getZoomedVerticalSpacing(zoomLevel) + pageHeights);
+        int neededWidth = 2 * getZoomedHorizontalSpacing(zoomLevel) + geo.maxWidth;
+        int neededHeight = getZoomedVerticalSpacing(zoomLevel) + geo.offsets.getTotal();
 
         return new Dimension(neededWidth, neededHeight);
     }
 
+    /**
+     * {@inheritDoc}
+     * The returned array is shared and must not be modified
+     */
     @Override
     public Dimension[] getPageSizes(float zoomLevel, Dimension[] pageSizes) {
-    	// calculate scaled page sizes
-    	Dimension[] scaled = Arrays.copyOf(pageSizes, pageSizes.length);
-    	for(int i = 0; i < pageSizes.length; i++) {
-    		scaled[i] = new Dimension((int) (pageSizes[i].width * zoomLevel), (int) (pageSizes[i].height * zoomLevel)); 
-    	}    
-    	return scaled;
+    	ScaledPageSizes sizes = ScaledPageSizes.get(scaledPageSizes, zoomLevel, pageSizes);
+    	scaledPageSizes = sizes;
+    	return sizes.scaled;
     }
 
     @Override
-    public List<PageVisibility> getVisiblePages(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages) {    	    	
-    	List<PageVisibility> visPages = new ArrayList<PageVisibility>();
+    public PageGeometry getPageSizes(float zoomLevel, PageGeometry pageSizes) {
+    	return pageSizes.scale(zoomLevel);
+    }
+
+    @Override
+    public List<PageVisibility> getVisiblePages(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages) {
+    	PageVisibilityBuffer visPages = new PageVisibilityBuffer();
+    	getVisiblePages(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pages.size(), visPages);
+    	return visPages.toList();
+    }
+
+    @Override
+    public void getVisiblePages(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, PageVisibilityBuffer visPages) {
+    	getVisiblePages(viewPortSize, zoomLevel, pageSizes, scrollPosition, pageSizes.getPageCount(), visPages);
+    }
+
+    private void getVisiblePages(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, int pageCount, PageVisibilityBuffer visPages) {
+    	visPages.clear();
     	
-    	if (pages.size() == 0)
-    		return visPages;
+    	if (pageCount == 0)
+    		return;
 
-        pageSizes = getPageSizes(zoomLevel, pageSizes);
-        TopPageInfo tp = getTopPage(getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y, getZoomedVerticalSpacing(zoomLevel), pageSizes);      
+        Geometry geo = getGeometry(zoomLevel, pageSizes);
+        PageGeometry scaled = geo.scaled;
+        int startY = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y;
 
-        int p = tp.topPage;
-        int py = tp.posY;
+        int p = getTopPage(startY, geo);
+        int py = startY + geo.offsets.getOffset(p);
         
-        while (p < pages.size() && py < viewPortSize.height) {        	
+        while (p < pageCount && py < viewPortSize.height) {        	
         	// calculate the visibility of the actual page content
         	// (without adorners and spacing)
-        	float visibleHeight = Math.min(py + pageSizes[p].height, viewPortSize.height) - Math.max(0, py);        	
+        	int height = scaled.getHeight(p);
+        	float visibleHeight = Math.min(py + height, viewPortSize.height) - Math.max(0, py);        	
         	if (visibleHeight > 0)
-        		visPages.add(new PageVisibility(p, visibleHeight / (float)pageSizes[p].height ));
+        		visPages.add(p, visibleHeight / (float)height);
 
-            py += pageSizes[p].height + getZoomedVerticalSpacing(zoomLevel);
+            py += height + getZoomedVerticalSpacing(zoomLevel);
             p++;
         }
-
-        return visPages;
-    }
-    
-    /**
-     * Return the largest width from the given page sizes array     
-     */
-    private static int getMaxWidth(Dimension[] pageSizes) {
-    	int maxWidth = 0; 
-    	for(int i = 0; i < pageSizes.length; i++) {
-    		if (pageSizes[i].width > maxWidth)
-    			maxWidth = pageSizes[i].width;
-    	}
-    	return maxWidth;
     }
     
     /**
      * Return the index of the first page which is visible, when drawing begins at startY (may be negative if scrolled)
-     * and its start y position (may be negative)
+     * (its start y position is startY plus its offset)
      */
-    private TopPageInfo getTopPage(int startY, int verticalSpacing, Dimension[] pageSizes) {
-    	TopPageInfo tp = new TopPageInfo();
-    	tp.posY = startY;
-        tp.topPage = 0;
-        while (tp.posY + pageSizes[tp.topPage].height + verticalSpacing < 0) {            
-        	tp.posY += pageSizes[tp.topPage].height + verticalSpacing;
-        	tp.topPage++;
-        }
-        return tp;
+    private int getTopPage(int startY, Geometry geo) {
+    	// the first page which ends (including its spacing) at or below the top of the view port
+        return geo.offsets.findElement(-startY);
     }
     
-    private int getXCenter(Rectangle targetRect, int startx, int width) {    	
-    	if (width + 10 <= targetRect.width) {
+    private int getXCenter(int targetX, int targetWidth, int startx, int width) {    	
+    	if (width + 10 <= targetWidth) {
         	// center pages horizontally (enough room)
-    		return targetRect.x + targetRect.width / 2;
+    		return targetX + targetWidth / 2;
         } else {
             // scroll pages horizontally
-        	return targetRect.x + startx + width / 2;
+        	return targetX + startx + width / 2;
         }    	
     }
 
     @Override
     public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner) {
+    	draw(g, backgroundColor, targetRect, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pages, adorner);
+    }
+
+    @Override
+    public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner) {
         // get the actual (zoomed) page sizes
-    	pageSizes = getPageSizes(zoomLevel, pageSizes);
+    	Geometry geo = getGeometry(zoomLevel, pageSizes);
+    	PageGeometry scaled = geo.scaled;
 
         // get the starting page and x and y coordinates
-        int maxWidth = getMaxWidth(pageSizes);    	    	    	
-        int px_center = getXCenter(targetRect, getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x, maxWidth);        
-        TopPageInfo tp = getTopPage(getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y, getZoomedVerticalSpacing(zoomLevel), pageSizes);
+        int px_center = getXCenter(targetRect.x, targetRect.width, getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x, geo.maxWidth);        
+        int startY = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y;
 
         // draw the page previews   
-        int p = tp.topPage;
-        int py = tp.posY;
+        int p = getTopPage(startY, geo);
+        int py = startY + geo.offsets.getOffset(p);
         
         while (p < pages.size() && py < targetRect.y + targetRect.height) {
             Page page = pages.get(p);
+            int width = scaled.getWidth(p);
+            int height = scaled.getHeight(p);
+            int px = px_center - width / 2;
 
             if (adorner != null) {
-                adorner.drawPrePage(g, backgroundColor, p + 1, zoomLevel, px_center - pageSizes[p].width / 2, py, pageSizes[p].width, pageSizes[p].height);
+                adorner.drawPrePage(g, backgroundColor, p + 1, zoomLevel, px, py, width, height);
             }
 
             // fill page with white
             g.setColor(Color.WHITE);
-            g.fillRect(px_center - pageSizes[p].width / 2, py, pageSizes[p].width, pageSizes[p].height);            
-            page.draw(g, px_center - pageSizes[p].width / 2, py, pageSizes[p].width, pageSizes[p].height);
+            g.fillRect(px, py, width, height);            
+            PagePainter.drawPage(g, page, px, py, width, height, targetRect);
             
             if (adorner != null) {
-                adorner.drawPostPage(g, backgroundColor, p + 1, zoomLevel, px_center - pageSizes[p].width / 2, py, pageSizes[p].width, pageSizes[p].height);
+                adorner.drawPostPage(g, backgroundColor, p + 1, zoomLevel, px, py, width, height);
             }
 
-            py += pageSizes[p].height + getZoomedVerticalSpacing(zoomLevel);
+            py += height + getZoomedVerticalSpacing(zoomLevel);
             p++;
         }
     }
 
+    @Override
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, int pageIndex) {
+    	return getPageBounds(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pageIndex);
+    }
+
+    @Override
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, int pageIndex) {
+    	Geometry geo = getGeometry(zoomLevel, pageSizes);
+    	PageGeometry scaled = geo.scaled;
+    	
+    	int px_center = getXCenter(0, viewPortSize.width, getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x, geo.maxWidth);
+    	int py = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y + geo.offsets.getOffset(pageIndex);
+    	
+    	return new Rectangle(px_center - scaled.getWidth(pageIndex) / 2, py, scaled.getWidth(pageIndex), scaled.getHeight(pageIndex));
+    }
+
     /**
      * Returns the vertical spacing for the current zoom level
      *
@@ -203,21 +237,25 @@ public class ContinuousPagePreviewLayout implements PreviewLayout {
 
     @Override
     public Point ensureVisible(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, int pageIndex) {
-        Dimension[] scaled = getPageSizes(zoomLevel, pageSizes);    	
+    	return ensureVisible(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), pageIndex);
+    }
+
+    @Override
+    public Point ensureVisible(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, int pageIndex) {
     	int sx = 0;
-        
-        int top = 0;
-        for(int i = 0; i < pageIndex; i++) {
-        	top += scaled[i].height + getZoomedVerticalSpacing(zoomLevel);
-        }        
-        int sy = getZoomedVerticalSpacing(zoomLevel) + top;
+        int sy = getZoomedVerticalSpacing(zoomLevel) + getGeometry(zoomLevel, pageSizes).offsets.getOffset(pageIndex);
         return new Point(sx, sy);
     }
 
     @Override
     public Dimension getViewElementSize(float zoomLevel, int pageIndex, Dimension[] pageSizes) {    	
-    	Dimension[] scaled = getPageSizes(zoomLevel, pageSizes);    	    	    	
-        return new Dimension((int)(m_horizontalSpacing + scaled[pageIndex].width), (int)(m_verticalSpacing + scaled[pageIndex].height));
+    	return getViewElementSize(zoomLevel, pageIndex, PageGeometry.of(pageSizes));
+    }     
+
+    @Override
+    public Dimension getViewElementSize(float zoomLevel, int pageIndex, PageGeometry pageSizes) {    	
+    	PageGeometry scaled = pageSizes.scale(zoomLevel);
+        return new Dimension(m_horizontalSpacing + scaled.getWidth(pageIndex), m_verticalSpacing + scaled.getHeight(pageIndex));
     }     
     
     @Override
@@ -239,9 +277,33 @@ public class ContinuousPagePreviewLayout implements PreviewLayout {
     public int getPageIndexOfPreviousViewElement(int pageIndex) {
    	 return Math.max(0, pageIndex - 1);
     }    
-}
 
-class TopPageInfo {
-	int topPage = 0;
-	int posY = 0;
+    /**
+     * Zoomed page sizes and page offsets for specific page sizes and a zoom level
+     */
+    class Geometry {
+    	// the (unzoomed) page sizes this geometry has been calculated for
+    	final PageGeometry pageSizes;
+    	final float zoomLevel;
+    	
+    	final PageGeometry scaled;
+    	// the y offsets of the pages
+    	final OffsetIndex offsets;
+    	final int maxWidth;
+    	
+    	Geometry(float zoomLevel, PageGeometry pageSizes) {
+    		this.pageSizes = pageSizes;
+    		this.zoomLevel = zoomLevel;
+    		
+    		scaled = pageSizes.scale(zoomLevel);
+    		maxWidth = scaled.getMaxWidth();
+    		
+    		// pages of the same size are added as a whole run
+    		int runCount = scaled.getRunCount();
+    		offsets = new OffsetIndex(getZoomedVerticalSpacing(zoomLevel), runCount);
+    		for(int r = 0; r < runCount; r++) {
+    			offsets.add(scaled.getRunLength(r), scaled.getRunHeight(r));
+    		}
+    	}
+    }
 }
@@ -30,13 +30,13 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import de.renber.swing.controls.documentview.types.Page;
 import de.renber.swing.controls.documentview.types.PageAdorner;
+import de.renber.swing.controls.documentview.types.PageGeometry;
 import de.renber.swing.controls.documentview.types.PageVisibility;
+import de.renber.swing.controls.documentview.types.PageVisibilityBuffer;
 import de.renber.swing.controls.documentview.types.PreviewLayout;
 
 /**
@@ -51,100 +51,165 @@ public class FacingPagePreviewLayout implements PreviewLayout {
     // vertical spacing between pages (at 100 %)
     int m_verticalSpacing = 40;
     int currentPage = 0; // the currently visible 'left' page    
+    // the page sizes at the last used zoom level (for getPageSizes(float, Dimension[]))
+    ScaledPageSizes scaledPageSizes = null;
+    // reused for the page positions when drawing
+    final Rectangle drawBounds = new Rectangle();
 
     @Override
     public Dimension getNeededSpace(float zoomLevel, Dimension[] pageSizes) {    	
-    	if (pageSizes.length == 0)
+    	return getNeededSpace(zoomLevel, PageGeometry.of(pageSizes));
+    }
+
+    @Override
+    public Dimension getNeededSpace(float zoomLevel, PageGeometry pageSizes) {    	
+    	if (pageSizes.getPageCount() == 0)
     		return new Dimension(0, 0);
     	
-        Dimension[] scaled = getPageSizes(zoomLevel, pageSizes);
+        PageGeometry scaled = pageSizes.scale(zoomLevel);
         
-        if (currentPage == pageSizes.length - 1) {
-        	return new Dimension(2 * getZoomedHorizontalSpacing(zoomLevel) + 2 * scaled[currentPage].width, 2 * getZoomedVerticalSpacing(zoomLevel) + scaled[currentPage].height);	
+        if (currentPage == pageSizes.getPageCount() - 1) {
+        	return new Dimension(2 * getZoomedHorizontalSpacing(zoomLevel) + 2 * scaled.getWidth(currentPage), 2 * getZoomedVerticalSpacing(zoomLevel) + scaled.getHeight(currentPage));	
         } else        
-        	return new Dimension((int)(2.5 * getZoomedHorizontalSpacing(zoomLevel) + scaled[currentPage].width + scaled[currentPage+1].width), 2 * getZoomedVerticalSpacing(zoomLevel) + scaled[currentPage].height + scaled[currentPage + 1].height);
+        	return new Dimension((int)(2.5 * getZoomedHorizontalSpacing(zoomLevel) + scaled.getWidth(currentPage) + scaled.getWidth(currentPage+1)), 2 * getZoomedVerticalSpacing(zoomLevel) + scaled.getHeight(currentPage) + scaled.getHeight(currentPage + 1));
     }
 
+    /**
+     * {@inheritDoc}
+     * The returned array is shared and must not be modified
+     */
     @Override
     public Dimension[] getPageSizes(float zoomLevel, Dimension[] pageSizes) {
-    	Dimension[] scaled = Arrays.copyOf(pageSizes, pageSizes.length);
-    	for(int i = 0; i < pageSizes.length; i++) {
-    		scaled[i] = new Dimension((int) (pageSizes[i].width * zoomLevel), (int) (pageSizes[i].height * zoomLevel)); 
-    	}    
-    	return scaled;
+    	ScaledPageSizes sizes = ScaledPageSizes.get(scaledPageSizes, zoomLevel, pageSizes);
+    	scaledPageSizes = sizes;
+    	return sizes.scaled;
+    }
+
+    @Override
+    public PageGeometry getPageSizes(float zoomLevel, PageGeometry pageSizes) {
+    	return pageSizes.scale(zoomLevel);
     }
 
     @Override
     public List<PageVisibility> getVisiblePages(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages) {
-    	List<PageVisibility> visPages = new ArrayList<PageVisibility>(1);
+    	PageVisibilityBuffer visPages = new PageVisibilityBuffer();
+    	getVisiblePages(pages.size(), visPages);
+    	return visPages.toList();
+    }
+
+    @Override
+    public void getVisiblePages(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, PageVisibilityBuffer visPages) {
+    	getVisiblePages(pageSizes.getPageCount(), visPages);
+    }
+
+    /**
+     * Write the pages of the current view element to the given buffer
+     */
+    private void getVisiblePages(int pageCount, PageVisibilityBuffer visPages) {
+    	visPages.clear();
     	
         // 'left' page
-        if (currentPage < pages.size()) {
-            visPages.add(new PageVisibility(currentPage, 1.0f));
+        if (currentPage < pageCount) {
+            visPages.add(currentPage, 1.0f);
         }
         // 'right' page
-        if (currentPage + 1 < pages.size()) {
-            visPages.add(new PageVisibility(currentPage + 1, 1.0f));
+        if (currentPage + 1 < pageCount) {
+            visPages.add(currentPage + 1, 1.0f);
         }
-
-        return visPages;
     }
 
     @Override
     public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner) {
-        Dimension[] scaled = getPageSizes(zoomLevel, pageSizes);
-        
+    	draw(g, backgroundColor, targetRect, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pages, adorner);
+    }
+
+    @Override
+    public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner) {
+        PageGeometry scaled = pageSizes.scale(zoomLevel);
+
+        if (currentPage < pages.size()) {
+            // draw both pages
+            Rectangle bounds = drawBounds;
+            getScaledPageBounds(targetRect.width, targetRect.height, zoomLevel, scaled, scrollPosition, currentPage, bounds);
+            drawPage(g, backgroundColor, currentPage + 1, zoomLevel, bounds.x, bounds.y, bounds.width, bounds.height, pages.get(currentPage), adorner, targetRect);
+
+            if (currentPage + 1 < pages.size()) {
+                getScaledPageBounds(targetRect.width, targetRect.height, zoomLevel, scaled, scrollPosition, currentPage + 1, bounds);
+                drawPage(g, backgroundColor, currentPage + 2, zoomLevel, bounds.x, bounds.y, bounds.width, bounds.height, pages.get(currentPage + 1), adorner, targetRect);
+            }
+        }
+    }
+
+    @Override
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, int pageIndex) {
+    	return getPageBounds(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pageIndex);
+    }
+
+    @Override
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, int pageIndex) {
+        if (pageIndex != currentPage && pageIndex != currentPage + 1)
+            return null;
+
+        return getScaledPageBounds(viewPortSize.width, viewPortSize.height, zoomLevel, pageSizes.scale(zoomLevel), scrollPosition, pageIndex, new Rectangle());
+    }
+
+    /**
+     * Calculate the bounds of a page of the current view element
+     * @param scaled the zoomed page sizes
+     * @param bounds receives the bounds
+     * @return bounds
+     */
+    private Rectangle getScaledPageBounds(int viewPortWidth, int viewPortHeight, float zoomLevel, PageGeometry scaled, Point scrollPosition, int pageIndex, Rectangle bounds) {
         int twoPagesWidth;
-        if (currentPage == pages.size() - 1)
+        if (currentPage == scaled.getPageCount() - 1)
         	// only one page left, display it on the left side
-        	twoPagesWidth = 2 * (scaled[currentPage].width + getZoomedHorizontalSpacing(zoomLevel));
+        	twoPagesWidth = 2 * (scaled.getWidth(currentPage) + getZoomedHorizontalSpacing(zoomLevel));
         else
-        	twoPagesWidth = (scaled[currentPage].width + scaled[currentPage+1].width + 2*getZoomedHorizontalSpacing(zoomLevel));
+        	twoPagesWidth = (scaled.getWidth(currentPage) + scaled.getWidth(currentPage+1) + 2*getZoomedHorizontalSpacing(zoomLevel));
         
         int twoPagesHeight;
-        if (currentPage == pages.size() - 1)
+        if (currentPage == scaled.getPageCount() - 1)
         	// only one page left, display it on the left side
-        	twoPagesHeight = scaled[currentPage].height;
+        	twoPagesHeight = scaled.getHeight(currentPage);
         else
-        	twoPagesHeight = Math.max(scaled[currentPage].height, scaled[currentPage+1].height);
-
-        if (currentPage < pages.size()) {
-            int px;
-            if (twoPagesWidth + 10 <= targetRect.width) {
-                px = (targetRect.width - twoPagesWidth) / 2; // center page horizontally (enough room)
-            } else {
-                // scroll page horizontally
-                px = getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x;
-            }
+        	twoPagesHeight = Math.max(scaled.getHeight(currentPage), scaled.getHeight(currentPage+1));
 
-            int py_center;
-            if (twoPagesHeight + 10 <= targetRect.height) {
-            	// center pages vertically (enough room)
-            	py_center = targetRect.y + targetRect.height / 2;
-            } else {
-                // scroll page horizontally
-            	py_center = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y + twoPagesHeight / 2;
-            }
+        int px;
+        if (twoPagesWidth + 10 <= viewPortWidth) {
+            px = (viewPortWidth - twoPagesWidth) / 2; // center page horizontally (enough room)
+        } else {
+            // scroll page horizontally
+            px = getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x;
+        }
 
-            // draw both pages            
-            drawPage(g, backgroundColor, currentPage + 1, zoomLevel, px, py_center - scaled[currentPage].height / 2, scaled[currentPage], pages.get(currentPage), adorner);
+        int py_center;
+        if (twoPagesHeight + 10 <= viewPortHeight) {
+        	// center pages vertically (enough room)
+        	py_center = viewPortHeight / 2;
+        } else {
+            // scroll page horizontally
+        	py_center = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y + twoPagesHeight / 2;
+        }
 
-            if (currentPage + 1 < pages.size()) {
-                drawPage(g, backgroundColor, currentPage + 2, zoomLevel, px + scaled[currentPage].width + getZoomedHorizontalSpacing(zoomLevel), py_center - scaled[currentPage+1].height / 2, scaled[currentPage+1], pages.get(currentPage + 1), adorner);
-            }
+        if (pageIndex != currentPage) {
+        	// the right page
+        	px += scaled.getWidth(currentPage) + getZoomedHorizontalSpacing(zoomLevel);
         }
+
+        bounds.setBounds(px, py_center - scaled.getHeight(pageIndex) / 2, scaled.getWidth(pageIndex), scaled.getHeight(pageIndex));
+        return bounds;
     }
 
-    void drawPage(Graphics2D g, Color backgroundColor, int pageNum, float zoomLevel, int x, int y, Dimension pageSize, Page page, PageAdorner adorner) {
+    void drawPage(Graphics2D g, Color backgroundColor, int pageNum, float zoomLevel, int x, int y, int width, int height, Page page, PageAdorner adorner, Rectangle targetRect) {
         if (adorner != null) {
-            adorner.drawPrePage(g, backgroundColor, pageNum, zoomLevel, x, y, pageSize.width, pageSize.height);
+            adorner.drawPrePage(g, backgroundColor, pageNum, zoomLevel, x, y, width, height);
         }
         // fill page with white
         g.setColor(Color.WHITE);
-        g.fillRect(x, y, pageSize.width, pageSize.height);
-        page.draw(g, x, y, pageSize.width, pageSize.height);
+        g.fillRect(x, y, width, height);
+        PagePainter.drawPage(g, page, x, y, width, height, targetRect);
         if (adorner != null) {
-            adorner.drawPostPage(g, backgroundColor, pageNum, zoomLevel, x, y, pageSize.width, pageSize.height);
+            adorner.drawPostPage(g, backgroundColor, pageNum, zoomLevel, x, y, width, height);
         }
     }
 
@@ -168,27 +233,37 @@ public class FacingPagePreviewLayout implements PreviewLayout {
 
     @Override
     public Point ensureVisible(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, int pageIndex) {
+    	return ensureVisible(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), pageIndex);
+    }
+
+    @Override
+    public Point ensureVisible(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, int pageIndex) {
         currentPage = (pageIndex / 2) * 2; // jump two pages
-        int sx = (int)((pageIndex % 2) * pageSizes[currentPage].width * zoomLevel + getZoomedHorizontalSpacing(zoomLevel));
+        int sx = (int)((pageIndex % 2) * pageSizes.getWidth(currentPage) * zoomLevel + getZoomedHorizontalSpacing(zoomLevel));
         return new Point(sx, 0);
     }
     
      @Override
      public Dimension getViewElementSize(float zoomLevel, int pageIndex, Dimension[] pageSizes) {
-    	 if (pageSizes.length == 0)
+    	 return getViewElementSize(zoomLevel, pageIndex, PageGeometry.of(pageSizes));
+     }
+    
+     @Override
+     public Dimension getViewElementSize(float zoomLevel, int pageIndex, PageGeometry pageSizes) {
+    	 if (pageSizes.getPageCount() == 0)
     		 return new Dimension(0, 0);
     	 
-        pageSizes = getPageSizes(zoomLevel, pageSizes);
+        PageGeometry scaled = pageSizes.scale(zoomLevel);
         
         // get the left page
         pageIndex = 2 * pageIndex / 2;
         
-        if (pageIndex == pageSizes.length - 1)
-        	return new Dimension(2 * (pageSizes[pageIndex].width + getZoomedHorizontalSpacing(zoomLevel)), 2*getZoomedVerticalSpacing(zoomLevel) + pageSizes[pageIndex].height);
+        if (pageIndex == scaled.getPageCount() - 1)
+        	return new Dimension(2 * (scaled.getWidth(pageIndex) + getZoomedHorizontalSpacing(zoomLevel)), 2*getZoomedVerticalSpacing(zoomLevel) + scaled.getHeight(pageIndex));
         else
         {
-        	int height = Math.max(pageSizes[pageIndex].height, pageSizes[pageIndex+1].height);        	
-        	return new Dimension((pageSizes[pageIndex].width + pageSizes[pageIndex+1].width + 2 * getZoomedHorizontalSpacing(zoomLevel)), 2*getZoomedVerticalSpacing(zoomLevel) + height);
+        	int height = Math.max(scaled.getHeight(pageIndex), scaled.getHeight(pageIndex+1));        	
+        	return new Dimension((scaled.getWidth(pageIndex) + scaled.getWidth(pageIndex+1) + 2 * getZoomedHorizontalSpacing(zoomLevel)), 2*getZoomedVerticalSpacing(zoomLevel) + height);
         }
     }
      
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.predefined;
+
+import java.util.Arrays;
+
+/**
+ * Cumulative offsets of view elements (pages or rows of pages) which are arranged
+ * one after another with a fixed spacing. Consecutive elements with the same extent
+ * are stored as a run, so that memory and lookup time depend on the number of runs
+ * instead of the number of elements (O(log runs) to get the position of an element
+ * or to find the element at a position)
+ *
+ * @author berre
+ */
+class OffsetIndex {
+
+	final int spacing;
+	
+	int runCount = 0;
+	// runStarts[r] = index of the first element of run r
+	int[] runStarts;
+	// runOffsets[r] = start of the first element of run r relative to the start of the first element,
+	// runOffsets[runCount] = end of the last element (including the trailing spacing)
+	int[] runOffsets;
+	// extent + spacing of the elements of run r
+	int[] runSteps;
+	int count = 0;
+
+	/**
+	 * @param spacing the spacing after each element
+	 * @param expectedRuns the expected number of runs (the index grows as needed)
+	 */
+	OffsetIndex(int spacing, int expectedRuns) {
+		this.spacing = spacing;
+		int capacity = Math.max(1, expectedRuns);
+		runStarts = new int[capacity];
+		runOffsets = new int[capacity + 1];
+		runSteps = new int[capacity];
+	}
+
+	/**
+	 * Append elements with the given extent (e.g. height)
+	 * @param elementCount the number of elements to append
+	 * @param extent the extent of each of the elements
+	 */
+	void add(int elementCount, int extent) {
+		if (elementCount <= 0)
+			return;
+		
+		int step = extent + spacing;
+		if (runCount == 0 || runSteps[runCount - 1] != step) {
+			if (runCount == runSteps.length) {
+				int capacity = runSteps.length * 2;
+				runStarts = Arrays.copyOf(runStarts, capacity);
+				runOffsets = Arrays.copyOf(runOffsets, capacity + 1);
+				runSteps = Arrays.copyOf(runSteps, capacity);
+			}
+			runStarts[runCount] = count;
+			runSteps[runCount] = step;
+			runCount++;
+		}
+		count += elementCount;
+		runOffsets[runCount] = runOffsets[runCount - 1] + (count - runStarts[runCount - 1]) * step;
+	}
+
+	/**
+	 * Return the number of elements
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * Return the start position of the given element (getCount() returns the total extent)
+	 */
+	int getOffset(int index) {
+		if (index >= count)
+			return getTotal();
+		
+		// the last run which starts at or before the element
+		int r = Arrays.binarySearch(runStarts, 0, runCount, index);
+		if (r < 0)
+			r = -r - 2;
+		return runOffsets[r] + (index - runStarts[r]) * runSteps[r];
+	}
+
+	/**
+	 * Return the total extent of all elements including their spacing
+	 */
+	int getTotal() {
+		return runOffsets[runCount];
+	}
+
+	/**
+	 * Return the index of the first element which ends (including its spacing) at or after
+	 * the given position or getCount() if all elements end before it
+	 */
+	int findElement(int position) {
+		// binary search for the first run r which ends at or after the position
+		int lo = 0;
+		int hi = runCount;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (runOffsets[mid + 1] >= position)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		if (lo == runCount)
+			return count;
+		
+		// the first element k of the run with runOffsets[lo] + (k + 1) * step >= position
+		int distance = position - runOffsets[lo];
+		int step = runSteps[lo];
+		if (distance <= 0 || step <= 0)
+			return runStarts[lo];
+		return runStarts[lo] + (distance + step - 1) / step - 1;
+	}
+}
@@ -27,23 +27,34 @@ package de.renber.swing.controls.documentview.predefined;
 
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
 import java.awt.geom.Rectangle2D;
 
 import de.renber.swing.controls.documentview.types.PageAdorner;
 
 /**
  * PageAdorner which adds the page number under each page view
+ * 
+ * The laid out page number texts are cached for the current zoom level
  *
  * @author berre
  */
 public class PageNumberAdorner implements PageAdorner {
 
+    // number of cached page number layouts (direct mapped by page number)
+    final static int LAYOUT_CACHE_SIZE = 64;
+    
     Font font;
     Color fontColor;
     int yOffset;    
     String displayText;
+    // the state the cached layouts are valid for
+    float layoutZoomLevel = Float.NaN;
+    FontRenderContext layoutFontRenderContext;
+    String layoutDisplayText;
+    PageNumberLayout[] layouts = new PageNumberLayout[LAYOUT_CACHE_SIZE];
     
     /**
      * Creates a page adorner with the default y offset of 5 and the
@@ -88,25 +99,37 @@ public class PageNumberAdorner implements PageAdorner {
 
     @Override
     public void drawPostPage(Graphics2D g, Color backgroundColor, int pageNumber, float zoomLevel, int x, int y, int w, int h) {
-        Graphics2D g2 = null;
-        try {
-            g2 = (Graphics2D) g.create(); // push graphic settings
-
-            // add page number            
-            g2.setColor(fontColor);            
+        PageNumberLayout layout = getLayout(pageNumber, zoomLevel, g.getFontRenderContext());
+        
+        // add page number
+        Color oldColor = g.getColor();
+        g.setColor(fontColor);
+        g.drawGlyphVector(layout.glyphs, (int)(x + w - layout.width), (int)(y + h + yOffset + layout.height));
+        g.setColor(oldColor);
+    }
+    
+    /**
+     * Return the laid out text for the given page number, the cache is
+     * invalidated when the zoom level, the render context or the display text change
+     */
+    private synchronized PageNumberLayout getLayout(int pageNumber, float zoomLevel, FontRenderContext frc) {
+        if (zoomLevel != layoutZoomLevel || displayText != layoutDisplayText || !frc.equals(layoutFontRenderContext)) {
+            layoutZoomLevel = zoomLevel;
+            layoutFontRenderContext = frc;
+            layoutDisplayText = displayText;
+            for (int i = 0; i < layouts.length; i++)
+                layouts[i] = null;
+        }
+        
+        int slot = (pageNumber & Integer.MAX_VALUE) % layouts.length;
+        PageNumberLayout layout = layouts[slot];
+        if (layout == null || layout.pageNumber != pageNumber) {
             Font zoomedFont = font.deriveFont(font.getSize() * zoomLevel);
-            
             String s = String.format(displayText, pageNumber);
-            FontMetrics metrics = g2.getFontMetrics(zoomedFont);            
-            Rectangle2D strRect = metrics.getStringBounds(s, g2);
-            g2.setFont(zoomedFont);            
-            g2.drawString(s, (int)(x + w - strRect.getWidth()), (int)(y + h + yOffset + strRect.getHeight()));            
-        } finally {
-            if (g2 != null) {
-                g2.dispose();
-            }
+            layout = new PageNumberLayout(pageNumber, zoomedFont.createGlyphVector(frc, s), zoomedFont.getStringBounds(s, frc));
+            layouts[slot] = layout;
         }
-
+        return layout;
     }
 
 	@Override
@@ -114,4 +137,21 @@ public class PageNumberAdorner implements PageAdorner {
 			int h) {
 		// --
 	}
+	
+	/**
+	 * The glyphs and the size of the text of one page number
+	 */
+	static class PageNumberLayout {
+		final int pageNumber;
+		final GlyphVector glyphs;
+		final double width;
+		final double height;
+		
+		PageNumberLayout(int pageNumber, GlyphVector glyphs, Rectangle2D bounds) {
+			this.pageNumber = pageNumber;
+			this.glyphs = glyphs;
+			this.width = bounds.getWidth();
+			this.height = bounds.getHeight();
+		}
+	}
 }
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.predefined;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+import de.renber.swing.controls.documentview.types.Page;
+
+/**
+ * Helper for PreviewLayouts to draw the content of a page
+ *
+ * @author berre
+ */
+public class PagePainter {
+
+	private PagePainter() {
+
+	}
+
+	/**
+	 * Draws the content of the page at the given position. Only the part of the page
+	 * which lies inside the target rect is drawn (tile by tile for tiled pages)
+	 * @param g
+	 * @param page The page to draw
+	 * @param x
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @param targetRect The visible area of the layout
+	 */
+	public static void drawPage(Graphics2D g, Page page, int x, int y, int w, int h, Rectangle targetRect) {
+		if (page instanceof TiledPage) {
+			// the intersection of the page and the target rect (relative to the page)
+			int vx = Math.max(x, targetRect.x);
+			int vy = Math.max(y, targetRect.y);
+			int vw = Math.min(x + w, targetRect.x + targetRect.width) - vx;
+			int vh = Math.min(y + h, targetRect.y + targetRect.height) - vy;
+			((TiledPage) page).drawRegion(g, x, y, w, h, vx - x, vy - y, vw, vh);
+		} else {
+			page.draw(g, x, y, w, h);
+		}
+	}
+}
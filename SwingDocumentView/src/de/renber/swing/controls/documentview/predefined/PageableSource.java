@@ -26,19 +26,38 @@
 package de.renber.swing.controls.documentview.predefined;
 
 import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.awt.print.PageFormat;
 import java.awt.print.Pageable;
+import java.util.Arrays;
 
 import de.renber.swing.controls.documentview.types.Page;
-import de.renber.swing.controls.documentview.types.PageSource;
+import de.renber.swing.controls.documentview.types.PageSizeRunSource;
 /**
+ * Page source which shows the pages of a Pageable (e.g. a print job). Consecutive pages
+ * with the same size are reported as runs, so that opening a print job with many pages
+ * does not create a page size for every single page
  *
  * @author berre
  */
-public class PageableSource implements PageSource {
+public class PageableSource implements PageSizeRunSource {
 
-    private static final int dpi = java.awt.Toolkit.getDefaultToolkit().getScreenResolution(); 
+    // the screen resolution (without a screen the resolution BufferedPrintablePage assumes)
+    private static final int dpi = GraphicsEnvironment.isHeadless() ? BufferedPrintablePage.DPI : java.awt.Toolkit.getDefaultToolkit().getScreenResolution(); 
     
     Pageable pageable;    
+    // render large pages in tiles?
+    boolean tiledRendering = false;
+    // print pages directly at the target resolution?
+    boolean directRendering = true;
+    // supersampling factor for direct rendering
+    int supersampling = 1;
+    // the colour mode of the pages
+    AbstractBufferedPage.ColorMode colorMode = AbstractBufferedPage.ColorMode.COLOR;
+    // the page size runs (determined on first use)
+    int runCount = -1;
+    int[] runLengths;
+    Dimension[] runSizes;
     
     public PageableSource(Pageable _pageable) {
         pageable = _pageable;                              
@@ -51,14 +70,126 @@ public class PageableSource implements PageSource {
 
     @Override
     public Dimension getPageSize(int pageIndex) {    	
+    	return getPageSize(pageable.getPageFormat(pageIndex));
+    }
+
+    /**
+     * Return the size of a page with the given format in pixels
+     */
+    private static Dimension getPageSize(PageFormat format) {
     	// convert the 72 dpi based dimensions to screen dpi    	
-    	return new Dimension((int)(pageable.getPageFormat(pageIndex).getWidth() / 72.0f * dpi), (int)(pageable.getPageFormat(pageIndex).getHeight() / 72.0f * dpi));
-    	               
+    	return new Dimension((int)(format.getWidth() / 72.0f * dpi), (int)(format.getHeight() / 72.0f * dpi));
+    }
+
+    @Override
+    public synchronized int getPageSizeRunCount() {
+    	findRuns();
+    	return runCount;
+    }
+
+    @Override
+    public synchronized int getPageSizeRunLength(int runIndex) {
+    	findRuns();
+    	return runLengths[runIndex];
+    }
+
+    @Override
+    public synchronized Dimension getPageSizeOfRun(int runIndex) {
+    	findRuns();
+    	return new Dimension(runSizes[runIndex]);
+    }
+
+    /**
+     * Groups consecutive pages with the same size into runs
+     */
+    private void findRuns() {
+    	if (runCount >= 0)
+    		return;
+
+    	int pageCount = getPageCount();
+    	runLengths = new int[4];
+    	runSizes = new Dimension[4];
+    	runCount = 0;
+    	PageFormat lastFormat = null;
+    	for (int i = 0; i < pageCount; i++) {
+    		PageFormat format = pageable.getPageFormat(i);
+    		// print jobs usually return the same format object for all pages
+    		if (format != lastFormat) {
+    			Dimension size = getPageSize(format);
+    			lastFormat = format;
+    			if (runCount == 0 || !runSizes[runCount - 1].equals(size)) {
+    				if (runCount == runLengths.length) {
+    					runLengths = Arrays.copyOf(runLengths, runCount * 2);
+    					runSizes = Arrays.copyOf(runSizes, runCount * 2);
+    				}
+    				runSizes[runCount++] = size;
+    			}
+    		}
+    		runLengths[runCount - 1]++;
+    	}
     }
     
     @Override
     public Page getPage(int pageIndex) {            	    
-        return new BufferedPrintablePage(pageable.getPrintable(pageIndex), pageIndex, pageable.getPageFormat(pageIndex));
+        BufferedPrintablePage page = new BufferedPrintablePage(pageable.getPrintable(pageIndex), pageIndex, pageable.getPageFormat(pageIndex));
+        page.setDirectRendering(directRendering);
+        page.setSupersampling(supersampling);
+        page.setColorMode(colorMode);
+        return tiledRendering ? new TiledPage(page) : page;
+    }
+    
+    public boolean getTiledRendering() {
+    	return tiledRendering;
+    }
+    
+    /**
+     * Render pages which are displayed at a large size (high zoom levels) in tiles,
+     * so that only their visible parts are rendered (affects pages which are
+     * requested afterwards)
+     */
+    public void setTiledRendering(boolean tiledRendering) {
+    	this.tiledRendering = tiledRendering;
+    }
+
+    public boolean getDirectRendering() {
+    	return directRendering;
+    }
+    
+    /**
+     * Print pages directly at the displayed resolution (default) instead of printing them
+     * at 72 dpi and resampling the result (affects pages which are requested afterwards)
+     * @see BufferedPrintablePage#setDirectRendering(boolean)
+     */
+    public void setDirectRendering(boolean directRendering) {
+    	this.directRendering = directRendering;
+    }
+    
+    public int getSupersampling() {
+    	return supersampling;
+    }
+    
+    /**
+     * Set the supersampling factor for direct rendering (affects pages which are requested afterwards)
+     * @see BufferedPrintablePage#setSupersampling(int)
+     */
+    public void setSupersampling(int supersampling) {
+    	if (supersampling < 1)
+    		throw new IllegalArgumentException("The supersampling factor must be at least 1.");
+    	this.supersampling = supersampling;
+    }
+
+    public AbstractBufferedPage.ColorMode getColorMode() {
+    	return colorMode;
+    }
+    
+    /**
+     * Set the colour mode in which the pages are rendered (affects pages which are requested afterwards)
+     * @see AbstractBufferedPage#setColorMode(AbstractBufferedPage.ColorMode)
+     */
+    public void setColorMode(AbstractBufferedPage.ColorMode colorMode) {
+    	if (colorMode == null)
+    		throw new IllegalArgumentException("colorMode");
+    	this.colorMode = colorMode;
     }
 
     @Override
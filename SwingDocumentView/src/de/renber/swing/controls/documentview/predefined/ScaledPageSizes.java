@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.predefined;
+
+import java.awt.Dimension;
+
+/**
+ * Page sizes scaled to a zoom level, which a layout keeps until
+ * the page sizes or the zoom level change
+ * 
+ * @author berre
+ */
+class ScaledPageSizes {
+
+	// the (unzoomed) page sizes the scaled sizes have been calculated for
+	final Dimension[] pageSizes;
+	final int pageCount;
+	final float zoomLevel;
+	
+	final Dimension[] scaled;
+	
+	ScaledPageSizes(float zoomLevel, Dimension[] pageSizes) {
+		this.pageSizes = pageSizes;
+		this.pageCount = pageSizes.length;
+		this.zoomLevel = zoomLevel;
+		
+		scaled = new Dimension[pageSizes.length];
+		for (int i = 0; i < pageSizes.length; i++) {
+			scaled[i] = new Dimension((int) (pageSizes[i].width * zoomLevel), (int) (pageSizes[i].height * zoomLevel));
+		}
+	}
+	
+	/**
+	 * Return the given cached sizes if they are still valid or newly scaled sizes otherwise
+	 */
+	static ScaledPageSizes get(ScaledPageSizes cached, float zoomLevel, Dimension[] pageSizes) {
+		if (cached != null && cached.pageSizes == pageSizes && cached.pageCount == pageSizes.length && cached.zoomLevel == zoomLevel)
+			return cached;
+		return new ScaledPageSizes(zoomLevel, pageSizes);
+	}
+}
@@ -29,18 +29,32 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 import de.renber.swing.controls.documentview.types.PageAdorner;
 
 /**
  * Adorns a page in the PageDisplay with a shadow
+ * 
+ * The shadow is rendered once into a nine-slice sprite, whose edges are
+ * kept as long strips, so that drawing a shadow only copies pixels
+ * (pages which are too small to be sliced get a shadow image of their size)
  *
  * @author berre
  */
 public class ShadowPageAdorner implements PageAdorner {
 
+    // device scales are rounded to multiples of this value to select the sprite resolution
+    final static float SCALE_BUCKET = 0.25f;
+
     Color shadowColor;
     int shadowWidth;
+    // the most recently used sprite (the shadow only changes with the background color and device scale)
+    volatile ShadowSprite sprite;
+    // the most recently used shadow of a page which is too small for the sprite
+    volatile SmallShadow smallShadow;
     
     public ShadowPageAdorner(int _shadowWidth, Color _shadowColor) {
         shadowWidth = _shadowWidth;
@@ -65,6 +79,43 @@ public class ShadowPageAdorner implements PageAdorner {
     }
 
     public void paintShadow(Graphics2D g, Color backgroundColor, int x, int y, int w, int h) {
+        if (shadowWidth <= 0)
+            return;
+        
+        // the render context holds the scale of the graphics (getTransform() would create a copy)
+        FontRenderContext frc = g.getFontRenderContext();
+        float scale = 1;
+        if (frc.isTransformed()) {
+            AffineTransform tx = g.getTransform();
+            scale = Math.round(Math.max(tx.getScaleX(), tx.getScaleY()) / SCALE_BUCKET) * SCALE_BUCKET;
+            if (scale < SCALE_BUCKET)
+                scale = SCALE_BUCKET;
+        }
+        
+        if (w < ShadowSprite.getMinimumSize(shadowWidth) || h < ShadowSprite.getMinimumSize(shadowWidth)) {
+            // too small to be sliced, the shadow is rendered for the page size
+            // (drawing the lines directly would switch the antialiasing of g for every page)
+            SmallShadow ss = smallShadow;
+            if (ss == null || !ss.matches(shadowWidth, shadowColor, backgroundColor, scale, w, h)) {
+                ss = new SmallShadow(shadowWidth, shadowColor, backgroundColor, scale, w, h);
+                smallShadow = ss;
+            }
+            ss.paint(g, x, y);
+            return;
+        }
+        
+        ShadowSprite s = sprite;
+        if (s == null || !s.matches(shadowWidth, shadowColor, backgroundColor, scale)) {
+            s = new ShadowSprite(shadowWidth, shadowColor, backgroundColor, scale);
+            sprite = s;
+        }
+        s.paint(g, x, y, w, h);
+    }
+
+    /**
+     * Paints the shadow of a page of the given size directly to the given graphics
+     */
+    static void paintShadowLines(Graphics2D g, int shadowWidth, Color shadowColor, Color backgroundColor, int x, int y, int w, int h) {
         Graphics2D g2 = null;
         try {
             g2 = (Graphics2D) g.create();
@@ -95,4 +146,204 @@ public class ShadowPageAdorner implements PageAdorner {
         }
         return new Color(clr1[0], clr1[1], clr1[2], clr1[3]);
     }
+    
+    /**
+     * The shadow of a small reference page, sliced into a 3x3 grid: the corner cells
+     * are drawn at the corners of the page, the middle cells are repeated along the edges
+     * (the shadow profile is constant along them).
+     * As the shadow only lies right of and below the page only the right column and
+     * the bottom row contain pixels.
+     * The repeated edges are kept in strips which are long enough for the largest page drawn
+     * so far, all slices are drawn without scaling (which is much cheaper for Java2D)
+     */
+    static class ShadowSprite {
+    	
+    	final int shadowWidth;
+    	final Color shadowColor;
+    	final Color backgroundColor;
+    	final float scale;
+    	
+    	final BufferedImage image;
+    	// position and size of the reference page in the sprite (logical pixels)
+    	final int margin;
+    	final int pageSize;
+    	// cut lines relative to the top/left and to the bottom/right edge of the page
+    	final int leadingCut;
+    	final int trailingCut;
+    	// the right and the bottom edge repeated to the length of the strips
+    	volatile EdgeStrips strips;
+    	
+    	/**
+    	 * Return the minimum page width/height for which the sprite can be used
+    	 */
+    	static int getMinimumSize(int shadowWidth) {
+    		return 3 * shadowWidth + 3;
+    	}
+    	
+    	ShadowSprite(int shadowWidth, Color shadowColor, Color backgroundColor, float scale) {
+    		this.shadowWidth = shadowWidth;
+    		this.shadowColor = shadowColor;
+    		this.backgroundColor = backgroundColor;
+    		this.scale = scale;
+    		
+    		// the right line starts shadowWidth below the top edge and the widest stroke
+    		// extends shadowWidth beyond its end points, the bottom line vice versa
+    		margin = shadowWidth + 2;
+    		leadingCut = 2 * shadowWidth + 1;
+    		trailingCut = shadowWidth + 1;
+    		pageSize = leadingCut + trailingCut + 2;
+    		
+    		int size = (int) Math.ceil((pageSize + 2 * margin) * scale);
+    		image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+    		Graphics2D g = image.createGraphics();
+    		try {
+    			g.scale(scale, scale);
+    			paintShadowLines(g, shadowWidth, shadowColor, backgroundColor, margin, margin, pageSize, pageSize);
+    		} finally {
+    			g.dispose();
+    		}
+    	}
+    	
+    	boolean matches(int shadowWidth, Color shadowColor, Color backgroundColor, float scale) {
+    		return this.shadowWidth == shadowWidth && this.scale == scale
+    				&& this.shadowColor.equals(shadowColor) && this.backgroundColor.equals(backgroundColor);
+    	}
+    	
+    	/**
+    	 * Draws the shadow of the page with the given bounds
+    	 */
+    	void paint(Graphics2D g, int x, int y, int w, int h) {
+    		// cut lines in logical sprite coordinates
+    		int c1 = margin + leadingCut;
+    		int c2 = margin + pageSize - trailingCut;
+    		int end = pageSize + 2 * margin;
+    		// cut lines in the target
+    		int dx1 = x - margin + c1;
+    		int dx2 = x + w - trailingCut;
+    		int dxe = x + w + margin;
+    		int dy1 = y - margin + c1;
+    		int dy2 = y + h - trailingCut;
+    		int dye = y + h + margin;
+    		
+    		// right column (top corner, stretched edge, bottom corner)
+    		EdgeStrips edges = getStrips(Math.max(dy2 - dy1, dx2 - dx1));
+    		drawSlice(g, image, dx2, y - margin, dxe, dy1, c2, 0, end, c1);
+    		drawSlice(g, edges.right, dx2, dy1, dxe, dy2, 0, 0, end - c2, dy2 - dy1);
+    		drawSlice(g, image, dx2, dy2, dxe, dye, c2, c2, end, end);
+    		// bottom row (left corner, repeated edge)
+    		drawSlice(g, image, x - margin, dy2, dx1, dye, 0, c2, c1, end);
+    		drawSlice(g, edges.bottom, dx1, dy2, dx2, dye, 0, 0, dx2 - dx1, end - c2);
+    	}
+    	
+    	private void drawSlice(Graphics2D g, BufferedImage img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2) {
+    		g.drawImage(img, dx1, dy1, dx2, dy2,
+    				Math.round(sx1 * scale), Math.round(sy1 * scale), Math.round(sx2 * scale), Math.round(sy2 * scale), null);
+    	}
+    	
+    	/**
+    	 * Return edge strips of at least the given length (logical pixels)
+    	 */
+    	private EdgeStrips getStrips(int length) {
+    		EdgeStrips edges = strips;
+    		if (edges == null || edges.length < length) {
+    			int newLength = 256;
+    			while (newLength < length)
+    				newLength *= 2;
+    			edges = new EdgeStrips(this, newLength);
+    			strips = edges;
+    		}
+    		return edges;
+    	}
+    }
+    
+    /**
+     * The complete shadow of a page of one size which is too small to be sliced
+     * (when zoomed out far, all pages usually have the same size)
+     */
+    static class SmallShadow {
+    	
+    	final int shadowWidth;
+    	final Color shadowColor;
+    	final Color backgroundColor;
+    	final float scale;
+    	final int pageWidth;
+    	final int pageHeight;
+    	
+    	final BufferedImage image;
+    	// position of the page in the image (logical pixels)
+    	final int margin;
+    	
+    	SmallShadow(int shadowWidth, Color shadowColor, Color backgroundColor, float scale, int pageWidth, int pageHeight) {
+    		this.shadowWidth = shadowWidth;
+    		this.shadowColor = shadowColor;
+    		this.backgroundColor = backgroundColor;
+    		this.scale = scale;
+    		this.pageWidth = pageWidth;
+    		this.pageHeight = pageHeight;
+    		
+    		// the widest stroke extends shadowWidth beyond the end points of the lines
+    		margin = shadowWidth + 2;
+    		image = new BufferedImage(Math.round((pageWidth + 2 * margin) * scale), Math.round((pageHeight + 2 * margin) * scale),
+    				BufferedImage.TYPE_INT_ARGB_PRE);
+    		Graphics2D g = image.createGraphics();
+    		try {
+    			g.scale(scale, scale);
+    			paintShadowLines(g, shadowWidth, shadowColor, backgroundColor, margin, margin, pageWidth, pageHeight);
+    		} finally {
+    			g.dispose();
+    		}
+    	}
+    	
+    	boolean matches(int shadowWidth, Color shadowColor, Color backgroundColor, float scale, int pageWidth, int pageHeight) {
+    		return this.shadowWidth == shadowWidth && this.scale == scale
+    				&& this.pageWidth == pageWidth && this.pageHeight == pageHeight
+    				&& this.shadowColor.equals(shadowColor) && this.backgroundColor.equals(backgroundColor);
+    	}
+    	
+    	/**
+    	 * Draws the shadow of the page at the given position
+    	 */
+    	void paint(Graphics2D g, int x, int y) {
+    		g.drawImage(image, x - margin, y - margin, x + pageWidth + margin, y + pageHeight + margin,
+    				0, 0, image.getWidth(), image.getHeight(), null);
+    	}
+    }
+    
+    /**
+     * The middle cells of the right column and the bottom row of a sprite
+     * repeated to a fixed length
+     */
+    static class EdgeStrips {
+    	
+    	final int length;
+    	final BufferedImage right;
+    	final BufferedImage bottom;
+    	
+    	EdgeStrips(ShadowSprite sprite, int length) {
+    		this.length = length;
+    		float scale = sprite.scale;
+    		// device pixel coordinates of the cut lines (as used by drawSlice)
+    		int c1 = Math.round((sprite.margin + sprite.leadingCut) * scale);
+    		int c2 = Math.round((sprite.margin + sprite.pageSize - sprite.trailingCut) * scale);
+    		int end = Math.round((sprite.pageSize + 2 * sprite.margin) * scale);
+    		int l = (int) Math.ceil(length * scale);
+    		
+    		// stretching the middle cells is exact, the profile does not change along them
+    		right = new BufferedImage(end - c2, l, BufferedImage.TYPE_INT_ARGB_PRE);
+    		Graphics2D g = right.createGraphics();
+    		try {
+    			g.drawImage(sprite.image, 0, 0, end - c2, l, c2, c1, end, c2, null);
+    		} finally {
+    			g.dispose();
+    		}
+    		
+    		bottom = new BufferedImage(l, end - c2, BufferedImage.TYPE_INT_ARGB_PRE);
+    		g = bottom.createGraphics();
+    		try {
+    			g.drawImage(sprite.image, 0, 0, l, end - c2, c1, c2, c2, end, null);
+    		} finally {
+    			g.dispose();
+    		}
+    	}
+    }
 }
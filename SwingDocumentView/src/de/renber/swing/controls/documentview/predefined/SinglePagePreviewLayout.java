@@ -30,13 +30,13 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import de.renber.swing.controls.documentview.types.Page;
 import de.renber.swing.controls.documentview.types.PageAdorner;
+import de.renber.swing.controls.documentview.types.PageGeometry;
 import de.renber.swing.controls.documentview.types.PageVisibility;
+import de.renber.swing.controls.documentview.types.PageVisibilityBuffer;
 import de.renber.swing.controls.documentview.types.PreviewLayout;
 
 /**
@@ -51,72 +51,132 @@ public class SinglePagePreviewLayout implements PreviewLayout {
     // vertical spacing between pages (at 100 %)
     int m_verticalSpacing = 40;
     int currentPage = 0;       
+    // the page sizes at the last used zoom level (for getPageSizes(float, Dimension[]))
+    ScaledPageSizes scaledPageSizes = null;
 
     @Override
     public Dimension getNeededSpace(float zoomLevel, Dimension[] pageSizes) {
+    	return getNeededSpace(zoomLevel, PageGeometry.of(pageSizes));
+    }
+
+    @Override
+    public Dimension getNeededSpace(float zoomLevel, PageGeometry pageSizes) {
     	
-    	if (pageSizes.length == 0)
+    	if (pageSizes.getPageCount() == 0)
     		return new Dimension(0, 0);
     	
-        Dimension[] d = getPageSizes(zoomLevel, pageSizes);
-        return new Dimension(2*getZoomedHorizontalSpacing(zoomLevel) + d[currentPage].width, 2*getZoomedVerticalSpacing(zoomLevel) + d[currentPage].height);
+        PageGeometry d = pageSizes.scale(zoomLevel);
+        return new Dimension(2*getZoomedHorizontalSpacing(zoomLevel) + d.getWidth(currentPage), 2*getZoomedVerticalSpacing(zoomLevel) + d.getHeight(currentPage));
     }
 
+    /**
+     * {@inheritDoc}
+     * The returned array is shared and must not be modified
+     */
     @Override
-    public Dimension[] getPageSizes(float zoomLevel, Dimension[] pageSizes) {    	
-    	Dimension[] scaled = Arrays.copyOf(pageSizes, pageSizes.length);
-    	for(int i = 0; i < pageSizes.length; i++) {
-    		scaled[i] = new Dimension((int) (pageSizes[i].width * zoomLevel), (int) (pageSizes[i].height * zoomLevel)); 
-    	}    
-    	return scaled;
+    public Dimension[] getPageSizes(float zoomLevel, Dimension[] pageSizes) {
+    	ScaledPageSizes sizes = ScaledPageSizes.get(scaledPageSizes, zoomLevel, pageSizes);
+    	scaledPageSizes = sizes;
+    	return sizes.scaled;
     }
 
     @Override
-    public List<PageVisibility> getVisiblePages(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages) {        
-    	List<PageVisibility> visPages = new ArrayList<PageVisibility>(1);
-        if (currentPage < pages.size()) {
-            visPages.add(new PageVisibility(currentPage, 1.0f));
+    public PageGeometry getPageSizes(float zoomLevel, PageGeometry pageSizes) {
+    	return pageSizes.scale(zoomLevel);
+    }
+
+    @Override
+    public List<PageVisibility> getVisiblePages(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages) {
+    	PageVisibilityBuffer visPages = new PageVisibilityBuffer();
+    	getVisiblePages(pages.size(), visPages);
+    	return visPages.toList();
+    }
+
+    @Override
+    public void getVisiblePages(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, PageVisibilityBuffer visPages) {
+    	getVisiblePages(pageSizes.getPageCount(), visPages);
+    }
+
+    /**
+     * Write the current page to the given buffer
+     */
+    private void getVisiblePages(int pageCount, PageVisibilityBuffer visPages) {
+    	visPages.clear();
+        if (currentPage < pageCount) {
+            visPages.add(currentPage, 1.0f);
         }
-        return visPages;
     }
 
     @Override
     public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner) {
-        pageSizes = getPageSizes(zoomLevel, pageSizes);
-        Dimension pageSize = pageSizes[currentPage];
+    	draw(g, backgroundColor, targetRect, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pages, adorner);
+    }
 
+    @Override
+    public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner) {
         if (currentPage < pages.size()) {
             Page page = pages.get(currentPage);
-
-            int px;
-            if (pageSize.width + 10 <= targetRect.width) {
-                px = (targetRect.width - pageSize.width) / 2; // center page horizontally (enough room)
-            } else {
-                // scroll page horizontally
-                px = getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x;
-            }
             
-            int py;
-            if (pageSize.height + 10 <= targetRect.height) {
-                py = (targetRect.height - pageSize.height) / 2; // center page vertically (enough room)
-            } else {
-                // scroll page horizontally
-                py = getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y;
-            }            
+            PageGeometry scaled = pageSizes.scale(zoomLevel);
+            int width = scaled.getWidth(currentPage);
+            int height = scaled.getHeight(currentPage);
+
+            int px = getScaledPageX(targetRect.width, zoomLevel, width, scrollPosition);
+            int py = getScaledPageY(targetRect.height, zoomLevel, height, scrollPosition);
             
             if (adorner != null) {
-                adorner.drawPrePage(g, backgroundColor, currentPage+1, zoomLevel, px, py, pageSize.width, pageSize.height);
+                adorner.drawPrePage(g, backgroundColor, currentPage+1, zoomLevel, px, py, width, height);
             }
             // fill page with white
             g.setColor(Color.WHITE);
-            g.fillRect(px, py, pageSize.width, pageSize.height);
-            page.draw(g, px, py, pageSize.width, pageSize.height);
+            g.fillRect(px, py, width, height);
+            PagePainter.drawPage(g, page, px, py, width, height, targetRect);
             if (adorner != null) {
-                adorner.drawPostPage(g, backgroundColor, currentPage+1, zoomLevel, px, py, pageSize.width, pageSize.height);
+                adorner.drawPostPage(g, backgroundColor, currentPage+1, zoomLevel, px, py, width, height);
             }
         }
     }
 
+    @Override
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, int pageIndex) {
+    	return getPageBounds(viewPortSize, zoomLevel, PageGeometry.of(pageSizes), scrollPosition, pageIndex);
+    }
+
+    @Override
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, int pageIndex) {
+    	if (pageIndex != currentPage)
+    		return null;
+    	
+    	PageGeometry scaled = pageSizes.scale(zoomLevel);
+    	int width = scaled.getWidth(currentPage);
+    	int height = scaled.getHeight(currentPage);
+    	return new Rectangle(getScaledPageX(viewPortSize.width, zoomLevel, width, scrollPosition), getScaledPageY(viewPortSize.height, zoomLevel, height, scrollPosition), width, height);
+    }
+    
+    /**
+     * Return the x position of the current page with the given (zoomed) width
+     */
+    private int getScaledPageX(int viewPortWidth, float zoomLevel, int pageWidth, Point scrollPosition) {
+        if (pageWidth + 10 <= viewPortWidth) {
+            return (viewPortWidth - pageWidth) / 2; // center page horizontally (enough room)
+        } else {
+            // scroll page horizontally
+            return getZoomedHorizontalSpacing(zoomLevel) - scrollPosition.x;
+        }
+    }
+    
+    /**
+     * Return the y position of the current page with the given (zoomed) height
+     */
+    private int getScaledPageY(int viewPortHeight, float zoomLevel, int pageHeight, Point scrollPosition) {
+        if (pageHeight + 10 <= viewPortHeight) {
+            return (viewPortHeight - pageHeight) / 2; // center page vertically (enough room)
+        } else {
+            // scroll page horizontally
+            return getZoomedVerticalSpacing(zoomLevel) - scrollPosition.y;
+        }
+    }
+
     /**
      * Returns the vertical spacing for the current zoom level
      *
@@ -140,12 +200,23 @@ public class SinglePagePreviewLayout implements PreviewLayout {
         currentPage = pageIndex;
         return new Point(0, 0);
     }   
+
+    @Override
+    public Point ensureVisible(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, int pageIndex) {
+        currentPage = pageIndex;
+        return new Point(0, 0);
+    }   
     
     @Override
     public Dimension getViewElementSize(float zoomLevel, int pageIndex, Dimension[] pageSizes) {
-    	Dimension[] scaled = getPageSizes(zoomLevel, pageSizes);
+    	return getViewElementSize(zoomLevel, pageIndex, PageGeometry.of(pageSizes));
+    }
+    
+    @Override
+    public Dimension getViewElementSize(float zoomLevel, int pageIndex, PageGeometry pageSizes) {
+    	PageGeometry scaled = pageSizes.scale(zoomLevel);
     	
-        return new Dimension((int)(m_horizontalSpacing + scaled[pageIndex].getWidth()), (int)(m_verticalSpacing + scaled[pageIndex].getHeight()));
+        return new Dimension(m_horizontalSpacing + scaled.getWidth(pageIndex), m_verticalSpacing + scaled.getHeight(pageIndex));
     }
     
     @Override
@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.predefined;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.renber.swing.controls.documentview.types.Page;
+import de.renber.swing.controls.documentview.types.ProgressivePage;
+import de.renber.swing.controls.documentview.types.RegionRenderablePage;
+import de.renber.swing.controls.documentview.types.caching.CacheablePage;
+import de.renber.swing.controls.documentview.types.caching.PageCache;
+import de.renber.swing.controls.documentview.types.caching.PersistablePage;
+import de.renber.swing.controls.documentview.types.caching.PersistentRenderCache;
+
+/**
+ * Page which renders another page in tiles when it is displayed at a large size,
+ * so that only the tiles in the visible part of the page are rendered and kept in memory.
+ * Smaller sizes are rendered by the wrapped page as a whole<br/>
+ * The visible part is reported by the layout when the page is drawn (see
+ * {@link PagePainter#drawPage(Graphics2D, Page, int, int, int, int, Rectangle)}).
+ * Until a tile has been rendered, the wrapped page draws its content (e.g. a
+ * buffer of a lower zoom level) in its place.
+ * Tiles of an AbstractBufferedPage are kept in the raster type of its colour mode
+ *
+ * @author berre
+ */
+public class TiledPage implements CacheablePage, ProgressivePage, PersistablePage {
+
+	// default edge length of a tile in pixels
+	public static final int DEFAULT_TILE_SIZE = 512;
+	// default maximum number of pixels of a page which is not rendered in tiles
+	public static final long DEFAULT_MAX_UNTILED_PIXELS = 2048 * 2048;
+
+	final RegionRenderablePage page;
+	final int tileSize;
+	final long maxUntiledPixels;
+
+	// the rendered tiles of the page size they have been rendered for (replaced when the size changes)
+	volatile TileGrid tiles;
+	// the visible part of the page
+	volatile VisibleRegion visibleRegion = null;
+	// reused by draw() (painting only happens on the EDT)
+	final Rectangle drawClip = new Rectangle();
+
+	/**
+	 * Wraps the given page using the default tile size
+	 */
+	public TiledPage(RegionRenderablePage page) {
+		this(page, DEFAULT_TILE_SIZE, DEFAULT_MAX_UNTILED_PIXELS);
+	}
+
+	/**
+	 * Wraps the given page
+	 * @param page The page to render
+	 * @param tileSize edge length of a tile in pixels
+	 * @param maxUntiledPixels pages with a size (w * h) up to this number of pixels are rendered as a whole
+	 */
+	public TiledPage(RegionRenderablePage page, int tileSize, long maxUntiledPixels) {
+		if (page == null)
+			throw new IllegalArgumentException("page");
+		if (tileSize < 1)
+			throw new IllegalArgumentException("tileSize must be at least 1");
+
+		this.page = page;
+		this.tileSize = tileSize;
+		this.maxUntiledPixels = maxUntiledPixels;
+		tiles = new TileGrid(0, 0, tileSize);
+	}
+
+	/**
+	 * Return the wrapped page
+	 */
+	public RegionRenderablePage getPage() {
+		return page;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Return if the page is rendered in tiles at the given size
+	 */
+	public boolean isTiled(int w, int h) {
+		return (long) w * h > maxUntiledPixels;
+	}
+
+	@Override
+	public void draw(Graphics2D g, int x, int y, int w, int h) {
+		// without further information the clip tells us what is visible
+		// (getClipBounds() leaves the rectangle unchanged if there is no clip)
+		Rectangle clip = drawClip;
+		clip.setBounds(x, y, w, h);
+		g.getClipBounds(clip);
+
+		int vx = Math.max(x, clip.x);
+		int vy = Math.max(y, clip.y);
+		int vw = Math.min(x + w, clip.x + clip.width) - vx;
+		int vh = Math.min(y + h, clip.y + clip.height) - vy;
+		drawRegion(g, x, y, w, h, vx - x, vy - y, vw, vh);
+	}
+
+	/**
+	 * Draws the page at the given position and size. Only the tiles which intersect
+	 * the given visible region are drawn and the region is remembered as the part of
+	 * the page which has to be rendered
+	 * @param visible the visible part of the page (relative to its top left corner)
+	 */
+	public void drawRegion(Graphics2D g, int x, int y, int w, int h, Rectangle visible) {
+		drawRegion(g, x, y, w, h, visible.x, visible.y, visible.width, visible.height);
+	}
+
+	/**
+	 * Draws the page at the given position and size, see drawRegion(Graphics2D, int, int, int, int, Rectangle)
+	 * @param vx the visible part of the page (relative to its top left corner)
+	 */
+	public void drawRegion(Graphics2D g, int x, int y, int w, int h, int vx, int vy, int vw, int vh) {
+		vw = Math.max(0, vw);
+		vh = Math.max(0, vh);
+		VisibleRegion vr = visibleRegion;
+		if (vr == null || !vr.matches(w, h, vx, vy, vw, vh))
+			visibleRegion = new VisibleRegion(w, h, new Rectangle(vx, vy, vw, vh));
+
+		if (!isTiled(w, h)) {
+			page.draw(g, x, y, w, h);
+			return;
+		}
+
+		TileGrid grid = tiles;
+		boolean currentTiles = grid.w == w && grid.h == h;
+
+		if (!currentTiles || !hasAllTiles(grid, vx, vy, vw, vh)) {
+			// let the wrapped page fill the gaps
+			Graphics2D g2 = (Graphics2D) g.create();
+			try {
+				g2.clipRect(x + vx, y + vy, vw, vh);
+				page.draw(g2, x, y, w, h);
+			} finally {
+				g2.dispose();
+			}
+		}
+
+		if (!currentTiles)
+			return;
+
+		// draw tile by tile
+		for (int row = vy / tileSize; row * tileSize < vy + vh; row++) {
+			for (int col = vx / tileSize; col * tileSize < vx + vw; col++) {
+				BufferedImage tile = grid.get(col, row);
+				if (tile != null) {
+					g.drawImage(tile, x + col * tileSize, y + row * tileSize, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A preview is rendered by the wrapped page (if it supports previews)
+	 * as long as there is nothing to show
+	 */
+	@Override
+	public boolean needsPreview(int w, int h) {
+		return page instanceof ProgressivePage && tiles.isEmpty() && ((ProgressivePage) page).needsPreview(w, h);
+	}
+
+	@Override
+	public void renderPreview(int w, int h) {
+		if (page instanceof ProgressivePage)
+			((ProgressivePage) page).renderPreview(w, h);
+	}
+
+	@Override
+	public boolean isScaled(int w, int h) {
+		if (!isTiled(w, h))
+			return page.isScaled(w, h);
+
+		TileGrid grid = tiles;
+		if (grid.w != w || grid.h != h)
+			return false;
+		// same region as getRenderRegion(), without allocating it (called on every paint)
+		VisibleRegion vr = visibleRegion;
+		if (vr != null && vr.w == w && vr.h == h && !vr.region.isEmpty()) {
+			Rectangle region = vr.region;
+			return hasAllTiles(grid, region.x, region.y, region.width, region.height);
+		}
+		return hasAllTiles(grid, 0, 0, w, getTopRegionHeight(vr, h));
+	}
+
+	@Override
+	public void hiQualityScale(int w, int h) {
+		if (!isTiled(w, h)) {
+			// small enough to be rendered as a whole
+			releaseTiles();
+			page.hiQualityScale(w, h);
+			return;
+		}
+
+		TileGrid grid = tiles;
+		if (grid.w != w || grid.h != h) {
+			grid = new TileGrid(w, h, tileSize);
+			tiles = grid;
+		}
+
+		Rectangle region = getRenderRegion(w, h);
+
+		// forget the tiles which are not near the visible region anymore
+		Rectangle keep = new Rectangle(region);
+		keep.grow(tileSize, tileSize);
+		for (int row = 0; row < grid.rows; row++) {
+			for (int col = 0; col < grid.columns; col++) {
+				if (grid.get(col, row) != null && !getTileBounds(col, row, w, h).intersects(keep))
+					grid.set(col, row, null);
+			}
+		}
+
+		for (int row = region.y / tileSize; row * tileSize < region.y + region.height; row++) {
+			for (int col = region.x / tileSize; col * tileSize < region.x + region.width; col++) {
+				if (grid.get(col, row) == null) {
+					grid.set(col, row, renderTile(w, h, getTileBounds(col, row, w, h)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Renders a single tile
+	 */
+	private BufferedImage renderTile(int w, int h, Rectangle bounds) {
+		AbstractBufferedPage bufferedPage = page instanceof AbstractBufferedPage ? (AbstractBufferedPage) page : null;
+		int type = bufferedPage == null ? BufferedImage.TYPE_INT_RGB : bufferedPage.getImageType();
+		BufferedImage tile = new BufferedImage(bounds.width, bounds.height, type);
+		Graphics2D g = tile.createGraphics();
+		try {
+			// ensure white background
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, bounds.width, bounds.height);
+			page.renderRegion(g, w, h, bounds);
+		} catch (Exception e) {
+			// keep the blank tile, so that it is not rendered over and over again
+			Logger.getLogger(TiledPage.class.getName()).log(Level.SEVERE, null, e);
+		} finally {
+			g.dispose();
+		}
+		return bufferedPage == null ? tile : bufferedPage.applyColorModeToRegion(tile);
+	}
+
+	/**
+	 * Return the part of the page which has to be rendered at the given size.
+	 * This is the visible part or the top of the page if the page is not visible (e.g.
+	 * when it is prefetched)
+	 */
+	private Rectangle getRenderRegion(int w, int h) {
+		VisibleRegion vr = visibleRegion;
+		if (vr != null && vr.w == w && vr.h == h && !vr.region.isEmpty())
+			return vr.region;
+
+		return new Rectangle(0, 0, w, getTopRegionHeight(vr, h));
+	}
+
+	/**
+	 * Return the height of the top part of the page which is rendered when
+	 * the page is not visible at the given size
+	 */
+	private int getTopRegionHeight(VisibleRegion vr, int h) {
+		int height = vr != null && !vr.region.isEmpty() ? vr.region.height : tileSize;
+		return Math.min(h, height);
+	}
+
+	private boolean hasAllTiles(TileGrid grid, int vx, int vy, int vw, int vh) {
+		for (int row = vy / tileSize; row * tileSize < vy + vh; row++) {
+			for (int col = vx / tileSize; col * tileSize < vx + vw; col++) {
+				if (grid.get(col, row) == null)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private Rectangle getTileBounds(int col, int row, int w, int h) {
+		int x = col * tileSize;
+		int y = row * tileSize;
+		return new Rectangle(x, y, Math.min(tileSize, w - x), Math.min(tileSize, h - y));
+	}
+
+	private void releaseTiles() {
+		if (tiles.w != 0 || tiles.h != 0)
+			tiles = new TileGrid(0, 0, tileSize);
+	}
+
+	@Override
+	public long getBufferSize() {
+		long size = page instanceof CacheablePage ? ((CacheablePage) page).getBufferSize() : 0;
+		TileGrid grid = tiles;
+		for (int i = 0; i < grid.tiles.length(); i++) {
+			BufferedImage tile = grid.tiles.get(i);
+			if (tile != null)
+				size += PageCache.getImageSize(tile);
+		}
+		return size;
+	}
+
+	@Override
+	public void releaseBuffer() {
+		releaseTiles();
+		if (page instanceof CacheablePage) {
+			((CacheablePage) page).releaseBuffer();
+		}
+	}
+
+	@Override
+	public void setRenderCache(PersistentRenderCache cache, String contentHash, int pageIndex) {
+		if (page instanceof PersistablePage)
+			((PersistablePage) page).setRenderCache(cache, contentHash, pageIndex);
+	}
+
+	/**
+	 * Only sizes which are rendered as a whole are restored, tiles are not persisted
+	 */
+	@Override
+	public boolean restoreFromRenderCache(int w, int h) {
+		return !isTiled(w, h) && page instanceof PersistablePage && ((PersistablePage) page).restoreFromRenderCache(w, h);
+	}
+
+	@Override
+	public Dimension getPageSize() {
+		return page.getPageSize();
+	}
+
+	@Override
+	public void freeResources() {
+		releaseTiles();
+		page.freeResources();
+	}
+
+	/**
+	 * The tiles of the page at a specific page size (indexed by row and column,
+	 * so that looking a tile up does not allocate)
+	 */
+	static class TileGrid {
+		final int w;
+		final int h;
+		final int columns;
+		final int rows;
+		final AtomicReferenceArray<BufferedImage> tiles;
+
+		TileGrid(int w, int h, int tileSize) {
+			this.w = w;
+			this.h = h;
+			columns = (w + tileSize - 1) / tileSize;
+			rows = (h + tileSize - 1) / tileSize;
+			tiles = new AtomicReferenceArray<BufferedImage>(columns * rows);
+		}
+
+		BufferedImage get(int col, int row) {
+			return col < columns && row < rows ? tiles.get(row * columns + col) : null;
+		}
+
+		void set(int col, int row, BufferedImage tile) {
+			tiles.set(row * columns + col, tile);
+		}
+
+		boolean isEmpty() {
+			for (int i = 0; i < tiles.length(); i++) {
+				if (tiles.get(i) != null)
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The visible part of the page at a specific page size
+	 */
+	static class VisibleRegion {
+		final int w;
+		final int h;
+		final Rectangle region;
+
+		VisibleRegion(int w, int h, Rectangle region) {
+			this.w = w;
+			this.h = h;
+			this.region = region;
+		}
+
+		boolean matches(int w, int h, int x, int y, int width, int height) {
+			return this.w == w && this.h == h && region.x == x && region.y == y && region.width == width && region.height == height;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types;
+
+import java.util.Arrays;
+
+/**
+ * Page geometry which stores the page widths and heights in int arrays
+ * (instead of one Dimension object per page)
+ * @author berre
+ */
+public class ArrayPageGeometry extends PageGeometry {
+
+	final int[] widths;
+	final int[] heights;
+	final int maxWidth;
+	
+	/**
+	 * Creates a geometry for the given page sizes (the arrays are
+	 * not copied and must not be modified afterwards)
+	 */
+	public ArrayPageGeometry(int[] widths, int[] heights) {
+		if (widths.length != heights.length)
+			throw new IllegalArgumentException("widths and heights must have the same length.");
+		this.widths = widths;
+		this.heights = heights;
+		
+		int max = 0;
+		for (int w : widths) {
+			max = Math.max(max, w);
+		}
+		maxWidth = max;
+	}
+	
+	/**
+	 * Creates a geometry for the given number of pages which have the same size
+	 */
+	public ArrayPageGeometry(int pageCount, int width, int height) {
+		this(filled(pageCount, width), filled(pageCount, height));
+	}
+	
+	private static int[] filled(int length, int value) {
+		int[] values = new int[length];
+		Arrays.fill(values, value);
+		return values;
+	}
+	
+	@Override
+	public int getPageCount() {
+		return widths.length;
+	}
+	
+	@Override
+	public int getWidth(int pageIndex) {
+		return widths[pageIndex];
+	}
+	
+	@Override
+	public int getHeight(int pageIndex) {
+		return heights[pageIndex];
+	}
+	
+	@Override
+	public int getMaxWidth() {
+		return maxWidth;
+	}
+}
@@ -25,9 +25,11 @@
  *******************************************************************************/
 package de.renber.swing.controls.documentview.types;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.Transparency;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
 /**
@@ -36,10 +38,39 @@ import java.awt.image.BufferedImage;
  */
 public class GraphicsUtilities {
     
+    // the resamplers used by getScaledInstance (one per filter)
+    private static final ImageResampler[] resamplers = new ImageResampler[ImageResampler.Filter.values().length];
+    
     private GraphicsUtilities() {
         
     }
     
+    private static synchronized ImageResampler getResampler(ImageResampler.Filter filter) {
+        if (resamplers[filter.ordinal()] == null)
+            resamplers[filter.ordinal()] = new ImageResampler(filter);
+        return resamplers[filter.ordinal()];
+    }
+    
+    /**
+     * Draws the stand-in for a page which has not been rendered yet: a white
+     * page with the given text in its upper left corner (if there is enough space)
+     */
+    public static void drawPlaceholder(Graphics2D g, String text, int x, int y, int w, int h) {
+        Color oldColor = g.getColor();
+
+        g.setColor(Color.WHITE);
+        g.fillRect(x, y, w, h);
+
+        // print the rendering hint if there is enough place
+        Rectangle2D stringBounds = g.getFontMetrics().getStringBounds(text, g);
+        if (stringBounds.getWidth() + 30 < w && stringBounds.getHeight() + 30 < h) {
+            g.setColor(Color.BLACK);
+            g.drawString(text, x + 20, y + 20);
+        }
+
+        g.setColor(oldColor);
+    }
+
     /**
      * Convenience method that returns a scaled instance of the
      * provided {@code BufferedImage}.
@@ -61,6 +92,7 @@ public class GraphicsUtilities {
      *    smaller than the original dimensions, and generally only when
      *    the {@code BILINEAR} hint is specified)
      * @return a scaled version of the original {@code BufferedImage}
+     * @see ImageResampler
      */
     public static BufferedImage getScaledInstance(BufferedImage img,
                                            int targetWidth,
@@ -68,6 +100,13 @@ public class GraphicsUtilities {
                                            Object hint,
                                            boolean higherQuality)
     {
+        if (higherQuality && targetWidth <= img.getWidth() && targetHeight <= img.getHeight()) {
+            // resample in one pass instead of halving the size step by step
+            ImageResampler.Filter filter = hint == RenderingHints.VALUE_INTERPOLATION_BICUBIC ?
+                ImageResampler.Filter.LANCZOS : (hint == RenderingHints.VALUE_INTERPOLATION_BILINEAR ? ImageResampler.Filter.BILINEAR : ImageResampler.Filter.BOX);
+            return getResampler(filter).resample(img, targetWidth, targetHeight);
+        }
+
         int type = (img.getTransparency() == Transparency.OPAQUE) ?
             BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
         BufferedImage ret = (BufferedImage)img;
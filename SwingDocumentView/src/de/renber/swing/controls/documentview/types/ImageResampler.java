@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Resamples images which are stored as packed (A)RGB int arrays using a separable
+ * filter: rows are resampled first, columns afterwards. Both passes process
+ * the rows in parallel on a fork-join pool. The intermediate and result arrays are
+ * reused per calling thread (up to a fixed size)
+ *
+ * @author berre
+ */
+public class ImageResampler {
+
+    /**
+     * The filters which can be used for resampling
+     */
+    public enum Filter {
+        /** averages all source pixels covered by a target pixel */
+        BOX(0.5),
+        /** triangle filter (bilinear interpolation when upscaling) */
+        BILINEAR(1),
+        /** Lanczos filter with a window of 3 lobes (sharpest results) */
+        LANCZOS(3);
+
+        final double support;
+
+        Filter(double support) {
+            this.support = support;
+        }
+
+        double weight(double x) {
+            x = Math.abs(x);
+            switch (this) {
+                case BOX:
+                    return x <= 0.5 ? 1 : 0;
+                case BILINEAR:
+                    return x < 1 ? 1 - x : 0;
+                default:
+                    if (x >= 3)
+                        return 0;
+                    return sinc(x) * sinc(x / 3);
+            }
+        }
+
+        private static double sinc(double x) {
+            if (x == 0)
+                return 1;
+            x *= Math.PI;
+            return Math.sin(x) / x;
+        }
+    }
+
+    // number of rows which are processed by one task
+    private static final int ROWS_PER_TASK = 32;
+    // weights are stored as fixed point numbers with this number of fractional bits
+    private static final int WEIGHT_BITS = 14;
+    private static final int WEIGHT_ROUNDING = 1 << (WEIGHT_BITS - 1);
+    // scratch buffers up to this number of pixels (4 MB) are kept for the next call,
+    // larger ones are only allocated for the call so that the retained memory is bounded
+    private static final int MAX_KEPT_SCRATCH_SIZE = 1024 * 1024;
+
+    private static ImageResampler defaultInstance;
+
+    // scratch buffers of the calling threads
+    private final ThreadLocal<SoftReference<int[]>> sourceBuffer = new ThreadLocal<SoftReference<int[]>>();
+    private final ThreadLocal<SoftReference<int[]>> intermediateBuffer = new ThreadLocal<SoftReference<int[]>>();
+    private final ThreadLocal<SoftReference<int[]>> targetBuffer = new ThreadLocal<SoftReference<int[]>>();
+
+    final Filter filter;
+    final ForkJoinPool pool;
+
+    /**
+     * Creates a resampler which uses the bilinear filter and the common fork-join pool
+     */
+    public ImageResampler() {
+        this(Filter.BILINEAR);
+    }
+
+    /**
+     * Creates a resampler which uses the common fork-join pool
+     */
+    public ImageResampler(Filter filter) {
+        this(filter, ForkJoinPool.commonPool());
+    }
+
+    public ImageResampler(Filter filter, ForkJoinPool pool) {
+        if (filter == null)
+            throw new IllegalArgumentException("The filter must not be null.");
+        if (pool == null)
+            throw new IllegalArgumentException("The pool must not be null.");
+
+        this.filter = filter;
+        this.pool = pool;
+    }
+
+    /**
+     * Return the shared resampler which uses the bilinear filter
+     */
+    public static synchronized ImageResampler getDefault() {
+        if (defaultInstance == null)
+            defaultInstance = new ImageResampler();
+        return defaultInstance;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Return a resampled copy of the given image
+     * (of type TYPE_INT_RGB for opaque images and TYPE_INT_ARGB otherwise)
+     */
+    public BufferedImage resample(BufferedImage img, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0)
+            throw new IllegalArgumentException("The target size must be greater than 0.");
+
+        int sw = img.getWidth();
+        int sh = img.getHeight();
+        boolean opaque = !img.getColorModel().hasAlpha();
+
+        int[] src = getPixels(img);
+        int[] dst = getScratch(targetBuffer, targetWidth * targetHeight);
+        resample(src, sw, sh, dst, targetWidth, targetHeight);
+
+        BufferedImage result = new BufferedImage(targetWidth, targetHeight, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        // copy the pixels (does not prevent the image from being accelerated)
+        result.getRaster().setDataElements(0, 0, targetWidth, targetHeight, dst);
+        return result;
+    }
+
+    /**
+     * Resamples the packed ARGB pixels of the source to the target
+     * @param src the source pixels (row by row, sw * sh values)
+     * @param dst the array to write the result to (at least dw * dh values)
+     */
+    public void resample(int[] src, int sw, int sh, int[] dst, int dw, int dh) {
+        if (sw <= 0 || sh <= 0 || dw <= 0 || dh <= 0)
+            throw new IllegalArgumentException("The image sizes must be greater than 0.");
+        if (src.length < sw * sh || dst.length < dw * dh)
+            throw new IllegalArgumentException("The pixel arrays are too small.");
+
+        final Weights horizontal = new Weights(filter, sw, dw);
+        final Weights vertical = new Weights(filter, sh, dh);
+
+        // resample the rows: sw x sh -> dw x sh
+        int[] tmp = sw == dw ? src : getScratch(intermediateBuffer, dw * sh);
+        if (tmp != src) {
+            pool.invoke(new PassTask(src, sw, tmp, dw, horizontal, true, 0, sh));
+        }
+        // resample the columns: dw x sh -> dw x dh
+        if (sh == dh) {
+            System.arraycopy(tmp, 0, dst, 0, dw * dh);
+        } else {
+            pool.invoke(new PassTask(tmp, dw, dst, dw, vertical, false, 0, dh));
+        }
+    }
+
+    /**
+     * Return the pixels of the given image as packed ARGB values
+     */
+    private int[] getPixels(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        if (img.getType() == BufferedImage.TYPE_INT_RGB || img.getType() == BufferedImage.TYPE_INT_ARGB) {
+            // copy the data elements into the scratch buffer
+            int[] pixels = (int[]) img.getRaster().getDataElements(0, 0, w, h, getScratch(sourceBuffer, w * h));
+            if (img.getType() == BufferedImage.TYPE_INT_RGB) {
+                for (int i = 0; i < pixels.length; i++)
+                    pixels[i] |= 0xFF000000;
+            }
+            return pixels;
+        }
+        return img.getRGB(0, 0, w, h, null, 0, w);
+    }
+
+    /**
+     * Return a scratch array of at least the given size for the calling thread,
+     * arrays which are larger than MAX_KEPT_SCRATCH_SIZE are not kept
+     */
+    private static int[] getScratch(ThreadLocal<SoftReference<int[]>> local, int size) {
+        SoftReference<int[]> ref = local.get();
+        int[] buf = ref == null ? null : ref.get();
+        if (buf != null && buf.length >= size)
+            return buf;
+
+        if (size > MAX_KEPT_SCRATCH_SIZE)
+            return new int[size];
+        buf = new int[size];
+        local.set(new SoftReference<int[]>(buf));
+        return buf;
+    }
+
+    /**
+     * The contributions of the source pixels to each target pixel along one axis
+     */
+    static class Weights {
+        // index of the first contributing source pixel per target pixel
+        final int[] start;
+        // number of contributing source pixels per target pixel
+        final int[] count;
+        // the normalized fixed point weights (maxCount values per target pixel)
+        final int[] weights;
+        final int maxCount;
+
+        Weights(Filter filter, int srcSize, int dstSize) {
+            double scale = srcSize / (double) dstSize;
+            // widen the filter when downscaling so that all source pixels contribute
+            double filterScale = Math.max(1, scale);
+            double support = filter.support * filterScale;
+
+            maxCount = (int) Math.ceil(support) * 2 + 1;
+            start = new int[dstSize];
+            count = new int[dstSize];
+            weights = new int[dstSize * maxCount];
+            double[] w = new double[maxCount];
+
+            for (int i = 0; i < dstSize; i++) {
+                double center = (i + 0.5) * scale;
+                int min = Math.max(0, (int) Math.floor(center - support));
+                int max = Math.min(srcSize, (int) Math.ceil(center + support));
+                int n = Math.min(max - min, maxCount);
+
+                double sum = 0;
+                int offset = i * maxCount;
+                for (int j = 0; j < n; j++) {
+                    w[j] = filter.weight((min + j + 0.5 - center) / filterScale);
+                    sum += w[j];
+                }
+                if (sum == 0) {
+                    // no source pixel in range: use the nearest one
+                    min = Math.min(srcSize - 1, (int) center);
+                    n = 1;
+                    weights[offset] = 1 << WEIGHT_BITS;
+                } else {
+                    for (int j = 0; j < n; j++)
+                        weights[offset + j] = (int) Math.round(w[j] / sum * (1 << WEIGHT_BITS));
+                }
+                start[i] = min;
+                count[i] = n;
+            }
+        }
+    }
+
+    /**
+     * Resamples a range of target rows in one direction
+     */
+    static class PassTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // the channel sums of the column pass, reused by the tasks which run on the same pool thread
+        private static final ThreadLocal<int[]> accumulator = new ThreadLocal<int[]>();
+
+        final int[] src;
+        final int srcStride;
+        final int[] dst;
+        final int dstStride;
+        final Weights weights;
+        final boolean horizontal;
+        final int fromRow;
+        final int toRow;
+
+        PassTask(int[] src, int srcStride, int[] dst, int dstStride, Weights weights, boolean horizontal, int fromRow, int toRow) {
+            this.src = src;
+            this.srcStride = srcStride;
+            this.dst = dst;
+            this.dstStride = dstStride;
+            this.weights = weights;
+            this.horizontal = horizontal;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow > ROWS_PER_TASK) {
+                int mid = (fromRow + toRow) >>> 1;
+                invokeAll(new PassTask(src, srcStride, dst, dstStride, weights, horizontal, fromRow, mid),
+                        new PassTask(src, srcStride, dst, dstStride, weights, horizontal, mid, toRow));
+                return;
+            }
+
+            if (horizontal) {
+                for (int y = fromRow; y < toRow; y++)
+                    resampleRow(y);
+            } else {
+                int[] acc = accumulator.get();
+                if (acc == null || acc.length < dstStride * 4) {
+                    acc = new int[dstStride * 4];
+                    accumulator.set(acc);
+                }
+                for (int y = fromRow; y < toRow; y++)
+                    resampleColumns(y, acc);
+            }
+        }
+
+        /**
+         * Target row y is computed from source row y
+         */
+        private void resampleRow(int y) {
+            int srcRow = y * srcStride;
+            int dstRow = y * dstStride;
+            for (int x = 0; x < dstStride; x++) {
+                int first = srcRow + weights.start[x];
+                int offset = x * weights.maxCount;
+                int a = WEIGHT_ROUNDING, r = WEIGHT_ROUNDING, g = WEIGHT_ROUNDING, b = WEIGHT_ROUNDING;
+                for (int j = 0, n = weights.count[x]; j < n; j++) {
+                    int p = src[first + j];
+                    int w = weights.weights[offset + j];
+                    a += (p >>> 24) * w;
+                    r += ((p >> 16) & 0xFF) * w;
+                    g += ((p >> 8) & 0xFF) * w;
+                    b += (p & 0xFF) * w;
+                }
+                dst[dstRow + x] = pack(a, r, g, b);
+            }
+        }
+
+        /**
+         * Target row y is computed from the source rows which contribute to it
+         * (the source rows are read sequentially and summed up in acc)
+         */
+        private void resampleColumns(int y, int[] acc) {
+            Arrays.fill(acc, 0, dstStride * 4, WEIGHT_ROUNDING);
+            int first = weights.start[y];
+            int offset = y * weights.maxCount;
+            for (int j = 0, n = weights.count[y]; j < n; j++) {
+                int srcRow = (first + j) * srcStride;
+                int w = weights.weights[offset + j];
+                for (int x = 0, k = 0; x < dstStride; x++, k += 4) {
+                    int p = src[srcRow + x];
+                    acc[k] += (p >>> 24) * w;
+                    acc[k + 1] += ((p >> 16) & 0xFF) * w;
+                    acc[k + 2] += ((p >> 8) & 0xFF) * w;
+                    acc[k + 3] += (p & 0xFF) * w;
+                }
+            }
+            int dstRow = y * dstStride;
+            for (int x = 0, k = 0; x < dstStride; x++, k += 4) {
+                dst[dstRow + x] = pack(acc[k], acc[k + 1], acc[k + 2], acc[k + 3]);
+            }
+        }
+
+        /**
+         * Packs the rounded fixed point channel sums to an ARGB value
+         */
+        private static int pack(int a, int r, int g, int b) {
+            return clamp(a) << 24 | clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+        }
+
+        private static int clamp(int v) {
+            // negative lobes (Lanczos) may lead to values outside of 0..255
+            v >>= WEIGHT_BITS;
+            return v < 0 ? 0 : (v > 255 ? 255 : v);
+        }
+    }
+}
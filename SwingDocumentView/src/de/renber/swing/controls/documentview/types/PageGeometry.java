@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types;
+
+import java.awt.Dimension;
+
+/**
+ * The sizes of the pages of a document in a compact form. Geometries are
+ * immutable; zoomed sizes are provided as views which calculate the scaled
+ * sizes on access (see scale(float))
+ * @author berre
+ */
+public abstract class PageGeometry {
+
+	// the most recently requested zoomed view
+	private volatile ScaledPageGeometry scaledView;
+	
+	/**
+	 * Return the number of pages
+	 */
+	public abstract int getPageCount();
+	
+	public abstract int getWidth(int pageIndex);
+	
+	public abstract int getHeight(int pageIndex);
+	
+	/**
+	 * Return the width of the widest page (0 if there are no pages)
+	 */
+	public int getMaxWidth() {
+		int max = 0;
+		for (int i = 0; i < getPageCount(); i++) {
+			max = Math.max(max, getWidth(i));
+		}
+		return max;
+	}
+	
+	/**
+	 * Return the number of runs of consecutive pages with the same size.
+	 * Layouts which iterate over the runs instead of the pages only need time
+	 * proportional to the number of different page sizes.
+	 * The default implementation treats every page as a run of its own
+	 */
+	public int getRunCount() {
+		return getPageCount();
+	}
+	
+	/**
+	 * Return the number of pages in the given run
+	 */
+	public int getRunLength(int runIndex) {
+		return 1;
+	}
+	
+	/**
+	 * Return the width of the pages in the given run
+	 */
+	public int getRunWidth(int runIndex) {
+		return getWidth(runIndex);
+	}
+	
+	/**
+	 * Return the height of the pages in the given run
+	 */
+	public int getRunHeight(int runIndex) {
+		return getHeight(runIndex);
+	}
+	
+	/**
+	 * Return the size of the given page as a new Dimension object
+	 */
+	public Dimension getPageSize(int pageIndex) {
+		return new Dimension(getWidth(pageIndex), getHeight(pageIndex));
+	}
+	
+	/**
+	 * Return the page sizes as Dimension objects
+	 */
+	public Dimension[] toDimensions() {
+		Dimension[] sizes = new Dimension[getPageCount()];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = getPageSize(i);
+		}
+		return sizes;
+	}
+	
+	/**
+	 * Return a view of this geometry with the page sizes at the given zoom level,
+	 * a page's zoomed size is (int)(size * zoomLevel).
+	 * The view for the last requested zoom level is reused
+	 */
+	public PageGeometry scale(float zoomLevel) {
+		ScaledPageGeometry view = scaledView;
+		if (view == null || view.zoomLevel != zoomLevel) {
+			view = new ScaledPageGeometry(this, zoomLevel);
+			scaledView = view;
+		}
+		return view;
+	}
+	
+	/**
+	 * Return true if the given geometry describes the same pages as this one without
+	 * comparing the page sizes (i.e. it is the same object or a view of the same data).
+	 * Layouts use this to reuse the values they calculated for a geometry
+	 */
+	public boolean isSameAs(PageGeometry other) {
+		return this == other;
+	}
+	
+	/**
+	 * Return a geometry which reads the page sizes from the given array
+	 * (the array is not copied and must not be modified afterwards)
+	 */
+	public static PageGeometry of(Dimension[] pageSizes) {
+		return new DimensionPageGeometry(pageSizes);
+	}
+	
+	/**
+	 * A geometry backed by an array of Dimension objects
+	 */
+	static class DimensionPageGeometry extends PageGeometry {
+		
+		final Dimension[] pageSizes;
+		
+		DimensionPageGeometry(Dimension[] pageSizes) {
+			this.pageSizes = pageSizes;
+		}
+		
+		@Override
+		public int getPageCount() {
+			return pageSizes.length;
+		}
+		
+		@Override
+		public int getWidth(int pageIndex) {
+			return pageSizes[pageIndex].width;
+		}
+		
+		@Override
+		public int getHeight(int pageIndex) {
+			return pageSizes[pageIndex].height;
+		}
+		
+		@Override
+		public boolean isSameAs(PageGeometry other) {
+			return other == this || (other instanceof DimensionPageGeometry && ((DimensionPageGeometry) other).pageSizes == pageSizes);
+		}
+	}
+	
+	/**
+	 * The zoomed view of a geometry
+	 */
+	static class ScaledPageGeometry extends PageGeometry {
+		
+		final PageGeometry source;
+		final float zoomLevel;
+		
+		ScaledPageGeometry(PageGeometry source, float zoomLevel) {
+			this.source = source;
+			this.zoomLevel = zoomLevel;
+		}
+		
+		@Override
+		public int getPageCount() {
+			return source.getPageCount();
+		}
+		
+		@Override
+		public int getWidth(int pageIndex) {
+			return (int) (source.getWidth(pageIndex) * zoomLevel);
+		}
+		
+		@Override
+		public int getHeight(int pageIndex) {
+			return (int) (source.getHeight(pageIndex) * zoomLevel);
+		}
+		
+		@Override
+		public int getMaxWidth() {
+			// scaling does not change the order of the widths
+			return (int) (source.getMaxWidth() * zoomLevel);
+		}
+		
+		@Override
+		public int getRunCount() {
+			return source.getRunCount();
+		}
+		
+		@Override
+		public int getRunLength(int runIndex) {
+			return source.getRunLength(runIndex);
+		}
+		
+		@Override
+		public int getRunWidth(int runIndex) {
+			return (int) (source.getRunWidth(runIndex) * zoomLevel);
+		}
+		
+		@Override
+		public int getRunHeight(int runIndex) {
+			return (int) (source.getRunHeight(runIndex) * zoomLevel);
+		}
+		
+		@Override
+		public PageGeometry scale(float zoomLevel) {
+			return source.scale(this.zoomLevel * zoomLevel);
+		}
+		
+		@Override
+		public boolean isSameAs(PageGeometry other) {
+			return other == this || (other instanceof ScaledPageGeometry && ((ScaledPageGeometry) other).zoomLevel == zoomLevel
+					&& ((ScaledPageGeometry) other).source.isSameAs(source));
+		}
+	}
+}
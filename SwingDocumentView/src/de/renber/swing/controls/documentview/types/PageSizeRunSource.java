@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types;
+
+import java.awt.Dimension;
+
+/**
+ * Optional capability of a PageSource which is able to report its page sizes
+ * as runs of consecutive pages with the same size. The PageDisplay then does not
+ * need to query the size of every single page when a document is opened
+ * (e.g. a print job with thousands of pages which use the same page format)
+ * @author berre
+ */
+public interface PageSizeRunSource extends PageSource {
+
+	/**
+	 * Return the number of runs (the lengths of all runs add up to getPageCount())
+	 */
+	public int getPageSizeRunCount();
+	
+	/**
+	 * Return the number of pages in the given run
+	 */
+	public int getPageSizeRunLength(int runIndex);
+	
+	/**
+	 * Return the size of the pages in the given run in pixels (consider screen dpi!)
+	 */
+	public Dimension getPageSizeOfRun(int runIndex);
+}
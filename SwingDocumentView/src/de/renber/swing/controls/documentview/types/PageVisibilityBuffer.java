@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable list of page visibilities (page index and visible percentage)
+ * backed by primitive arrays, so that layouts can report the visible pages
+ * without allocating objects on every paint
+ * @author berre
+ */
+public class PageVisibilityBuffer {
+
+	int[] pageIndices;
+	float[] visiblePercentages;
+	int size;
+	
+	public PageVisibilityBuffer() {
+		this(4);
+	}
+	
+	public PageVisibilityBuffer(int initialCapacity) {
+		pageIndices = new int[Math.max(1, initialCapacity)];
+		visiblePercentages = new float[pageIndices.length];
+	}
+	
+	/**
+	 * Remove all entries (the storage is kept)
+	 */
+	public void clear() {
+		size = 0;
+	}
+	
+	public void add(int pageIndex, float visiblePercentage) {
+		if (size == pageIndices.length) {
+			pageIndices = Arrays.copyOf(pageIndices, size * 2);
+			visiblePercentages = Arrays.copyOf(visiblePercentages, size * 2);
+		}
+		pageIndices[size] = pageIndex;
+		visiblePercentages[size] = visiblePercentage;
+		size++;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public int getPageIndex(int i) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		return pageIndices[i];
+	}
+	
+	/**
+	 * Return the percentage of the i-th page which is visible
+	 */
+	public float getVisiblePercentage(int i) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		return visiblePercentages[i];
+	}
+	
+	/**
+	 * Return the entries as a new list of PageVisibility objects
+	 */
+	public List<PageVisibility> toList() {
+		List<PageVisibility> list = new ArrayList<PageVisibility>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(new PageVisibility(pageIndices[i], visiblePercentages[i]));
+		}
+		return list;
+	}
+}
@@ -45,15 +45,28 @@ public interface PreviewLayout {
      * @return 
      */
 	public Dimension getNeededSpace(float zoomLevel, Dimension[] pageSizes);
+	
+	/**
+	 * Returns the space needed in pixels
+	 * @see #getNeededSpace(float, Dimension[])
+	 */
+	public Dimension getNeededSpace(float zoomLevel, PageGeometry pageSizes);
 
     /**
      * Return the values for page sizes at the given zoom level
+     * (implementations may return a cached array, so callers must not modify it)
      * @param zoomLevel
      * @param pageSize
      * @return 
      */
     public Dimension[] getPageSizes(float zoomLevel, Dimension[] pageSizes);
     
+    /**
+     * Return the page sizes at the given zoom level
+     * @see #getPageSizes(float, Dimension[])
+     */
+    public PageGeometry getPageSizes(float zoomLevel, PageGeometry pageSizes);
+    
     /**
      * Return the amount of space a view element (e.g. a single page or two facing pages) need including
      * any borders or spacing alignments in this layout
@@ -64,6 +77,12 @@ public interface PreviewLayout {
      */
     public Dimension getViewElementSize(float zoomLevel, int pageIndex, Dimension[] pageSizes);
     
+    /**
+     * Return the amount of space a view element needs
+     * @see #getViewElementSize(float, int, Dimension[])
+     */
+    public Dimension getViewElementSize(float zoomLevel, int pageIndex, PageGeometry pageSizes);
+    
     /**
      * Return the pages which would be visible in the given view rect
      * and the percentage of the page which is visible
@@ -75,6 +94,14 @@ public interface PreviewLayout {
      */
     public List<PageVisibility> getVisiblePages(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages);
     
+    /**
+     * Write the pages which would be visible in the given view rect and the
+     * percentage of the page which is visible to the given (cleared) buffer.
+     * Used when painting, so implementations should not allocate
+     * @param visiblePages receives the visible pages
+     */
+    public void getVisiblePages(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, PageVisibilityBuffer visiblePages);
+    
     /**
      * Draws the preview layout on the given surface
      * @param g
@@ -82,6 +109,31 @@ public interface PreviewLayout {
      */
     public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner);
     
+    /**
+     * Draws the preview layout on the given surface
+     * @see #draw(Graphics2D, Color, Rectangle, float, Dimension[], Point, List, PageAdorner)
+     */
+    public void draw(Graphics2D g, Color backgroundColor, Rectangle targetRect, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, List<Page> pages, PageAdorner adorner);
+    
+    /**
+     * Return the bounds of the given page's content in view port coordinates
+     * (as it would be drawn by draw() into a target rect at (0, 0)) or null if the page is not
+     * part of the currently displayed view element
+     * @param viewPortSize
+     * @param zoomLevel
+     * @param pageSizes
+     * @param scrollPosition
+     * @param pageIndex
+     * @return 
+     */
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, Point scrollPosition, int pageIndex);
+    
+    /**
+     * Return the bounds of the given page's content in view port coordinates
+     * @see #getPageBounds(Dimension, float, Dimension[], Point, int)
+     */
+    public Rectangle getPageBounds(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, Point scrollPosition, int pageIndex);
+    
     /**
      * Returns a scroll position where the given page can be seen
      * @param targetRect
@@ -92,6 +144,12 @@ public interface PreviewLayout {
      */
     public Point ensureVisible(Dimension viewPortSize, float zoomLevel, Dimension[] pageSizes, int pageIndex);    
     
+    /**
+     * Returns a scroll position where the given page can be seen
+     * @see #ensureVisible(Dimension, float, Dimension[], int)
+     */
+    public Point ensureVisible(Dimension viewPortSize, float zoomLevel, PageGeometry pageSizes, int pageIndex);
+    
     /**
      * Return the amount of view elements in this layout for the given number of pages
      */
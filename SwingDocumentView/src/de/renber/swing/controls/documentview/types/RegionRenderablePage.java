@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * A page which is able to render arbitrary regions of its content
+ * (used for tile-based rendering at high zoom levels)
+ * @author berre
+ */
+public interface RegionRenderablePage extends Page {
+    
+    /**
+     * Renders a region of the page into the given graphics
+     * @param g The target graphics, the top left corner of the region is drawn at (0, 0)
+     * @param w The width of the whole page in pixels
+     * @param h The height of the whole page in pixels
+     * @param region The region to render (relative to the page's top left corner at the size w x h)
+     */
+    public void renderRegion(Graphics2D g, int w, int h, Rectangle region) throws Exception;
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types;
+
+import java.util.Arrays;
+
+/**
+ * Page geometry which stores runs of consecutive pages with the same size
+ * (e.g. a print job whose pages all use the same page format is a single run).
+ * Needs memory proportional to the number of runs instead of the number of pages
+ * @author berre
+ */
+public class RunLengthPageGeometry extends PageGeometry {
+
+	final int[] runLengths;
+	final int[] widths;
+	final int[] heights;
+	// runStarts[r] = index of the first page of run r, runStarts[runCount] = page count
+	final int[] runStarts;
+	final int maxWidth;
+	
+	/**
+	 * Creates a geometry for the given runs (the arrays are not copied and
+	 * must not be modified afterwards)
+	 * @param runLengths The number of pages of each run
+	 * @param widths The page width of each run
+	 * @param heights The page height of each run
+	 */
+	public RunLengthPageGeometry(int[] runLengths, int[] widths, int[] heights) {
+		if (runLengths.length != widths.length || runLengths.length != heights.length)
+			throw new IllegalArgumentException("runLengths, widths and heights must have the same length.");
+		this.runLengths = runLengths;
+		this.widths = widths;
+		this.heights = heights;
+		
+		runStarts = new int[runLengths.length + 1];
+		int max = 0;
+		for (int r = 0; r < runLengths.length; r++) {
+			if (runLengths[r] < 0)
+				throw new IllegalArgumentException("The length of a run must not be negative.");
+			runStarts[r + 1] = runStarts[r] + runLengths[r];
+			if (runLengths[r] > 0)
+				max = Math.max(max, widths[r]);
+		}
+		maxWidth = max;
+	}
+	
+	/**
+	 * Creates a geometry for the given number of pages which have the same size
+	 */
+	public RunLengthPageGeometry(int pageCount, int width, int height) {
+		this(new int[] { pageCount }, new int[] { width }, new int[] { height });
+	}
+	
+	/**
+	 * Return the index of the run which contains the given page
+	 */
+	int getRunIndex(int pageIndex) {
+		if (pageIndex < 0 || pageIndex >= getPageCount())
+			throw new IndexOutOfBoundsException("Page index " + pageIndex + " is out of bounds.");
+		
+		if (runLengths.length == 1)
+			return 0;
+		
+		// find the last run which starts at or before the page (skipping empty runs)
+		int idx = Arrays.binarySearch(runStarts, 0, runLengths.length, pageIndex);
+		if (idx < 0)
+			return -idx - 2;
+		
+		while (runLengths[idx] == 0)
+			idx++;
+		return idx;
+	}
+	
+	@Override
+	public int getPageCount() {
+		return runStarts[runLengths.length];
+	}
+	
+	@Override
+	public int getWidth(int pageIndex) {
+		return widths[getRunIndex(pageIndex)];
+	}
+	
+	@Override
+	public int getHeight(int pageIndex) {
+		return heights[getRunIndex(pageIndex)];
+	}
+	
+	@Override
+	public int getMaxWidth() {
+		return maxWidth;
+	}
+	
+	@Override
+	public int getRunCount() {
+		return runLengths.length;
+	}
+	
+	@Override
+	public int getRunLength(int runIndex) {
+		return runLengths[runIndex];
+	}
+	
+	@Override
+	public int getRunWidth(int runIndex) {
+		return widths[runIndex];
+	}
+	
+	@Override
+	public int getRunHeight(int runIndex) {
+		return heights[runIndex];
+	}
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import de.renber.swing.controls.documentview.types.Page;
+
+/**
+ * A page which keeps a rendered buffer of its contents which can be
+ * released by a PageCache when memory gets short
+ * @author berre
+ */
+public interface CacheablePage extends Page {
+    
+    /**
+     * Return the number of bytes occupied by the rendered buffer(s) of this page
+     * (0 if nothing has been rendered)
+     */
+    public long getBufferSize();
+    
+    /**
+     * Drop the rendered buffer(s). Afterwards isScaled() returns false, so that the
+     * page is rendered again the next time it is needed (called on a background
+     * thread when the PageCache evicts the page)
+     */
+    public void releaseBuffer();
+}
@@ -0,0 +1,515 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps released renderings of pages in memory in compressed form, keyed by
+ * (page index, width, height), so that they can be shown again without rendering
+ * the page (see CompressiblePage).<br/>
+ * Rendered documents are mostly white, so the renderings are run-length encoded row by
+ * row and rows which equal their predecessor (e.g. blank lines) are stored as a single byte.
+ * Renderings which do not compress well (e.g. photos) are not kept, see MAX_RATIO.
+ * Once the capacity is reached the least recently used renderings are dropped.<br/>
+ * Encoding and decoding take a few milliseconds per page, the renderings should
+ * be decoded in the background
+ *
+ * @author berre
+ */
+public class CompressedPageCache {
+
+    public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+    // renderings which compress to more than this fraction of their size are not kept
+    public static final float MAX_RATIO = 0.5f;
+
+    // runs of at least this many equal pixels are encoded as a run
+    static final int MIN_RUN = 3;
+
+    // the maximum number of bytes of the compressed renderings
+    long capacity;
+    long usedBytes = 0;
+    // the renderings in the order of their last use
+    final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * Creates a cache with the default capacity
+     */
+    public CompressedPageCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache
+     * @param capacity the maximum number of bytes of the compressed renderings
+     */
+    public CompressedPageCache(long capacity) {
+        setCapacity(capacity);
+    }
+
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the maximum number of bytes of the compressed renderings
+     * (the least recently used ones are dropped if necessary)
+     */
+    public synchronized void setCapacity(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("The capacity must not be negative.");
+        this.capacity = capacity;
+        trim();
+    }
+
+    /**
+     * Return the number of bytes occupied by the compressed renderings
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Return true if there is a rendering of the given page and size
+     */
+    public synchronized boolean contains(int pageIndex, int width, int height) {
+        return entries.containsKey(new Key(pageIndex, width, height));
+    }
+
+    /**
+     * Compresses the given rendering of a page and keeps it (replacing an existing one of the same size)
+     * @return false if the rendering has not been kept because it does not compress well enough
+     */
+    public boolean put(int pageIndex, BufferedImage img) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        boolean alpha = img.getColorModel().hasAlpha();
+        Encoder encoder = createEncoder(width, height, alpha);
+        if (encoder == null)
+            return false;
+
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        if (img.getType() == type && img.getRaster().getDataBuffer() instanceof DataBufferInt
+                && img.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel
+                && img.getRaster().getParent() == null) {
+            // encode the rows directly
+            int[] data = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            int stride = ((SinglePixelPackedSampleModel) img.getRaster().getSampleModel()).getScanlineStride();
+            int offset = img.getRaster().getDataBuffer().getOffset();
+            for (int y = 0; y < height; y++) {
+                if (!encoder.encodeRow(data, offset + y * stride, y == 0 ? -1 : offset + (y - 1) * stride))
+                    return false;
+            }
+        } else {
+            // convert the pixels row by row
+            int[] rows = new int[2 * width];
+            for (int y = 0; y < height; y++) {
+                int current = (y & 1) * width;
+                img.getRGB(0, y, width, 1, rows, current, width);
+                if (!encoder.encodeRow(rows, current, y == 0 ? -1 : width - current))
+                    return false;
+            }
+        }
+        return store(pageIndex, encoder);
+    }
+
+    /**
+     * Compresses the given rendering of a page and keeps it (replacing an existing one of the same size)
+     * @return false if the rendering has not been kept because it does not compress well enough
+     * or has been released
+     */
+    public boolean put(int pageIndex, OffHeapImage img) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        Encoder encoder = createEncoder(width, height, img.hasAlpha());
+        if (encoder == null)
+            return false;
+
+        // read blocks of rows, the last row of a block is kept in front of the next one
+        int rows = Math.max(1, Math.min(height, OffHeapPixelStore.CHUNK_INTS / width));
+        int[] data = new int[(rows + 1) * width];
+        for (int y = 0; y < height; y += rows) {
+            int n = Math.min(rows, height - y);
+            if (y > 0)
+                System.arraycopy(data, rows * width, data, 0, width);
+            if (!img.buffer.get(y * width, data, width, n * width))
+                return false;
+            for (int i = 1; i <= n; i++) {
+                if (!encoder.encodeRow(data, i * width, y + i == 1 ? -1 : (i - 1) * width))
+                    return false;
+            }
+        }
+        return store(pageIndex, encoder);
+    }
+
+    /**
+     * Decodes the rendering of the given page and size to a new image of the given store
+     * @return the image or null if there is no such rendering or the store is full
+     */
+    public OffHeapImage get(int pageIndex, int width, int height, OffHeapPixelStore store) {
+        Entry entry = getEntry(pageIndex, width, height);
+        if (entry == null)
+            return null;
+
+        OffHeapImage img = store.createImage(width, height, entry.alpha);
+        if (img == null)
+            return null;
+
+        // decode blocks of rows, the last row of a block is kept in front of the next one
+        int rows = Math.max(1, Math.min(height, OffHeapPixelStore.CHUNK_INTS / width));
+        int[] data = new int[(rows + 1) * width];
+        Decoder decoder = new Decoder(entry, width);
+        for (int y = 0; y < height; y += rows) {
+            int n = Math.min(rows, height - y);
+            if (y > 0)
+                System.arraycopy(data, rows * width, data, 0, width);
+            for (int i = 1; i <= n; i++) {
+                decoder.decodeRow(data, i * width, (i - 1) * width);
+            }
+            img.buffer.set(y * width, data, width, n * width);
+        }
+        return img;
+    }
+
+    /**
+     * Decodes the rendering of the given page and size to a new image on the heap
+     * @return the image or null if there is no such rendering
+     */
+    public BufferedImage get(int pageIndex, int width, int height) {
+        Entry entry = getEntry(pageIndex, width, height);
+        if (entry == null)
+            return null;
+
+        BufferedImage img = new BufferedImage(width, height, entry.alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] data = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        Decoder decoder = new Decoder(entry, width);
+        for (int y = 0; y < height; y++) {
+            decoder.decodeRow(data, y * width, (y - 1) * width);
+        }
+        return img;
+    }
+
+    /**
+     * Removes the rendering of the given page and size
+     */
+    public synchronized void remove(int pageIndex, int width, int height) {
+        Entry entry = entries.remove(new Key(pageIndex, width, height));
+        if (entry != null)
+            usedBytes -= entry.data.length;
+    }
+
+    /**
+     * Removes all renderings of the given page
+     */
+    public synchronized void remove(int pageIndex) {
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (entry.getKey().pageIndex == pageIndex) {
+                usedBytes -= entry.getValue().data.length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all renderings (e.g. because the contents of the pages have changed)
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    private synchronized Entry getEntry(int pageIndex, int width, int height) {
+        return entries.get(new Key(pageIndex, width, height));
+    }
+
+    /**
+     * Return an encoder for a rendering of the given size or null if
+     * the rendering cannot be kept at all
+     */
+    private Encoder createEncoder(int width, int height, boolean alpha) {
+        if (width <= 0 || height <= 0)
+            return null;
+        long limit = Math.min((long) ((long) width * height * 4 * MAX_RATIO), getCapacity());
+        if (limit > Integer.MAX_VALUE - 8)
+            return null;
+        return new Encoder(width, height, alpha, (int) limit);
+    }
+
+    private synchronized boolean store(int pageIndex, Encoder encoder) {
+        Key key = new Key(pageIndex, encoder.width, encoder.height);
+        Entry entry = new Entry(encoder.getData(), encoder.alpha);
+        Entry old = entries.put(key, entry);
+        if (old != null)
+            usedBytes -= old.data.length;
+        usedBytes += entry.data.length;
+        trim();
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Drops the least recently used renderings until the capacity is met
+     */
+    private void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > capacity && it.hasNext()) {
+            usedBytes -= it.next().data.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Identifies a rendering
+     */
+    static class Key {
+        final int pageIndex;
+        final int width;
+        final int height;
+
+        Key(int pageIndex, int width, int height) {
+            this.pageIndex = pageIndex;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return pageIndex == other.pageIndex && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return (pageIndex * 31 + width) * 31 + height;
+        }
+    }
+
+    /**
+     * A compressed rendering: per row either a 0 byte (same as the previous row) or a sequence
+     * of tokens (variable length encoded), which cover the row: (n << 1 | 1) followed by one pixel
+     * for a run of n equal pixels and (n << 1) followed by n pixels for n literal pixels.
+     * Pixels take 4 bytes (ARGB) or 3 bytes (RGB) if the rendering is opaque
+     */
+    static class Entry {
+        final byte[] data;
+        final boolean alpha;
+
+        Entry(byte[] data, boolean alpha) {
+            this.data = data;
+            this.alpha = alpha;
+        }
+    }
+
+    /**
+     * Encodes the rows of a rendering and stops once the encoded size exceeds a limit
+     */
+    static class Encoder {
+        final int width;
+        final int height;
+        final boolean alpha;
+        // the bits of a pixel which are stored
+        final int mask;
+        final int limit;
+        byte[] data;
+        int size = 0;
+
+        Encoder(int width, int height, boolean alpha, int limit) {
+            this.width = width;
+            this.height = height;
+            this.alpha = alpha;
+            this.mask = alpha ? 0xffffffff : 0xffffff;
+            this.limit = limit;
+            data = new byte[Math.max(16, Math.min(limit, width * 8))];
+        }
+
+        /**
+         * Encodes the row at the given offset of src
+         * @param previous the offset of the previous row in src or -1 for the first row
+         * @return false if the limit has been exceeded
+         */
+        boolean encodeRow(int[] src, int offset, int previous) {
+            if (!ensureCapacity(1))
+                return false;
+
+            if (previous >= 0) {
+                int x = 0;
+                while (x < width && ((src[offset + x] ^ src[previous + x]) & mask) == 0) {
+                    x++;
+                }
+                if (x == width) {
+                    data[size++] = 0;
+                    return true;
+                }
+            }
+
+            int literalStart = 0;
+            int x = 0;
+            while (x < width) {
+                int value = src[offset + x] & mask;
+                int run = 1;
+                while (x + run < width && (src[offset + x + run] & mask) == value) {
+                    run++;
+                }
+                if (run >= MIN_RUN) {
+                    if (!writeLiteral(src, offset + literalStart, x - literalStart) || !writeToken(run << 1 | 1) || !writePixel(value))
+                        return false;
+                    literalStart = x + run;
+                }
+                x += run;
+            }
+            return writeLiteral(src, offset + literalStart, width - literalStart);
+        }
+
+        /**
+         * Return the encoded rendering
+         */
+        byte[] getData() {
+            return size == data.length ? data : Arrays.copyOf(data, size);
+        }
+
+        private boolean writeLiteral(int[] src, int offset, int count) {
+            if (count == 0)
+                return true;
+            if (!writeToken(count << 1) || !ensureCapacity(count * 4))
+                return false;
+            byte[] d = data;
+            int n = size;
+            for (int i = offset; i < offset + count; i++) {
+                int pixel = src[i];
+                if (alpha)
+                    d[n++] = (byte) (pixel >>> 24);
+                d[n++] = (byte) (pixel >>> 16);
+                d[n++] = (byte) (pixel >>> 8);
+                d[n++] = (byte) pixel;
+            }
+            size = n;
+            return true;
+        }
+
+        private boolean writeToken(int token) {
+            if (!ensureCapacity(5))
+                return false;
+            while ((token & ~0x7f) != 0) {
+                data[size++] = (byte) (token | 0x80);
+                token >>>= 7;
+            }
+            data[size++] = (byte) token;
+            return true;
+        }
+
+        private boolean writePixel(int pixel) {
+            if (!ensureCapacity(4))
+                return false;
+            if (alpha)
+                data[size++] = (byte) (pixel >>> 24);
+            data[size++] = (byte) (pixel >>> 16);
+            data[size++] = (byte) (pixel >>> 8);
+            data[size++] = (byte) pixel;
+            return true;
+        }
+
+        private boolean ensureCapacity(int bytes) {
+            if (size + bytes <= data.length)
+                return true;
+            if (size + bytes > limit + 8)
+                return false;
+            data = Arrays.copyOf(data, Math.max(size + bytes, (int) Math.min((long) data.length * 2, limit + 8)));
+            return true;
+        }
+    }
+
+    /**
+     * Decodes the rows of a rendering one after another
+     */
+    static class Decoder {
+        final byte[] data;
+        final boolean alpha;
+        final int width;
+        int position = 0;
+
+        Decoder(Entry entry, int width) {
+            this.data = entry.data;
+            this.alpha = entry.alpha;
+            this.width = width;
+        }
+
+        /**
+         * Decodes the next row to dst at the given offset
+         * @param previous the offset of the previous row in dst (for repeated rows)
+         */
+        void decodeRow(int[] dst, int offset, int previous) {
+            if (data[position] == 0) {
+                // the previous row is the same
+                position++;
+                System.arraycopy(dst, previous, dst, offset, width);
+                return;
+            }
+
+            int x = offset;
+            int end = offset + width;
+            while (x < end) {
+                int token = readToken();
+                int count = token >>> 1;
+                if ((token & 1) != 0) {
+                    Arrays.fill(dst, x, x + count, readPixel());
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        dst[x + i] = readPixel();
+                    }
+                }
+                x += count;
+            }
+        }
+
+        private int readToken() {
+            int token = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                token |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return token;
+        }
+
+        private int readPixel() {
+            int pixel = alpha ? (data[position++] & 0xff) << 24 : 0xff000000;
+            pixel |= (data[position++] & 0xff) << 16;
+            pixel |= (data[position++] & 0xff) << 8;
+            pixel |= data[position++] & 0xff;
+            return pixel;
+        }
+    }
+}
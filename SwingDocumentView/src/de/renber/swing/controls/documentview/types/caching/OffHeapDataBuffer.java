@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.image.DataBuffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A DataBuffer of ints whose elements are stored in chunks of off-heap memory
+ * of an OffHeapPixelStore. Bulk access to whole rows is provided by getRows()
+ * and setRows(), which are much faster than accessing single elements
+ *
+ * @author berre
+ */
+public class OffHeapDataBuffer extends DataBuffer {
+
+    // the store which provided the chunks (null if they belong to someone else)
+    final OffHeapPixelStore store;
+    // null once the buffer has been released
+    IntBuffer[] chunks;
+
+    OffHeapDataBuffer(OffHeapPixelStore store, IntBuffer[] chunks, int size) {
+        super(TYPE_INT, size);
+        this.store = store;
+        this.chunks = chunks;
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        IntBuffer[] c = chunks;
+        return c == null ? 0 : c[i >>> OffHeapPixelStore.CHUNK_SHIFT].get(i & (OffHeapPixelStore.CHUNK_INTS - 1));
+    }
+
+    @Override
+    public void setElem(int bank, int i, int val) {
+        IntBuffer[] c = chunks;
+        if (c != null)
+            c[i >>> OffHeapPixelStore.CHUNK_SHIFT].put(i & (OffHeapPixelStore.CHUNK_INTS - 1), val);
+    }
+
+    /**
+     * Splits the given region of a buffer (e.g. a memory-mapped file) into chunks
+     * which can be used by a buffer with the given number of ints
+     * @param offset the offset of the region in bytes
+     */
+    static IntBuffer[] createChunks(ByteBuffer source, int offset, int size, ByteOrder order) {
+        long length = size * 4L;
+        int count = (size + OffHeapPixelStore.CHUNK_INTS - 1) >> OffHeapPixelStore.CHUNK_SHIFT;
+        IntBuffer[] chunks = new IntBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = offset + (long) i * OffHeapPixelStore.CHUNK_BYTES;
+            int bytes = (int) Math.min(OffHeapPixelStore.CHUNK_BYTES, offset + length - start);
+            ByteBuffer view = source.duplicate();
+            view.position((int) start);
+            view.limit((int) start + bytes);
+            chunks[i] = view.slice().order(order).asIntBuffer();
+        }
+        return chunks;
+    }
+
+    /**
+     * Copies length elements starting at the given offset to dst
+     * @return false if the buffer has been released
+     */
+    public synchronized boolean get(int offset, int[] dst, int dstOffset, int length) {
+        if (chunks == null)
+            return false;
+
+        while (length > 0) {
+            int inChunk = offset & (OffHeapPixelStore.CHUNK_INTS - 1);
+            int n = Math.min(length, OffHeapPixelStore.CHUNK_INTS - inChunk);
+            IntBuffer chunk = chunks[offset >>> OffHeapPixelStore.CHUNK_SHIFT];
+            // a chunk belongs to a single buffer, so its position can be used (guarded by this buffer)
+            chunk.position(inChunk);
+            chunk.get(dst, dstOffset, n);
+            offset += n;
+            dstOffset += n;
+            length -= n;
+        }
+        return true;
+    }
+
+    /**
+     * Copies length elements from src to the buffer starting at the given offset
+     */
+    public synchronized void set(int offset, int[] src, int srcOffset, int length) {
+        if (chunks == null)
+            return;
+
+        while (length > 0) {
+            int inChunk = offset & (OffHeapPixelStore.CHUNK_INTS - 1);
+            int n = Math.min(length, OffHeapPixelStore.CHUNK_INTS - inChunk);
+            IntBuffer chunk = chunks[offset >>> OffHeapPixelStore.CHUNK_SHIFT];
+            chunk.position(inChunk);
+            chunk.put(src, srcOffset, n);
+            offset += n;
+            srcOffset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Return true if the buffer has been released
+     */
+    public synchronized boolean isReleased() {
+        return chunks == null;
+    }
+
+    /**
+     * Returns the memory to the store. Afterwards the buffer reads as zeros
+     */
+    public synchronized void release() {
+        if (chunks != null) {
+            IntBuffer[] c = chunks;
+            chunks = null;
+            free(c);
+        }
+    }
+
+    /**
+     * Called once when the buffer is released, returns the chunks to their owner
+     */
+    protected void free(IntBuffer[] chunks) {
+        if (store != null)
+            store.free(chunks);
+    }
+}
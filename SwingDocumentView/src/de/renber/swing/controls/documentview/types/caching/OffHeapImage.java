@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * An image whose pixels (one int per pixel, RGB or ARGB) are stored in an OffHeapPixelStore.<br/>
+ * Java2D can only draw images with a custom DataBuffer pixel by pixel, so draw() copies
+ * the visible rows to small reusable staging images and draws them strip by strip instead.
+ * getImage() returns a BufferedImage view of the pixels for other uses
+ *
+ * @author berre
+ */
+public class OffHeapImage {
+
+    // number of rows which are copied to the staging image at once
+    static final int STRIP_ROWS = 64;
+
+    // the staging images of the drawing threads (usually the event dispatch thread only)
+    private static final ThreadLocal<Staging> staging = new ThreadLocal<Staging>();
+
+    final OffHeapDataBuffer buffer;
+    final int width;
+    final int height;
+    final boolean alpha;
+    // BufferedImage view of the pixels (created on demand)
+    BufferedImage image;
+
+    OffHeapImage(OffHeapDataBuffer buffer, int width, int height, boolean alpha) {
+        this.buffer = buffer;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+    }
+
+    /**
+     * Copies the given image to the store
+     * @return the copy or null if there is not enough memory left in the store
+     */
+    public static OffHeapImage copyOf(BufferedImage img, OffHeapPixelStore store) {
+        OffHeapImage copy = store.createImage(img.getWidth(), img.getHeight(), img.getColorModel().hasAlpha());
+        if (copy != null)
+            copy.setPixels(img);
+        return copy;
+    }
+
+    /**
+     * Copies the pixels of the given image (which has to have the size of this image)
+     */
+    public void setPixels(BufferedImage img) {
+        if (img.getWidth() != width || img.getHeight() != height)
+            throw new IllegalArgumentException("The image has to have the same size.");
+
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        if (img.getType() == type && img.getRaster().getDataBuffer() instanceof DataBufferInt
+                && img.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel
+                && img.getRaster().getParent() == null) {
+            // copy the rows directly
+            int[] data = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            int stride = ((SinglePixelPackedSampleModel) img.getRaster().getSampleModel()).getScanlineStride();
+            int offset = img.getRaster().getDataBuffer().getOffset();
+            if (stride == width) {
+                buffer.set(0, data, offset, width * height);
+            } else {
+                for (int row = 0; row < height; row++) {
+                    buffer.set(row * width, data, offset + row * stride, width);
+                }
+            }
+        } else {
+            // convert the pixels row by row
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                img.getRGB(0, y, width, 1, row, 0, width);
+                buffer.set(y * width, row, 0, width);
+            }
+        }
+    }
+
+    /**
+     * Copies the pixels of the given image (which has to have the size of this image)
+     * @return false if the given image has been released
+     */
+    public boolean setPixels(OffHeapImage img) {
+        if (img.width != width || img.height != height)
+            throw new IllegalArgumentException("The image has to have the same size.");
+
+        int rows = Math.max(1, Math.min(height, OffHeapPixelStore.CHUNK_INTS / width));
+        int[] data = new int[rows * width];
+        for (int y = 0; y < height; y += rows) {
+            int n = Math.min(rows, height - y) * width;
+            if (!img.buffer.get(y * width, data, 0, n))
+                return false;
+            buffer.set(y * width, data, 0, n);
+        }
+        return true;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean hasAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Return the number of bytes of pool memory which are occupied by this image
+     * (0 for images whose pixels belong to someone else, e.g. a memory-mapped file)
+     */
+    public long getSize() {
+        if (buffer.store == null || buffer.isReleased())
+            return 0;
+        return ((long) buffer.getSize() + OffHeapPixelStore.CHUNK_INTS - 1) / OffHeapPixelStore.CHUNK_INTS * OffHeapPixelStore.CHUNK_BYTES;
+    }
+
+    /**
+     * Return a BufferedImage which shows the pixels of this image. Java2D draws
+     * such images slowly, use draw() to draw the image
+     */
+    public synchronized BufferedImage getImage() {
+        if (image == null) {
+            DirectColorModel cm = alpha
+                    ? new DirectColorModel(32, 0xff0000, 0xff00, 0xff, 0xff000000)
+                    : new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
+            WritableRaster raster = Raster.createWritableRaster(cm.createCompatibleSampleModel(width, height), buffer, null);
+            image = new BufferedImage(cm, raster, false, null);
+        }
+        return image;
+    }
+
+    /**
+     * Copies the pixels to a new image on the heap, which Java2D can draw quickly
+     * @return the copy or null if the image has been released
+     */
+    public BufferedImage copyToHeap() {
+        BufferedImage copy = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] data = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+        if (!buffer.get(0, data, 0, width * height))
+            return null;
+        return copy;
+    }
+
+    /**
+     * Draws the image at the given position and size (only the rows which
+     * are inside of the clip of g are copied). If the image has been released
+     * nothing is drawn
+     * @return false if the image has been released
+     */
+    public boolean draw(Graphics2D g, int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0)
+            return true;
+
+        Staging st = staging.get();
+        if (st == null) {
+            st = new Staging();
+            staging.set(st);
+        }
+        int rows = Math.min(STRIP_ROWS, height);
+        Strip strip = st.getStrip(width, rows, alpha);
+
+        // the visible rows of the image (g leaves the rectangle unchanged if there is no clip)
+        Rectangle clip = st.clip;
+        clip.setBounds(x, y, w, h);
+        g.getClipBounds(clip);
+        int top = Math.max(clip.y, y) - y;
+        int bottom = Math.min(clip.y + clip.height, y + h) - y;
+        if (top >= bottom)
+            return !buffer.isReleased();
+
+        synchronized (buffer) {
+            if (buffer.isReleased())
+                return false;
+
+            if (w == width && h == height) {
+                for (int sy = top; sy < bottom; sy += rows) {
+                    int start = sy;
+                    if (start + rows > height) {
+                        if (alpha) {
+                            // the remaining rows must not be drawn twice
+                            int n = height - start;
+                            buffer.get(start * width, strip.data, 0, n * width);
+                            g.drawImage(strip.image, x, y + start, x + width, y + height, 0, 0, width, n, null);
+                            break;
+                        }
+                        // draw a whole strip which ends at the last row (faster than drawing a part of the strip)
+                        start = height - rows;
+                    }
+                    buffer.get(start * width, strip.data, 0, rows * width);
+                    g.drawImage(strip.image, x, y + start, null);
+                }
+            } else {
+                // map the visible rows to the rows of the image
+                int first = (int) ((long) top * height / h);
+                int last = (int) Math.min(height, ((long) bottom * height + h - 1) / h);
+                for (int sy = first; sy < last; sy += rows) {
+                    int n = Math.min(rows, height - sy);
+                    buffer.get(sy * width, strip.data, 0, n * width);
+                    int dy1 = y + (int) ((long) sy * h / height);
+                    int dy2 = y + (int) ((long) (sy + n) * h / height);
+                    g.drawImage(strip.image, x, dy1, x + w, dy2, 0, 0, width, n, null);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the memory of the image to the store
+     */
+    public void release() {
+        buffer.release();
+    }
+
+    /**
+     * The reusable staging images of a thread
+     */
+    static class Staging {
+        final Rectangle clip = new Rectangle();
+        // the most recently used strips (most recent first)
+        final Strip[] strips = new Strip[4];
+
+        /**
+         * Return a strip of the given size
+         */
+        Strip getStrip(int width, int rows, boolean alpha) {
+            int i = 0;
+            while (i < strips.length - 1 && strips[i] != null && !strips[i].matches(width, rows, alpha)) {
+                i++;
+            }
+            Strip strip = strips[i];
+            if (strip == null || !strip.matches(width, rows, alpha))
+                strip = new Strip(width, rows, alpha);
+
+            // move to the front
+            System.arraycopy(strips, 0, strips, 1, i);
+            strips[0] = strip;
+            return strip;
+        }
+    }
+
+    /**
+     * A staging image which can hold the given number of rows of an image of a specific width
+     */
+    static class Strip {
+        final BufferedImage image;
+        final int[] data;
+        final boolean alpha;
+
+        Strip(int width, int rows, boolean alpha) {
+            this.alpha = alpha;
+            image = new BufferedImage(width, rows, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+
+        boolean matches(int width, int rows, boolean alpha) {
+            return image.getWidth() == width && image.getHeight() == rows && this.alpha == alpha;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Provides memory outside of the Java heap for the pixels of rendered pages,
+ * so that many rendered pages can be kept without growing the heap (and the
+ * garbage collection pauses).<br/>
+ * The memory is allocated in chunks of direct buffers which are pooled and reused,
+ * since direct buffers are only freed when they are garbage collected. The capacity
+ * of the store is accounted separately from the heap size (-Xmx), note however that
+ * the JVM limits the total size of direct buffers (-XX:MaxDirectMemorySize, which
+ * defaults to the maximum heap size). Allocations which exceed the capacity or this
+ * limit fail, in this case callers keep their pixels on the heap
+ *
+ * @author berre
+ */
+public class OffHeapPixelStore {
+
+    // number of ints per chunk (1 MB)
+    static final int CHUNK_SHIFT = 18;
+    static final int CHUNK_INTS = 1 << CHUNK_SHIFT;
+    static final long CHUNK_BYTES = CHUNK_INTS * 4L;
+
+    public static final long DEFAULT_CAPACITY = 512L * 1024 * 1024;
+
+    private static final OffHeapPixelStore defaultStore = new OffHeapPixelStore(DEFAULT_CAPACITY);
+
+    // chunks which are not in use
+    final ArrayDeque<IntBuffer> freeChunks = new ArrayDeque<IntBuffer>();
+    // the maximum number of bytes
+    long capacity;
+    // the number of chunks which have been allocated (in use or free)
+    int allocatedChunks = 0;
+    // the number of chunks which are in use
+    int usedChunks = 0;
+
+    /**
+     * Creates a store
+     * @param capacity the number of bytes which may be allocated (rounded down to whole chunks)
+     */
+    public OffHeapPixelStore(long capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Return a store which can be shared by all pages (see AbstractBufferedPage.setPixelStore())
+     */
+    public static OffHeapPixelStore getDefault() {
+        return defaultStore;
+    }
+
+    /**
+     * Return the number of bytes which may be allocated
+     */
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the number of bytes which may be allocated. Lowering the capacity
+     * does not affect pixels which are already stored
+     */
+    public synchronized void setCapacity(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("The capacity must not be negative.");
+        this.capacity = capacity;
+        trim();
+    }
+
+    /**
+     * Return the number of bytes which are in use
+     */
+    public synchronized long getUsedBytes() {
+        return usedChunks * CHUNK_BYTES;
+    }
+
+    /**
+     * Return the number of bytes which have been allocated (in use or kept for reuse)
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedChunks * CHUNK_BYTES;
+    }
+
+    /**
+     * Allocates an image of the given size whose pixels are stored in this store
+     * @param alpha whether the image has an alpha channel
+     * @return the image or null if there is not enough memory left
+     */
+    public OffHeapImage createImage(int width, int height, boolean alpha) {
+        OffHeapDataBuffer buffer = allocate((long) width * height);
+        return buffer == null ? null : new OffHeapImage(buffer, width, height, alpha);
+    }
+
+    /**
+     * Allocates a buffer with the given number of ints
+     * @return the buffer or null if there is not enough memory left
+     */
+    synchronized OffHeapDataBuffer allocate(long size) {
+        if (size <= 0 || size > Integer.MAX_VALUE)
+            return null;
+
+        int count = (int) ((size + CHUNK_INTS - 1) >> CHUNK_SHIFT);
+        if ((usedChunks + count) * CHUNK_BYTES > capacity)
+            return null;
+
+        IntBuffer[] chunks = new IntBuffer[count];
+        for (int i = 0; i < count; i++) {
+            IntBuffer chunk = freeChunks.poll();
+            if (chunk == null) {
+                try {
+                    chunk = ByteBuffer.allocateDirect(CHUNK_INTS * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+                    allocatedChunks++;
+                } catch (OutOfMemoryError e) {
+                    // the direct memory limit of the JVM has been reached
+                    for (int j = 0; j < i; j++) {
+                        freeChunks.push(chunks[j]);
+                    }
+                    return null;
+                }
+            }
+            chunks[i] = chunk;
+        }
+        usedChunks += count;
+        return new OffHeapDataBuffer(this, chunks, (int) size);
+    }
+
+    /**
+     * Returns the chunks of a buffer which is no longer used
+     */
+    synchronized void free(IntBuffer[] chunks) {
+        usedChunks -= chunks.length;
+        for (IntBuffer chunk : chunks) {
+            freeChunks.push(chunk);
+        }
+        trim();
+    }
+
+    /**
+     * Drops free chunks which exceed the capacity (they are released by the garbage collector)
+     */
+    private void trim() {
+        while (!freeChunks.isEmpty() && allocatedChunks * CHUNK_BYTES > capacity) {
+            freeChunks.pop();
+            allocatedChunks--;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import de.renber.swing.controls.documentview.types.Page;
+
+/**
+ * Keeps track of the memory used by the rendered buffers of CacheablePages and
+ * releases the buffers of the least recently used pages once the memory budget
+ * is exceeded. Buffers outside of the Java heap (see OffHeapCacheablePage) have a
+ * budget of their own. Pinned pages (e.g. the currently visible ones) are never released<br/>
+ * Released pages report isScaled() == false and are therefore rendered again
+ * by the PageScaler when they are needed. Releasing a buffer may take a while (e.g. when
+ * the page compresses it), so it happens on a background thread
+ *
+ * @author berre
+ */
+public class PageCache {
+
+    // the pages with a rendered buffer and their buffer sizes in the order of their last use
+    final LinkedHashMap<CacheablePage, Entry> entries = new LinkedHashMap<CacheablePage, Entry>(16, 0.75f, true);
+    // pages which must not be released
+    final Set<Page> pinnedPages = Collections.newSetFromMap(new IdentityHashMap<Page, Boolean>());
+    // the memory budget in bytes
+    long budget;
+    // bytes used by all cached buffers
+    long usedBytes = 0;
+    // the budget for off-heap buffers in bytes
+    long offHeapBudget;
+    // bytes used by all cached off-heap buffers
+    long usedOffHeapBytes = 0;
+    // pages which have been evicted and whose buffers are about to be released
+    List<CacheablePage> evictedPages = new ArrayList<CacheablePage>();
+    // releases the buffers of the evicted pages outside of the lock (the thread terminates when idle)
+    final Executor releaser;
+
+    /**
+     * Creates a page cache with a budget of a quarter of the maximum heap size
+     * (and the capacity of the default OffHeapPixelStore for off-heap buffers)
+     */
+    public PageCache() {
+        this(Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Creates a page cache
+     * @param budget the number of bytes the rendered page buffers may occupy
+     */
+    public PageCache(long budget) {
+        this(budget, OffHeapPixelStore.getDefault().getCapacity());
+    }
+
+    /**
+     * Creates a page cache
+     * @param budget the number of bytes the rendered page buffers may occupy on the heap
+     * @param offHeapBudget the number of bytes the rendered page buffers may occupy outside of the heap
+     */
+    public PageCache(long budget, long offHeapBudget) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "PageCache-releaser");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        releaser = executor;
+
+        setOffHeapBudget(offHeapBudget);
+        setBudget(budget);
+    }
+
+    /**
+     * Return the number of bytes the rendered page buffers may occupy
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Set the number of bytes the rendered page buffers may occupy
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("The budget must not be negative.");
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * Return the number of bytes occupied by the cached page buffers
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Return the number of bytes the rendered page buffers may occupy outside of the heap
+     */
+    public synchronized long getOffHeapBudget() {
+        return offHeapBudget;
+    }
+
+    /**
+     * Set the number of bytes the rendered page buffers may occupy outside of the heap
+     */
+    public synchronized void setOffHeapBudget(long offHeapBudget) {
+        if (offHeapBudget < 0)
+            throw new IllegalArgumentException("The budget must not be negative.");
+        this.offHeapBudget = offHeapBudget;
+        evict();
+    }
+
+    /**
+     * Return the number of bytes occupied by the cached off-heap page buffers
+     */
+    public synchronized long getUsedOffHeapBytes() {
+        return usedOffHeapBytes;
+    }
+
+    /**
+     * Has to be called after a page has been (re-)rendered.
+     * Records the new buffer size of the page and releases other pages if the budget
+     * is exceeded
+     */
+    public synchronized void update(Page page) {
+        if (!(page instanceof CacheablePage))
+            return;
+
+        track((CacheablePage) page);
+        evict();
+    }
+
+    /**
+     * Records the current buffer size of the given page
+     */
+    private void track(CacheablePage cp) {
+        long size = cp.getBufferSize();
+        long offHeapSize = cp instanceof OffHeapCacheablePage ? ((OffHeapCacheablePage) cp).getOffHeapBufferSize() : 0;
+        Entry old = size > 0 || offHeapSize > 0 ? entries.put(cp, new Entry(size, offHeapSize)) : entries.remove(cp);
+        usedBytes += size - (old == null ? 0 : old.size);
+        usedOffHeapBytes += offHeapSize - (old == null ? 0 : old.offHeapSize);
+    }
+
+    /**
+     * Marks the given page as recently used
+     */
+    public synchronized void touch(Page page) {
+        // access ordered map: get() moves the entry to the end
+        entries.get(page);
+    }
+
+    /**
+     * Replace the set of pinned pages. Pinned pages are never released and
+     * are marked as recently used
+     */
+    public synchronized void setPinnedPages(List<? extends Page> pages) {
+        pinnedPages.clear();
+        for (int i = 0; i < pages.size(); i++) {
+            Page p = pages.get(i);
+            pinnedPages.add(p);
+            entries.get(p);
+        }
+        evict();
+    }
+
+    /**
+     * Stop tracking the given page (its buffer is not released)
+     */
+    public synchronized void remove(Page page) {
+        Entry entry = entries.remove(page);
+        if (entry != null) {
+            usedBytes -= entry.size;
+            usedOffHeapBytes -= entry.offHeapSize;
+        }
+        pinnedPages.remove(page);
+    }
+
+    /**
+     * Stop tracking all pages (their buffers are not released)
+     */
+    public synchronized void clear() {
+        entries.clear();
+        pinnedPages.clear();
+        usedBytes = 0;
+        usedOffHeapBytes = 0;
+    }
+
+    /**
+     * Evicts the least recently used pages which are not pinned until the
+     * used memory fits into the budgets, their buffers are released in the background
+     */
+    protected void evict() {
+        if (usedBytes <= budget && usedOffHeapBytes <= offHeapBudget)
+            return;
+
+        Iterator<Map.Entry<CacheablePage, Entry>> it = entries.entrySet().iterator();
+        while ((usedBytes > budget || usedOffHeapBytes > offHeapBudget) && it.hasNext()) {
+            Map.Entry<CacheablePage, Entry> entry = it.next();
+            if (pinnedPages.contains(entry.getKey()))
+                continue;
+
+            // only release pages which occupy memory of an exceeded budget
+            Entry e = entry.getValue();
+            if (!(usedBytes > budget && e.size > 0) && !(usedOffHeapBytes > offHeapBudget && e.offHeapSize > 0))
+                continue;
+
+            it.remove();
+            usedBytes -= e.size;
+            usedOffHeapBytes -= e.offHeapSize;
+            if (evictedPages.isEmpty()) {
+                releaser.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        releaseEvictedPages();
+                    }
+                });
+            }
+            evictedPages.add(entry.getKey());
+        }
+    }
+
+    /**
+     * Releases the buffers of the evicted pages (called on the releaser thread)
+     */
+    void releaseEvictedPages() {
+        List<CacheablePage> pages;
+        synchronized (this) {
+            pages = evictedPages;
+            evictedPages = new ArrayList<CacheablePage>();
+            // pages which have been rendered or pinned again in the meantime are kept
+            boolean tracked = false;
+            for (Iterator<CacheablePage> it = pages.iterator(); it.hasNext();) {
+                CacheablePage page = it.next();
+                if (entries.containsKey(page)) {
+                    it.remove();
+                } else if (pinnedPages.contains(page)) {
+                    track(page);
+                    tracked = true;
+                    it.remove();
+                }
+            }
+            if (tracked)
+                evict();
+        }
+        for (CacheablePage page : pages) {
+            page.releaseBuffer();
+        }
+    }
+
+    /**
+     * Return the number of bytes occupied by the pixels of the given image
+     * (0 for null)
+     */
+    public static long getImageSize(BufferedImage img) {
+        if (img == null)
+            return 0;
+
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * The buffer sizes of a cached page
+     */
+    static class Entry {
+        final long size;
+        final long offHeapSize;
+
+        Entry(long size, long offHeapSize) {
+            this.size = size;
+            this.offHeapSize = offHeapSize;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Second cache tier for rendered pages: renderings which are released are written
+ * to a memory-mapped scratch file, keyed by (page index, width, height), so that the
+ * page can be shown again without rendering it (see SpillablePage).<br/>
+ * Restored renderings are OffHeapImages which read their pixels directly from the mapped
+ * file (no copying or decoding), their file region is not reused until they have been
+ * released. Once the capacity is reached the least recently used entries are dropped.<br/>
+ * The scratch file is created when the first rendering is written (readable only by the
+ * current user) and deleted by close()
+ *
+ * @author berre
+ */
+public class PageSpillCache {
+
+    public static final long DEFAULT_CAPACITY = 1024L * 1024 * 1024;
+
+    // the maximum size of the scratch file
+    final long capacity;
+    // the entries in the order of their last use
+    final LinkedHashMap<Key, Slot> entries = new LinkedHashMap<Key, Slot>(16, 0.75f, true);
+    // unused regions of the file below fileEnd (offset -> length)
+    final TreeMap<Long, Long> freeRegions = new TreeMap<Long, Long>();
+    // the end of the used part of the file
+    long fileEnd = 0;
+
+    File file;
+    RandomAccessFile raf;
+    MappedByteBuffer mapping;
+    boolean closed = false;
+
+    /**
+     * Creates a spill cache with the default capacity
+     */
+    public PageSpillCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a spill cache
+     * @param capacity the maximum size of the scratch file in bytes (at most 2 GB)
+     */
+    public PageSpillCache(long capacity) {
+        if (capacity < 0 || capacity > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The capacity must be between 0 and 2 GB.");
+        this.capacity = capacity;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Return the number of bytes occupied by the stored renderings
+     */
+    public synchronized long getUsedBytes() {
+        long used = 0;
+        for (Slot slot : entries.values()) {
+            used += slot.length;
+        }
+        return used;
+    }
+
+    /**
+     * Return true if there is a rendering of the given page and size
+     */
+    public synchronized boolean contains(int pageIndex, int width, int height) {
+        Slot slot = entries.get(new Key(pageIndex, width, height));
+        return slot != null && !slot.pending;
+    }
+
+    /**
+     * Writes the given rendering of a page to the cache (replacing an existing one of the same size)
+     * @return false if the rendering could not be stored
+     */
+    public boolean put(int pageIndex, BufferedImage img) {
+        Key key = new Key(pageIndex, img.getWidth(), img.getHeight());
+        Slot slot;
+        OffHeapImage target;
+        synchronized (this) {
+            slot = allocate(key, img.getColorModel().hasAlpha());
+            if (slot == null)
+                return false;
+            target = slot.createImage();
+        }
+
+        // write the pixels outside of the lock, the slot is not returned by get() until then
+        boolean written = false;
+        try {
+            target.setPixels(img);
+            written = true;
+        } finally {
+            complete(key, slot, written);
+            target.release();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the given rendering of a page to the cache (replacing an existing one of the same size)
+     * @return false if the rendering could not be stored (e.g. because it has been released)
+     */
+    public boolean put(int pageIndex, OffHeapImage img) {
+        Key key = new Key(pageIndex, img.getWidth(), img.getHeight());
+        Slot slot;
+        OffHeapImage target;
+        synchronized (this) {
+            slot = allocate(key, img.hasAlpha());
+            if (slot == null)
+                return false;
+            target = slot.createImage();
+        }
+
+        boolean copied = false;
+        try {
+            copied = target.setPixels(img);
+        } finally {
+            complete(key, slot, copied);
+            target.release();
+        }
+        return copied;
+    }
+
+    /**
+     * Return the rendering of the given page and size which reads its pixels from the scratch file
+     * or null if there is none. The file region is kept until the returned image has been released
+     */
+    public synchronized OffHeapImage get(int pageIndex, int width, int height) {
+        Slot slot = entries.get(new Key(pageIndex, width, height));
+        if (slot == null || slot.pending)
+            return null;
+        return slot.createImage();
+    }
+
+    /**
+     * Removes the rendering of the given page and size
+     */
+    public synchronized void remove(int pageIndex, int width, int height) {
+        Slot slot = entries.remove(new Key(pageIndex, width, height));
+        if (slot != null)
+            slot.discard();
+    }
+
+    /**
+     * Removes all renderings of the given page
+     */
+    public synchronized void remove(int pageIndex) {
+        for (Iterator<Map.Entry<Key, Slot>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, Slot> entry = it.next();
+            if (entry.getKey().pageIndex == pageIndex) {
+                entry.getValue().discard();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all renderings (e.g. because the contents of the pages have changed)
+     */
+    public synchronized void clear() {
+        for (Slot slot : entries.values()) {
+            slot.discard();
+        }
+        entries.clear();
+    }
+
+    /**
+     * Removes all renderings and deletes the scratch file. Afterwards nothing is stored anymore,
+     * images which have been returned by get() must not be drawn anymore
+     */
+    public synchronized void close() {
+        clear();
+        closed = true;
+        mapping = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                Logger.getLogger(PageSpillCache.class.getName()).log(Level.WARNING, "Could not close the page spill file", e);
+            }
+            raf = null;
+        }
+        if (file != null) {
+            if (!file.delete())
+                file.deleteOnExit();
+            file = null;
+        }
+    }
+
+    /**
+     * Reserves a file region for a rendering of the given size and returns its slot, which
+     * is pending (i.e. not returned by get()) until complete() has been called
+     */
+    private Slot allocate(Key key, boolean alpha) {
+        int width = key.width;
+        int height = key.height;
+        if (closed || width <= 0 || height <= 0)
+            return null;
+
+        long length = (long) width * height * 4;
+        if (length > capacity)
+            return null;
+
+        if (mapping == null && !open())
+            return null;
+
+        Slot old = entries.remove(key);
+        if (old != null)
+            old.discard();
+
+        long offset = findRegion(length);
+        while (offset < 0) {
+            // drop the least recently used entry which is not in use
+            Iterator<Map.Entry<Key, Slot>> it = entries.entrySet().iterator();
+            Slot victim = null;
+            while (it.hasNext()) {
+                Slot slot = it.next().getValue();
+                if (slot.users == 0) {
+                    it.remove();
+                    victim = slot;
+                    break;
+                }
+            }
+            if (victim == null)
+                return null;
+            victim.discard();
+            offset = findRegion(length);
+        }
+
+        Slot slot = new Slot(offset, length, width, height, alpha);
+        entries.put(key, slot);
+        return slot;
+    }
+
+    /**
+     * Makes an allocated slot available once its pixels have been written,
+     * or drops it if they could not be written
+     */
+    private synchronized void complete(Key key, Slot slot, boolean written) {
+        if (written)
+            slot.pending = false;
+        else if (entries.remove(key, slot))
+            slot.discard();
+    }
+
+    /**
+     * Return the offset of a free region of the given length (which is then marked as used) or -1
+     */
+    private long findRegion(long length) {
+        for (Map.Entry<Long, Long> region : freeRegions.entrySet()) {
+            if (region.getValue() >= length) {
+                long offset = region.getKey();
+                freeRegions.remove(offset);
+                if (region.getValue() > length)
+                    freeRegions.put(offset + length, region.getValue() - length);
+                return offset;
+            }
+        }
+        if (fileEnd + length <= capacity) {
+            long offset = fileEnd;
+            fileEnd += length;
+            return offset;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a region of the file (merging it with adjacent free regions)
+     */
+    private void freeRegion(long offset, long length) {
+        Map.Entry<Long, Long> before = freeRegions.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            freeRegions.remove(before.getKey());
+            offset = before.getKey();
+            length += before.getValue();
+        }
+        Long after = freeRegions.remove(offset + length);
+        if (after != null)
+            length += after;
+
+        if (offset + length == fileEnd)
+            fileEnd = offset;
+        else
+            freeRegions.put(offset, length);
+    }
+
+    /**
+     * Creates and maps the scratch file
+     */
+    private boolean open() {
+        try {
+            // the file holds the contents of the document, so only the current user may read it
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                file = Files.createTempFile("pages", ".spill", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))).toFile();
+            } else {
+                file = File.createTempFile("pages", ".spill");
+                file.setReadable(false, false);
+                file.setWritable(false, false);
+                file.setReadable(true, true);
+                file.setWritable(true, true);
+            }
+            file.deleteOnExit();
+            raf = new RandomAccessFile(file, "rw");
+            // the file is sparse where the file system supports it
+            mapping = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return true;
+        } catch (IOException e) {
+            Logger.getLogger(PageSpillCache.class.getName()).log(Level.WARNING, "Could not create the page spill file", e);
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Identifies a rendering
+     */
+    static class Key {
+        final int pageIndex;
+        final int width;
+        final int height;
+
+        Key(int pageIndex, int width, int height) {
+            this.pageIndex = pageIndex;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return pageIndex == other.pageIndex && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return (pageIndex * 31 + width) * 31 + height;
+        }
+    }
+
+    /**
+     * A region of the file which holds a rendering
+     */
+    class Slot {
+        final long offset;
+        final long length;
+        final int width;
+        final int height;
+        final boolean alpha;
+        // true while the pixels are being written
+        boolean pending = true;
+        // the number of images which read from the region
+        int users = 0;
+        // true once the slot has been removed, the region is freed when it is not in use anymore
+        boolean discarded = false;
+
+        Slot(long offset, long length, int width, int height, boolean alpha) {
+            this.offset = offset;
+            this.length = length;
+            this.width = width;
+            this.height = height;
+            this.alpha = alpha;
+        }
+
+        /**
+         * Return an image which reads from and writes to the region (guarded by the cache)
+         */
+        OffHeapImage createImage() {
+            int size = width * height;
+            IntBuffer[] chunks = OffHeapDataBuffer.createChunks(mapping, (int) offset, size, ByteOrder.nativeOrder());
+            users++;
+            OffHeapDataBuffer buffer = new OffHeapDataBuffer(null, chunks, size) {
+                @Override
+                protected void free(IntBuffer[] chunks) {
+                    synchronized (PageSpillCache.this) {
+                        users--;
+                        if (discarded && users == 0 && !closed)
+                            freeRegion(offset, length);
+                    }
+                }
+            };
+            return new OffHeapImage(buffer, width, height, alpha);
+        }
+
+        /**
+         * Frees the region once it is not in use anymore (the slot has been removed from the entries)
+         */
+        void discard() {
+            discarded = true;
+            if (users == 0 && !closed)
+                freeRegion(offset, length);
+        }
+    }
+}
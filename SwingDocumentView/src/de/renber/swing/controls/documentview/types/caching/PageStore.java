@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.renber.swing.controls.documentview.types.GraphicsUtilities;
+import de.renber.swing.controls.documentview.types.Page;
+import de.renber.swing.controls.documentview.types.PageSource;
+
+/**
+ * List of the pages of a PageSource which creates the pages on demand.
+ * Reading a page never blocks: get() returns the page if it has been created already,
+ * otherwise the page is created by a background loader and a placeholder (see
+ * isPlaceholder()) is returned until then. Once a page has been created pageMaterialized()
+ * is called (on the loader thread).<br/>
+ * Only a bounded working set of pages is kept: once the capacity is exceeded the least
+ * recently used pages which are not pinned (e.g. the currently visible ones) are recycled
+ * by the loader and created again when they are needed<br/>
+ * Note: iterating over the list requests all pages, use getMaterializedPages()
+ * to access the pages which currently exist
+ *
+ * @author berre
+ */
+public class PageStore extends AbstractList<Page> {
+
+    // the default number of pages which are kept
+    public static final int DEFAULT_CAPACITY = 64;
+
+    public static String placeholderText = "Rendering page...";
+
+    final PageSource pageSource;
+    final int pageCount;
+    // the published pages (or placeholders while a page is being created)
+    final AtomicReferenceArray<Page> pages;
+    // the time stamp of the last access per page
+    final AtomicLongArray lastAccess;
+    final AtomicLong clock = new AtomicLong();
+    // the materialized pages and their indices
+    final Map<Page, Integer> materialized = new ConcurrentHashMap<Page, Integer>();
+    // pages which must not be recycled (replaced as a whole)
+    volatile Set<Page> pinnedPages = Collections.emptySet();
+    // the number of pages to keep
+    volatile int capacity;
+    // creates and recycles the pages (the thread terminates when idle)
+    final Executor loader;
+
+    /**
+     * Creates a page store for the given page source (may be null for an empty store)
+     */
+    public PageStore(PageSource pageSource) {
+        this(pageSource, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a page store
+     * @param pageSource the page source to get the pages from (may be null for an empty store)
+     * @param capacity the number of pages to keep
+     */
+    public PageStore(PageSource pageSource, int capacity) {
+        this.pageSource = pageSource;
+        this.pageCount = pageSource == null ? 0 : pageSource.getPageCount();
+        pages = new AtomicReferenceArray<Page>(pageCount);
+        lastAccess = new AtomicLongArray(pageCount);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "PageStore-loader");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        loader = executor;
+
+        setCapacity(capacity);
+    }
+
+    public PageSource getPageSource() {
+        return pageSource;
+    }
+
+    @Override
+    public int size() {
+        return pageCount;
+    }
+
+    /**
+     * Return the page with the given index. If the page does not exist yet
+     * it is requested from the page source in the background and a placeholder
+     * is returned
+     */
+    @Override
+    public Page get(int index) {
+        if (index < 0 || index >= pageCount)
+            throw new IndexOutOfBoundsException("Page index " + index + " is out of range.");
+
+        lastAccess.set(index, clock.incrementAndGet());
+        Page page = pages.get(index);
+        if (page == null) {
+            PlaceholderPage placeholder = new PlaceholderPage(index);
+            if (pages.compareAndSet(index, null, placeholder)) {
+                loader.execute(new LoadTask(index, placeholder));
+                return placeholder;
+            }
+            // another thread has been faster
+            page = pages.get(index);
+        }
+        return page;
+    }
+
+    /**
+     * Return if the given page is a placeholder for a page which is being created
+     */
+    public static boolean isPlaceholder(Page page) {
+        return page instanceof PlaceholderPage;
+    }
+
+    /**
+     * Return if the given page is currently materialized
+     */
+    public boolean isMaterialized(Page page) {
+        return page != null && materialized.containsKey(page);
+    }
+
+    /**
+     * Return the index of the given page or -1 if it is not materialized
+     */
+    public int getPageIndex(Page page) {
+        Integer index = page == null ? null : materialized.get(page);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Return the pages which are currently materialized
+     */
+    public List<Page> getMaterializedPages() {
+        return new ArrayList<Page>(materialized.keySet());
+    }
+
+    /**
+     * Return the number of pages which are currently materialized
+     */
+    public int getMaterializedCount() {
+        return materialized.size();
+    }
+
+    /**
+     * Return the number of pages which are kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the number of pages which are kept (pinned pages are kept even if
+     * there are more of them)
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity must be at least 1.");
+        this.capacity = capacity;
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                trim();
+            }
+        });
+    }
+
+    /**
+     * Replace the set of pinned pages. Pinned pages are never recycled
+     * (the list is traversed by index, so that the check for an unchanged
+     * set does not allocate an iterator on every paint)
+     */
+    public void setPinnedPages(List<? extends Page> newPinnedPages) {
+        Set<Page> current = pinnedPages;
+        if (current.size() == newPinnedPages.size()) {
+            boolean unchanged = true;
+            for (int i = 0; i < newPinnedPages.size() && unchanged; i++) {
+                unchanged = current.contains(newPinnedPages.get(i));
+            }
+            if (unchanged)
+                return;
+        }
+
+        Set<Page> pinned = Collections.newSetFromMap(new IdentityHashMap<Page, Boolean>());
+        pinned.addAll(newPinnedPages);
+        pinnedPages = pinned;
+    }
+
+    /**
+     * Recycles all materialized pages (in the background)
+     */
+    @Override
+    public void clear() {
+        pinnedPages = Collections.emptySet();
+        // pages which are being created are discarded by their LoadTask
+        for (int i = 0; i < pageCount; i++) {
+            pages.set(i, null);
+        }
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<Page, Integer> entry : materialized.entrySet()) {
+                    if (materialized.remove(entry.getKey()) != null)
+                        recycle(entry.getValue(), entry.getKey());
+                }
+            }
+        });
+    }
+
+    /**
+     * Recycles the least recently used pages which are not pinned until
+     * the number of pages fits the capacity (called on the loader thread)
+     */
+    protected void trim() {
+        while (materialized.size() > capacity) {
+            Set<Page> pinned = pinnedPages;
+
+            // find the least recently used page
+            Page oldest = null;
+            int oldestIndex = -1;
+            long oldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<Page, Integer> entry : materialized.entrySet()) {
+                int index = entry.getValue();
+                if (!pinned.contains(entry.getKey()) && lastAccess.get(index) < oldestAccess) {
+                    oldest = entry.getKey();
+                    oldestIndex = index;
+                    oldestAccess = lastAccess.get(index);
+                }
+            }
+            if (oldest == null)
+                return; // all pages are pinned
+
+            pages.compareAndSet(oldestIndex, oldest, null);
+            materialized.remove(oldest);
+            recycle(oldestIndex, oldest);
+        }
+    }
+
+    /**
+     * Called on the loader thread when a page has been created, before it is published
+     */
+    protected void pageCreated(int pageIndex, Page page) {
+        // --
+    }
+
+    /**
+     * Called on the loader thread when a page has been created and published
+     */
+    protected void pageMaterialized(int pageIndex, Page page) {
+        // --
+    }
+
+    /**
+     * Draws the placeholder of a page which is being created
+     */
+    protected void drawPlaceholder(int pageIndex, Graphics2D g, int x, int y, int w, int h) {
+        GraphicsUtilities.drawPlaceholder(g, placeholderText, x, y, w, h);
+    }
+
+    /**
+     * Called on the loader thread when a page has been removed from the
+     * working set, frees the page's resources
+     */
+    protected void recycle(int pageIndex, Page page) {
+        page.freeResources();
+    }
+
+    /**
+     * Creates a page and replaces its placeholder
+     */
+    class LoadTask implements Runnable {
+
+        final int pageIndex;
+        final PlaceholderPage placeholder;
+
+        LoadTask(int pageIndex, PlaceholderPage placeholder) {
+            this.pageIndex = pageIndex;
+            this.placeholder = placeholder;
+        }
+
+        @Override
+        public void run() {
+            if (pages.get(pageIndex) != placeholder)
+                return; // cleared in the meantime
+
+            Page page;
+            try {
+                page = pageSource.getPage(pageIndex);
+            } catch (RuntimeException e) {
+                Logger.getLogger(PageStore.class.getName()).log(Level.SEVERE, "Could not create page " + pageIndex, e);
+                pages.compareAndSet(pageIndex, placeholder, null);
+                return;
+            }
+
+            pageCreated(pageIndex, page);
+            materialized.put(page, pageIndex);
+            if (!pages.compareAndSet(pageIndex, placeholder, page)) {
+                // the store has been cleared while the page was created
+                materialized.remove(page);
+                recycle(pageIndex, page);
+                return;
+            }
+            lastAccess.set(pageIndex, clock.incrementAndGet());
+
+            trim();
+            pageMaterialized(pageIndex, page);
+        }
+    }
+
+    /**
+     * Stands in for a page which is being created, draws the placeholder
+     * and never needs to be scaled
+     */
+    class PlaceholderPage implements Page {
+
+        final int pageIndex;
+
+        PlaceholderPage(int pageIndex) {
+            this.pageIndex = pageIndex;
+        }
+
+        @Override
+        public void draw(Graphics2D g, int x, int y, int w, int h) {
+            drawPlaceholder(pageIndex, g, x, y, w, h);
+        }
+
+        @Override
+        public boolean isScaled(int w, int h) {
+            return true;
+        }
+
+        @Override
+        public void hiQualityScale(int w, int h) {
+            // --
+        }
+
+        @Override
+        public Dimension getPageSize() {
+            return pageSource.getPageSize(pageIndex);
+        }
+
+        @Override
+        public void freeResources() {
+            // --
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import de.renber.swing.controls.documentview.types.Page;
+
+/**
+ * A page which stores its renderings in a PersistentRenderCache and is able
+ * to restore them from there (e.g. when a document is opened again)
+ * @author berre
+ */
+public interface PersistablePage extends Page {
+
+    /**
+     * Set the cache to store the renderings in and the content hash of the document
+     * and index of this page which identify them (cache = null: do not store renderings)
+     */
+    public void setRenderCache(PersistentRenderCache cache, String contentHash, int pageIndex);
+
+    /**
+     * Restores the cached rendering which is closest to the given size (it may have another size,
+     * then it is shown until the page has been scaled to the requested size). May read from disk,
+     * the PageScaler calls it on its workers
+     * @return true if a rendering has been restored
+     */
+    public boolean restoreFromRenderCache(int w, int h);
+}
@@ -0,0 +1,467 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps renderings of pages on disk across sessions, so that reopened documents
+ * can be shown without rendering them again. Renderings are keyed by the content hash
+ * of the document, the page index and a resolution bucket (the power of two of the width),
+ * for each bucket the most recent rendering is kept.<br/>
+ * Every rendering is stored as a file of raw pixels which is memory-mapped when it is
+ * read (no decoding). The total size of the files is bounded, the least recently
+ * used files are deleted once it is exceeded
+ *
+ * @author berre
+ */
+public class PersistentRenderCache {
+
+    public static final long DEFAULT_CAPACITY = 1024L * 1024 * 1024;
+
+    // <content hash>_<page index>_<width>x<height>.px
+    static final Pattern FILE_NAME = Pattern.compile("([0-9a-zA-Z]+)_(\\d+)_(\\d+)x(\\d+)\\.px");
+    static final Pattern HASH = Pattern.compile("[0-9a-zA-Z]+");
+    // file header: magic, width, height, flags
+    static final int MAGIC = 0x50475831;
+    static final int HEADER_SIZE = 16;
+    static final int FLAG_ALPHA = 1;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    final File directory;
+    // the maximum total size of the files in bytes
+    volatile long capacity;
+    // the cached renderings in the order of their last use
+    final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    long usedBytes = 0;
+    // number of temporary files (for unique names)
+    long writeCount = 0;
+
+    /**
+     * Creates a cache which stores its files in the given directory
+     * (which is created if necessary) with the default capacity
+     */
+    public PersistentRenderCache(File directory) {
+        this(directory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache which stores its files in the given directory (which is created if necessary)
+     * @param capacity the maximum total size of the files in bytes
+     */
+    public PersistentRenderCache(File directory, long capacity) {
+        this.directory = directory;
+        setCapacity(capacity);
+        scan();
+    }
+
+    /**
+     * Return the default directory for cached renderings, which is located in the
+     * cache directory of the current user (the directory is created with owner-only
+     * access when the first rendering is stored)
+     */
+    public static File getDefaultDirectory() {
+        String home = System.getProperty("user.home");
+        String os = System.getProperty("os.name", "").toLowerCase();
+        File cacheRoot;
+        if (os.startsWith("windows") && System.getenv("LOCALAPPDATA") != null) {
+            cacheRoot = new File(System.getenv("LOCALAPPDATA"));
+        } else if (os.startsWith("mac")) {
+            cacheRoot = new File(home, "Library/Caches");
+        } else if (System.getenv("XDG_CACHE_HOME") != null && new File(System.getenv("XDG_CACHE_HOME")).isAbsolute()) {
+            cacheRoot = new File(System.getenv("XDG_CACHE_HOME"));
+        } else {
+            cacheRoot = new File(home, ".cache");
+        }
+        return new File(cacheRoot, "swing-document-view");
+    }
+
+    /**
+     * Creates the given directory (and its missing parents) so that only the
+     * current user can access it
+     * @return false if the directory could not be created
+     */
+    static boolean createPrivateDirectory(File directory) {
+        Path path = directory.toPath();
+        try {
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.createDirectories(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(path);
+                // revoke the access of others, then grant it to the owner
+                directory.setReadable(false, false);
+                directory.setWritable(false, false);
+                directory.setExecutable(false, false);
+                directory.setReadable(true, true);
+                directory.setWritable(true, true);
+                directory.setExecutable(true, true);
+            }
+        } catch (IOException e) {
+            Logger.getLogger(PersistentRenderCache.class.getName()).log(Level.WARNING, "Could not create the cache directory " + directory, e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return the SHA-256 hash of the contents of the given file as hex string
+     * (can be used as content hash of a document)
+     */
+    public static String hashFile(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available.", e);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the maximum total size of the files in bytes
+     */
+    public void setCapacity(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("The capacity must not be negative.");
+        this.capacity = capacity;
+        synchronized (this) {
+            cleanup();
+        }
+    }
+
+    /**
+     * Return the total size of the files in bytes
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Return the resolution bucket of the given width
+     */
+    static int getBucket(int width) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, width) - 1);
+    }
+
+    /**
+     * Return the rendering of the given page in the resolution bucket of the given size
+     * (which may differ from the given size) or null if there is none. The returned image
+     * reads its pixels from the mapped file
+     */
+    public OffHeapImage get(String contentHash, int pageIndex, int width, int height) {
+        File file;
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(new Key(contentHash, pageIndex, getBucket(width)));
+            if (entry == null)
+                return null;
+            file = entry.file;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long size = HEADER_SIZE + (long) entry.width * entry.height * 4;
+                if (channel.size() != size)
+                    throw new IOException("The file has an unexpected size.");
+
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                mapping.order(BYTE_ORDER);
+                if (mapping.getInt(0) != MAGIC || mapping.getInt(4) != entry.width || mapping.getInt(8) != entry.height)
+                    throw new IOException("The file has an invalid header.");
+                boolean alpha = (mapping.getInt(12) & FLAG_ALPHA) != 0;
+
+                IntBuffer[] chunks = OffHeapDataBuffer.createChunks(mapping, HEADER_SIZE, entry.width * entry.height, BYTE_ORDER);
+                // keep the file's place in the least recently used order across sessions
+                file.setLastModified(System.currentTimeMillis());
+                return new OffHeapImage(new OffHeapDataBuffer(null, chunks, entry.width * entry.height), entry.width, entry.height, alpha);
+            } finally {
+                // the mapping stays valid
+                raf.close();
+            }
+        } catch (IOException e) {
+            Logger.getLogger(PersistentRenderCache.class.getName()).log(Level.WARNING, "Could not read the cached rendering " + file, e);
+            synchronized (this) {
+                if (entries.get(entry.key) == entry)
+                    removeEntry(entry);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores a rendering of the given page (replacing the rendering in its resolution bucket)
+     * @return false if the rendering could not be stored
+     */
+    public boolean put(String contentHash, int pageIndex, BufferedImage img) {
+        if (contentHash == null || !HASH.matcher(contentHash).matches())
+            return false;
+
+        int width = img.getWidth();
+        int height = img.getHeight();
+        long size = HEADER_SIZE + (long) width * height * 4;
+        if (size > capacity || size > Integer.MAX_VALUE)
+            return false;
+
+        File tmp;
+        synchronized (this) {
+            if (!directory.isDirectory() && !createPrivateDirectory(directory))
+                return false;
+            tmp = new File(directory, "write-" + System.identityHashCode(this) + "-" + (writeCount++) + ".tmp");
+        }
+
+        // write the file outside of the lock
+        boolean alpha = img.getColorModel().hasAlpha();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                MappedByteBuffer mapping = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                mapping.order(BYTE_ORDER);
+                mapping.putInt(0, MAGIC);
+                mapping.putInt(4, width);
+                mapping.putInt(8, height);
+                mapping.putInt(12, alpha ? FLAG_ALPHA : 0);
+                IntBuffer[] chunks = OffHeapDataBuffer.createChunks(mapping, HEADER_SIZE, width * height, BYTE_ORDER);
+                new OffHeapImage(new OffHeapDataBuffer(null, chunks, width * height), width, height, alpha).setPixels(img);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Logger.getLogger(PersistentRenderCache.class.getName()).log(Level.WARNING, "Could not write the rendering of page " + pageIndex, e);
+            tmp.delete();
+            return false;
+        }
+
+        synchronized (this) {
+            Key key = new Key(contentHash, pageIndex, getBucket(width));
+            Entry old = entries.get(key);
+            if (old != null)
+                removeEntry(old);
+
+            File file = new File(directory, contentHash + "_" + pageIndex + "_" + width + "x" + height + ".px");
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // the file may be in use (mapped) on some platforms
+                Logger.getLogger(PersistentRenderCache.class.getName()).log(Level.FINE, "Could not store the rendering of page " + pageIndex, e);
+                tmp.delete();
+                return false;
+            }
+
+            Entry entry = new Entry(key, file, width, height, size);
+            entries.put(key, entry);
+            usedBytes += size;
+            cleanup();
+        }
+        return true;
+    }
+
+    /**
+     * Deletes all cached renderings of the given document
+     */
+    public synchronized void remove(String contentHash) {
+        for (Entry entry : new ArrayList<Entry>(entries.values())) {
+            if (entry.key.contentHash.equals(contentHash))
+                removeEntry(entry);
+        }
+    }
+
+    /**
+     * Deletes all cached renderings
+     */
+    public synchronized void clear() {
+        for (Entry entry : new ArrayList<Entry>(entries.values())) {
+            removeEntry(entry);
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        entries.remove(entry.key);
+        usedBytes -= entry.size;
+        if (!entry.file.delete() && entry.file.exists())
+            entry.file.deleteOnExit();
+    }
+
+    /**
+     * Deletes the least recently used files until the capacity is kept
+     */
+    private void cleanup() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > capacity && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            usedBytes -= entry.size;
+            if (!entry.file.delete() && entry.file.exists())
+                entry.file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Reads the renderings which have been stored by previous sessions
+     */
+    private synchronized void scan() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        List<Entry> found = new ArrayList<Entry>();
+        for (File file : files) {
+            Matcher m = FILE_NAME.matcher(file.getName());
+            if (m.matches()) {
+                try {
+                    int width = Integer.parseInt(m.group(3));
+                    int height = Integer.parseInt(m.group(4));
+                    Key key = new Key(m.group(1), Integer.parseInt(m.group(2)), getBucket(width));
+                    Entry entry = new Entry(key, file, width, height, file.length());
+                    entry.lastUse = file.lastModified();
+                    found.add(entry);
+                } catch (NumberFormatException e) {
+                    // not one of our files
+                }
+            } else if (file.getName().endsWith(".tmp") && file.getName().startsWith("write-")) {
+                // left over by a session which has been terminated while writing
+                file.delete();
+            }
+        }
+
+        // restore the least recently used order
+        Collections.sort(found, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(a.lastUse, b.lastUse);
+            }
+        });
+        for (Entry entry : found) {
+            // an older rendering of the same bucket (removeEntry() removes the key)
+            Entry old = entries.get(entry.key);
+            if (old != null)
+                removeEntry(old);
+            entries.put(entry.key, entry);
+            usedBytes += entry.size;
+        }
+        cleanup();
+    }
+
+    /**
+     * Identifies a resolution bucket of a page of a document
+     */
+    static class Key {
+        final String contentHash;
+        final int pageIndex;
+        final int bucket;
+
+        Key(String contentHash, int pageIndex, int bucket) {
+            this.contentHash = contentHash;
+            this.pageIndex = pageIndex;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return pageIndex == other.pageIndex && bucket == other.bucket && contentHash.equals(other.contentHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return (contentHash.hashCode() * 31 + pageIndex) * 31 + bucket;
+        }
+    }
+
+    /**
+     * A stored rendering
+     */
+    static class Entry {
+        final Key key;
+        final File file;
+        final int width;
+        final int height;
+        final long size;
+        // the time of the last use (only used while scanning)
+        long lastUse;
+
+        Entry(Key key, File file, int width, int height, long size) {
+            this.key = key;
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.size = size;
+        }
+    }
+}
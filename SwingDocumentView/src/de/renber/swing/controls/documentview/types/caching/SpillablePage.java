@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+/**
+ * A CacheablePage which writes its renderings to a PageSpillCache when its
+ * buffers are released and is able to restore them from there
+ * @author berre
+ */
+public interface SpillablePage extends CacheablePage {
+
+    /**
+     * Set the cache to write the renderings to and the index of this page
+     * which identifies them (cache = null: do not spill)
+     */
+    public void setSpillCache(PageSpillCache cache, int pageIndex);
+
+    /**
+     * Restores the rendering of the given size from the spill cache (may read from disk,
+     * the PageScaler calls it on its workers)
+     * @return true if the page has been restored (isScaled(w, h) returns true afterwards)
+     */
+    public boolean restoreFromSpill(int w, int h);
+}
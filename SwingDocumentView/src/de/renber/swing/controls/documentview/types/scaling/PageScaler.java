@@ -27,106 +27,402 @@ package de.renber.swing.controls.documentview.types.scaling;
 
 import java.awt.Dimension;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import de.renber.swing.controls.documentview.threading.AutoResetEvent;
 import de.renber.swing.controls.documentview.types.Page;
+import de.renber.swing.controls.documentview.types.ProgressivePage;
+import de.renber.swing.controls.documentview.types.caching.PersistablePage;
+import de.renber.swing.controls.documentview.types.caching.SpillablePage;
 
 /**
- * Scales pages asynchronously (one at a time) and informs the calling component
- * when a page has been scaled successfully If a page is scheduled for rescale
- * with a distinct resolution and is rescheduled with a different target
- * resolution the old work item in the queue is replaced by the new one avoiding
- * unnecessary scaling
+ * Scales pages asynchronously using a pool of worker threads and informs the
+ * calling component when a page has been scaled successfully If a page is
+ * scheduled for rescale with a distinct resolution and is rescheduled with a
+ * different target resolution the old work item in the queue is replaced by
+ * the new one avoiding unnecessary scaling<br/>
+ * Waiting jobs are processed in the order of their priority which is usually
+ * derived from the position of the page in the view port (see
+ * {@link #getPriority(double, float)})<br/>
+ * Every job is stamped with the current view generation. Once the view changes
+ * (e.g. other pages scroll into view or the zoom changes) the generation is advanced and jobs which have
+ * not been requested again for the new view are dropped instead of being
+ * executed<br/>
+ * Pages which support it (see {@link ProgressivePage}) and have nothing to show yet are
+ * processed in two passes: a quick preview at a fraction of the size is rendered first,
+ * the full rendering is scheduled again afterwards with a lower priority, so that
+ * the previews of all visible pages appear before the first full rendering is done<br/>
+ * Pages which have been set up with a spill or render cache (see {@link SpillablePage} and
+ * {@link PersistablePage}) are restored from there by the workers before they are rendered,
+ * so that the caches' disk I/O never blocks the calling component<br/>
+ * In virtual thread mode (see {@link #setVirtualThreads(boolean)}) a single dispatcher
+ * thread starts a virtual thread for every job instead, so that pages which wait for
+ * slow I/O do not hold up the other pages. Since the pages of a page source usually share
+ * a renderer which is not thread-safe, no more jobs than worker threads run at the same time
+ * unless {@link #setMaxConcurrentJobs(int)} allows it
  *
  * @author berre
  */
 public class PageScaler {
 
+    // priority of jobs which shall be processed as soon as possible
+    public static final float HIGHEST_PRIORITY = 0f;
+    // priority of jobs which shall be processed when nothing else is to do
+    public static final float LOWEST_PRIORITY = Float.MAX_VALUE;
+    // default size of previews relative to the target resolution
+    public static final float DEFAULT_PREVIEW_SCALE = 0.25f;
+    // maximum number of pixels of a preview
+    public static final int MAX_PREVIEW_PIXELS = 1024 * 1024;
+    // added to the priority of the full pass after a preview has been rendered
+    // (places it after the previews of the visible pages but before prefetched pages)
+    public static final float FULL_PASS_DEFERRAL = 500000f;
+
+    // creates virtual threads (null if the runtime does not support them)
+    private static final ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+
     // awaiting scaling jobs
-    final List<ScaleJob> jobQueue = new ArrayList<ScaleJob>();
-    Thread scaleThread = null;
-    Scaler scaler = null;
+    final ScaleJobQueue jobQueue = new ScaleJobQueue();
+    List<Thread> scaleThreads = new ArrayList<Thread>();
+    List<Scaler> scalers = new ArrayList<Scaler>();
     AutoResetEvent barrier;
-    
-    List<ScalingListener> scalingListeners = new ArrayList<ScalingListener>();
+    // the current view generation
+    final AtomicLong generation = new AtomicLong(0);
+    // the locks which are held while a page is rendered (a monitor would pin the carrier of a virtual thread)
+    final Map<Page, ReentrantLock> pageLocks = Collections.synchronizedMap(new WeakHashMap<Page, ReentrantLock>());
+
+    // number of worker threads started by enable()
+    int parallelism;
+    // factory used to create the worker threads
+    ThreadFactory threadFactory;
+    // run the worker threads as daemon threads?
+    boolean daemon = true;
+    // run every job on its own virtual thread?
+    boolean virtualThreads = false;
+    // number of jobs which may run at the same time in virtual thread mode (0 = parallelism)
+    int maxConcurrentJobs = 0;
+    // render previews of progressive pages first?
+    volatile boolean progressiveRendering = true;
+    // size of previews relative to the target resolution
+    volatile float previewScale = DEFAULT_PREVIEW_SCALE;
+
+    List<ScalingListener> scalingListeners = new CopyOnWriteArrayList<ScalingListener>();
 
+    /**
+     * Creates a page scaler which uses a single worker thread
+     * (the pages of a page source usually share a renderer which is not thread-safe)
+     */
     public PageScaler() {
-        barrier = new AutoResetEvent(false);                
+        this(1);
+    }
+
+    /**
+     * Creates a page scaler with the given number of worker threads. Only use more
+     * than one worker if the pages of the displayed page source can be rendered
+     * at the same time (e.g. if they do not share a renderer or document)
+     * @param parallelism number of pages which may be scaled at the same time
+     */
+    public PageScaler(int parallelism) {
+        barrier = new AutoResetEvent(false);
+        threadFactory = new ScalerThreadFactory();
+        setParallelism(parallelism);
     }
-    
+
     /**
-     * Starts the background thread
+     * Starts the background worker threads
      */
     public void enable() {
-        if (scaleThread == null) {
-            scaler = new Scaler(barrier);
-            scaleThread = new Thread(scaler);
-            scaleThread.start();
+        if (scaleThreads.isEmpty()) {
+            // in virtual thread mode a single dispatcher starts the jobs
+            int workers = virtualThreads ? 1 : parallelism;
+            for (int i = 0; i < workers; i++) {
+                Scaler scaler = virtualThreads ? new Dispatcher(barrier, getMaxConcurrentJobs()) : new Scaler(barrier);
+                Thread thread = threadFactory.newThread(scaler);
+                thread.setDaemon(daemon);
+                scalers.add(scaler);
+                scaleThreads.add(thread);
+            }
+
+            for (Thread thread : scaleThreads) {
+                thread.start();
+            }
         }
     }
-    
+
     /**
-     * Stops the background thread
+     * Stops the background worker threads
      */
     public void disable() {
-        if (scaleThread != null) {
-            scaler.shutdown();
-            scaler = null;
-            try {
-                scaleThread.join();
-            } catch (InterruptedException ex) {
-                // --
+        if (!scaleThreads.isEmpty()) {
+            for (Scaler scaler : scalers) {
+                scaler.shutdown();
+            }
+
+            for (Thread thread : scaleThreads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ex) {
+                    // --
+                }
             }
-            scaleThread = null;
+
+            scalers.clear();
+            scaleThreads.clear();
+            // do not let the cancellation signal leak into the next enable()
+            barrier.reset();
+        }
+    }
+
+    /**
+     * Return if the worker threads are running
+     */
+    public boolean isEnabled() {
+        return !scaleThreads.isEmpty();
+    }
+
+    /**
+     * Return the number of worker threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of worker threads, see PageScaler(int)
+     * (takes effect on the next call of enable())
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Set the factory which creates the worker threads
+     * (takes effect on the next call of enable())
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        if (threadFactory == null)
+            throw new IllegalArgumentException("threadFactory");
+        this.threadFactory = threadFactory;
+    }
+
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    /**
+     * Set if the worker threads shall be daemon threads, so that they do not keep
+     * the application alive (takes effect on the next call of enable())
+     */
+    public void setDaemon(boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    public boolean getVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Run every job on its own virtual thread (for page sources which wait for I/O) instead
+     * of on the worker threads. Falls back to a platform thread per job if the runtime does
+     * not support virtual threads (see isVirtualThreadSupported()).
+     * The number of jobs which run at the same time is limited by getMaxConcurrentJobs(),
+     * which defaults to getParallelism(): like the worker threads, concurrent jobs render pages
+     * of the same page source at the same time (takes effect on the next call of enable())
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Return the number of jobs which may run at the same time in virtual thread mode
+     * (getParallelism() unless it has been set)
+     */
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs > 0 ? maxConcurrentJobs : parallelism;
+    }
+
+    /**
+     * Set the number of jobs which may run at the same time in virtual thread mode
+     * (takes effect on the next call of enable()). The same restriction as for the number of
+     * worker threads applies: only allow more than one job if the pages of the displayed page source
+     * can be rendered at the same time (PDF renderers and Printables usually cannot)
+     */
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        if (maxConcurrentJobs < 1)
+            throw new IllegalArgumentException("maxConcurrentJobs must be at least 1");
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    /**
+     * Return if the runtime supports virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * Return a factory for virtual threads (Thread.ofVirtual().factory()) or null
+     * if the runtime does not support them
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            // look the methods up reflectively, so that the library still runs on older runtimes
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "PageScaler-job-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            return null;
         }
     }
-    
+
+    public boolean getProgressiveRendering() {
+        return progressiveRendering;
+    }
+
+    /**
+     * Enable / disable the preview pass for pages which implement ProgressivePage
+     */
+    public void setProgressiveRendering(boolean progressiveRendering) {
+        this.progressiveRendering = progressiveRendering;
+    }
+
+    public float getPreviewScale() {
+        return previewScale;
+    }
+
+    /**
+     * Set the size of previews relative to the target resolution (0 < scale < 1)
+     */
+    public void setPreviewScale(float previewScale) {
+        if (previewScale <= 0 || previewScale >= 1)
+            throw new IllegalArgumentException("previewScale must be between 0 and 1");
+        this.previewScale = previewScale;
+    }
+
     public void addScalingListener(ScalingListener listener) {
         if (!scalingListeners.contains(listener)) {
             scalingListeners.add(listener);
         }
     }
-    
+
     public void removeScalingListener(ScalingListener listener) {
         if (scalingListeners.contains(listener)) {
             scalingListeners.remove(listener);
         }
     }
-    
+
     protected void raiseScalingDoneEvent(ScaleJob job) {
         for(ScalingListener listener: scalingListeners) {
             listener.scalingDone(job.page, job.targetResolution);
         }
     }
 
+    /**
+     * Return the current view generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Marks all jobs which have been scheduled so far as belonging to an outdated view.
+     * Such jobs are dropped when they are dequeued unless they are scheduled again
+     * before
+     * @return the new view generation
+     */
+    public long advanceGeneration() {
+        return generation.incrementAndGet();
+    }
+
+    /**
+     * Removes all waiting jobs which have not been scheduled for the current
+     * view generation
+     * @return the number of cancelled jobs
+     */
+    public int cancelStaleJobs() {
+        synchronized (jobQueue) {
+            return jobQueue.removeOlderThan(generation.get());
+        }
+    }
+
+    /**
+     * Return if the given job does not need to be executed anymore, because it
+     * belongs to an outdated view or the page already has the target resolution
+     */
+    protected boolean isStale(ScaleJob job) {
+        return job.generation < generation.get()
+                || job.page.isScaled(job.targetResolution.width, job.targetResolution.height);
+    }
+
+    /**
+     * Return the scheduling priority for a visible page
+     * @param distanceToCenter distance of the page's center to the center of the view port (in pixels)
+     * @param visiblePercentage percentage of the page which is visible (0..1)
+     * @return the priority (lower values are processed first)
+     */
+    public static float getPriority(double distanceToCenter, float visiblePercentage) {
+        // pages in the center of the view port come first, a page which is
+        // only partially visible is treated as if it was further away
+        return (float) (Math.max(0, distanceToCenter) * (2 - Math.min(1, Math.max(0, visiblePercentage))));
+    }
+
     /**
      * Schedule a new scale job with will be processed in the future
+     * The job belongs to the current view generation
      *
      * @param page
      * @param targetResolution
+     * @param highPriority if true the job is processed before all jobs which have been scheduled so far
      */
     public void enqeue(Page page, Dimension targetResolution, boolean highPriority) {
+        enqeue(page, targetResolution, highPriority ? HIGHEST_PRIORITY : LOWEST_PRIORITY);
+    }
+
+    /**
+     * Schedule a new scale job with will be processed in the future
+     * The job belongs to the current view generation. If the page has already been
+     * scheduled its target resolution and priority are replaced
+     *
+     * @param page
+     * @param targetResolution
+     * @param priority the priority of the job (lower values are processed first)
+     */
+    public void enqeue(Page page, Dimension targetResolution, float priority) {
         synchronized (jobQueue) {
-            ScaleJob existJob = findJob(page);
+            long current = generation.get();
+            ScaleJob existJob = jobQueue.get(page);
             if (existJob == null) {
                 // has not been scheduled yet
-            	if (highPriority)            		
-            		jobQueue.add(0, new ScaleJob(page, targetResolution));
-            	else
-            		// add it to the end of the queue
-            		jobQueue.add(new ScaleJob(page, targetResolution));
+                jobQueue.add(new ScaleJob(page, targetResolution, current, priority));
             } else {
-            	if (highPriority) {
-            		// move job to top
-            		jobQueue.remove(existJob);
-            		jobQueue.add(0, existJob);            		
-            	} else
-            		// replace old job with new one
-            		existJob.targetResolution = targetResolution;
+                // replace the old target resolution with the new one
+                existJob.targetResolution = targetResolution;
+                // the job is still needed for the current view
+                existJob.generation = current;
+                // a full pass stays behind the previews
+                jobQueue.updatePriority(existJob, existJob.previewRendered ? priority + FULL_PASS_DEFERRAL : priority);
             }
 
-            barrier.set(); // inform thread
+            barrier.set(); // inform a worker
         }
     }
 
@@ -138,13 +434,19 @@ public class PageScaler {
      */
     public ScaleJob findJob(Page page) {
         synchronized (jobQueue) {
-            for (ScaleJob job : jobQueue) {
-                if (job.page == page) {
-                    return job;
-                }
-            }
+            return jobQueue.get(page);
+        }
+    }
 
-            return null;
+    /**
+     * Removes the waiting job of the given page (a job which is already
+     * being executed is not interrupted)
+     * @return true if a job has been removed
+     */
+    public boolean cancel(Page page) {
+        synchronized (jobQueue) {
+            ScaleJob job = jobQueue.get(page);
+            return job != null && jobQueue.remove(job);
         }
     }
 
@@ -157,10 +459,131 @@ public class PageScaler {
         }
     }
 
+    /**
+     * Return the lock which is held while the given page is rendered. Hold it to
+     * modify the page (e.g. to free its resources) without interfering with a rendering
+     */
+    public Lock getPageLock(Page page) {
+        synchronized (pageLocks) {
+            ReentrantLock lock = pageLocks.get(page);
+            if (lock == null) {
+                lock = new ReentrantLock();
+                pageLocks.put(page, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * Executes the given job on the calling thread
+     */
+    protected void execute(ScaleJob job) {
+        try
+        {
+            if (restore(job) && job.page.isScaled(job.targetResolution.width, job.targetResolution.height))
+                return;
+
+            if (progressiveRendering && !job.previewRendered && job.page instanceof ProgressivePage
+                    && renderPreview(job)) {
+                return;
+            }
+
+            // pages are not required to be thread-safe, so two workers
+            // must never scale the same page at the same time
+            Lock lock = getPageLock(job.page);
+            lock.lock();
+            try {
+                // the page may have been discarded while waiting for the lock
+                if (isStale(job))
+                    return;
+                job.page.hiQualityScale(job.targetResolution.width, job.targetResolution.height);
+            } finally {
+                lock.unlock();
+            }
+            raiseScalingDoneEvent(job);
+        }
+        catch (Exception exc) {
+            // scaling failed
+        }
+    }
+
+    /**
+     * Restores a rendering of the job's page from its spill cache or its render cache
+     * @return true if a rendering has been restored
+     */
+    private boolean restore(ScaleJob job) {
+        if (!(job.page instanceof SpillablePage) && !(job.page instanceof PersistablePage))
+            return false;
+
+        int w = job.targetResolution.width;
+        int h = job.targetResolution.height;
+        boolean restored;
+        Lock lock = getPageLock(job.page);
+        lock.lock();
+        try {
+            if (isStale(job))
+                return false;
+            // renderings which have been spilled are mapped back in instead of rendering the page again
+            restored = job.page instanceof SpillablePage && ((SpillablePage) job.page).restoreFromSpill(w, h);
+            // renderings of a previous session stand in (or suffice if they have the requested size)
+            if (!restored)
+                restored = job.page instanceof PersistablePage && ((PersistablePage) job.page).restoreFromRenderCache(w, h);
+        } finally {
+            lock.unlock();
+        }
+        if (restored)
+            raiseScalingDoneEvent(job);
+        return restored;
+    }
+
+    /**
+     * Renders a preview of the job's page if it has nothing to show yet and
+     * schedules the full rendering again
+     * @return true if a preview has been rendered
+     */
+    private boolean renderPreview(ScaleJob job) {
+        ProgressivePage page = (ProgressivePage) job.page;
+        int w = job.targetResolution.width;
+        int h = job.targetResolution.height;
+
+        float scale = previewScale;
+        if ((double) w * h * scale * scale > MAX_PREVIEW_PIXELS) {
+            scale = (float) Math.sqrt(MAX_PREVIEW_PIXELS / ((double) w * h));
+        }
+        int pw = Math.max(1, Math.round(w * scale));
+        int ph = Math.max(1, Math.round(h * scale));
+
+        Lock lock = getPageLock(job.page);
+        lock.lock();
+        try {
+            if (isStale(job) || !page.needsPreview(w, h))
+                return false;
+            page.renderPreview(pw, ph);
+        } finally {
+            lock.unlock();
+        }
+        raiseScalingDoneEvent(job);
+
+        synchronized (jobQueue) {
+            job.previewRendered = true;
+            ScaleJob existJob = jobQueue.get(job.page);
+            if (existJob == null) {
+                job.priority += FULL_PASS_DEFERRAL;
+                jobQueue.add(job);
+            } else {
+                // the page has been scheduled again in the meantime
+                existJob.previewRendered = true;
+                jobQueue.updatePriority(existJob, existJob.priority + FULL_PASS_DEFERRAL);
+            }
+            barrier.set();
+        }
+        return true;
+    }
+
     class Scaler implements Runnable {
 
         AutoResetEvent barrier;
-        boolean cancel = false;
+        volatile boolean cancel = false;
 
         public Scaler(AutoResetEvent _barrier) {
             barrier = _barrier;
@@ -179,32 +602,29 @@ public class PageScaler {
 
                 //got unlocked because of cancellation request?
                 if (cancel) {
+                    // pass the signal on to the next worker
+                    barrier.set();
                     return;
                 }
 
-                ScaleJob nextJob = null;
                 boolean jobsRemaining = true;
 
-                while (jobsRemaining) {
+                while (jobsRemaining && !cancel) {
+                    ScaleJob nextJob = null;
+
                     synchronized (jobQueue) {
-                        if (jobQueue.size() > 0) {
-                            nextJob = jobQueue.get(0);
-                            jobQueue.remove(0);
-                        }
-                        
-                        jobsRemaining = jobQueue.size() > 0;
+                        nextJob = jobQueue.poll();
+                        jobsRemaining = !jobQueue.isEmpty();
                     }
 
-                    // execute the job
-                    if (nextJob != null) {
-                        try
-                        {
-                        	nextJob.page.hiQualityScale(nextJob.targetResolution.width, nextJob.targetResolution.height);
-                        	raiseScalingDoneEvent(nextJob);
-                        }
-                        catch (Exception exc) {
-                            // scaling failed
-                        }
+                    if (jobsRemaining) {
+                        // wake up another worker to process the remaining jobs in parallel
+                        barrier.set();
+                    }
+
+                    // execute the job (unless it is outdated)
+                    if (nextJob != null && !isStale(nextJob)) {
+                        execute(nextJob);
                     }
                 }
             }
@@ -215,7 +635,112 @@ public class PageScaler {
          */
         public void shutdown() {
             cancel = true;
-            barrier.set(); // re-enable the thread if it is not running atm            
+            barrier.set(); // re-enable the thread if it is not running atm
+        }
+    }
+
+    /**
+     * Takes the jobs from the queue in the order of their priority and runs each
+     * one on its own (virtual) thread as long as there is a free slot
+     */
+    class Dispatcher extends Scaler {
+
+        final Semaphore slots;
+        final ThreadFactory jobThreadFactory;
+
+        public Dispatcher(AutoResetEvent _barrier, int maxConcurrentJobs) {
+            super(_barrier);
+            slots = new Semaphore(maxConcurrentJobs);
+            if (virtualThreadFactory != null) {
+                jobThreadFactory = virtualThreadFactory;
+            } else {
+                Logger.getLogger(PageScaler.class.getName()).log(Level.INFO, "Virtual threads are not supported, using platform threads instead.");
+                jobThreadFactory = new JobThreadFactory();
+            }
+        }
+
+        @Override
+        public void run() {
+
+            while (!cancel) {
+                try {
+                    // wait for queue activity
+                    barrier.waitOne();
+                } catch (InterruptedException ex) {
+                    // --
+                }
+
+                if (cancel) {
+                    barrier.set();
+                    return;
+                }
+
+                boolean jobsRemaining = true;
+
+                while (jobsRemaining && !cancel) {
+                    // wait for a free slot before taking the next job, so that
+                    // jobs which are scheduled in the meantime are ordered correctly
+                    try {
+                        if (!slots.tryAcquire(100, TimeUnit.MILLISECONDS))
+                            continue;
+                    } catch (InterruptedException ex) {
+                        continue;
+                    }
+
+                    ScaleJob nextJob = null;
+
+                    synchronized (jobQueue) {
+                        nextJob = jobQueue.poll();
+                        jobsRemaining = !jobQueue.isEmpty();
+                    }
+
+                    if (nextJob == null || isStale(nextJob)) {
+                        slots.release();
+                        continue;
+                    }
+
+                    final ScaleJob job = nextJob;
+                    Thread thread = jobThreadFactory.newThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                execute(job);
+                            } finally {
+                                slots.release();
+                            }
+                        }
+                    });
+                    thread.start();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a daemon platform thread per job when virtual threads are not available
+     */
+    static class JobThreadFactory implements ThreadFactory {
+
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "PageScaler-job-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /**
+     * Default thread factory which names the worker threads
+     */
+    static class ScalerThreadFactory implements ThreadFactory {
+
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "PageScaler-worker-" + threadNumber.getAndIncrement());
         }
     }
 }
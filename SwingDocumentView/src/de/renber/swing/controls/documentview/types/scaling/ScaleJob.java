@@ -37,10 +37,31 @@ public class ScaleJob {
     
     public Page page;
     public Dimension targetResolution;
+    // the view generation of the PageScaler this job has been requested in
+    public long generation;
+    // the priority of this job (lower values are processed first)
+    public float priority;
+    // has the preview pass of a progressive page been done already?
+    public boolean previewRendered;
+    
+    // position in the ScaleJobQueue (-1 if not queued)
+    int queueIndex = -1;
+    // insertion order in the ScaleJobQueue
+    long sequence;
     
     public ScaleJob(Page _page, Dimension _targetResolution) {
+        this(_page, _targetResolution, 0);
+    }
+    
+    public ScaleJob(Page _page, Dimension _targetResolution, long _generation) {
+        this(_page, _targetResolution, _generation, 0);
+    }
+    
+    public ScaleJob(Page _page, Dimension _targetResolution, long _generation, float _priority) {
         page = _page;
         targetResolution = _targetResolution;
+        generation = _generation;
+        priority = _priority;
     }
     
 }
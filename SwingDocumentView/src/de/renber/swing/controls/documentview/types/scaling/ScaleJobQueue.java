@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.scaling;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import de.renber.swing.controls.documentview.types.Page;
+
+/**
+ * Priority queue of scale jobs (binary min-heap ordered by the job's priority)
+ * which allows to look up the job of a page in constant time and to change the
+ * priority of a queued job in O(log n)<br/>
+ * Jobs with the same priority are processed in the order they have been
+ * added<br/>
+ * This class is not thread-safe, the PageScaler synchronizes all accesses
+ *
+ * @author berre
+ */
+public class ScaleJobQueue {
+
+    ScaleJob[] heap = new ScaleJob[16];
+    int size = 0;
+    // the queued job of each page
+    final Map<Page, ScaleJob> jobsByPage = new IdentityHashMap<Page, ScaleJob>();
+    // insertion counter to keep the order of jobs with equal priorities
+    long sequence = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Return the queued job of the given page or null
+     */
+    public ScaleJob get(Page page) {
+        return jobsByPage.get(page);
+    }
+
+    /**
+     * Add a job (there must not be another job for the same page in the queue)
+     */
+    public void add(ScaleJob job) {
+        if (jobsByPage.containsKey(job.page))
+            throw new IllegalArgumentException("There is already a job for this page in the queue");
+
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+
+        job.sequence = sequence++;
+        job.queueIndex = size;
+        heap[size++] = job;
+        jobsByPage.put(job.page, job);
+        siftUp(job.queueIndex);
+    }
+
+    /**
+     * Change the priority of a queued job
+     */
+    public void updatePriority(ScaleJob job, float newPriority) {
+        if (job.queueIndex < 0)
+            throw new IllegalArgumentException("The job is not queued");
+
+        float oldPriority = job.priority;
+        job.priority = newPriority;
+        if (newPriority < oldPriority)
+            siftUp(job.queueIndex);
+        else if (newPriority > oldPriority)
+            siftDown(job.queueIndex);
+    }
+
+    /**
+     * Removes and returns the job with the highest priority (the lowest value)
+     * or null if the queue is empty
+     */
+    public ScaleJob poll() {
+        if (size == 0)
+            return null;
+
+        ScaleJob job = heap[0];
+        removeAt(0);
+        return job;
+    }
+
+    /**
+     * Removes the given job from the queue
+     * @return true if the job has been queued
+     */
+    public boolean remove(ScaleJob job) {
+        int index = job.queueIndex;
+        if (index < 0 || index >= size || heap[index] != job)
+            return false;
+
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Removes all jobs whose generation is older than the given one
+     * @return the number of removed jobs
+     */
+    public int removeOlderThan(long generation) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            ScaleJob job = heap[i];
+            if (job.generation < generation) {
+                job.queueIndex = -1;
+                jobsByPage.remove(job.page);
+            } else {
+                job.queueIndex = kept;
+                heap[kept++] = job;
+            }
+        }
+
+        int removed = size - kept;
+        if (removed > 0) {
+            Arrays.fill(heap, kept, size, null);
+            size = kept;
+            // restore the heap property
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            heap[i].queueIndex = -1;
+            heap[i] = null;
+        }
+        size = 0;
+        jobsByPage.clear();
+    }
+
+    private void removeAt(int index) {
+        ScaleJob job = heap[index];
+        jobsByPage.remove(job.page);
+        job.queueIndex = -1;
+
+        size--;
+        if (index != size) {
+            // move the last job into the gap
+            ScaleJob last = heap[size];
+            heap[index] = last;
+            last.queueIndex = index;
+            heap[size] = null;
+            siftDown(index);
+            if (heap[index] == last)
+                siftUp(index);
+        } else {
+            heap[size] = null;
+        }
+    }
+
+    private void siftUp(int index) {
+        ScaleJob job = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!precedes(job, heap[parent]))
+                break;
+            heap[index] = heap[parent];
+            heap[index].queueIndex = index;
+            index = parent;
+        }
+        heap[index] = job;
+        job.queueIndex = index;
+    }
+
+    private void siftDown(int index) {
+        ScaleJob job = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && precedes(heap[right], heap[child]))
+                child = right;
+            if (!precedes(heap[child], job))
+                break;
+            heap[index] = heap[child];
+            heap[index].queueIndex = index;
+            index = child;
+        }
+        heap[index] = job;
+        job.queueIndex = index;
+    }
+
+    /**
+     * Return if job a has to be executed before job b
+     */
+    private static boolean precedes(ScaleJob a, ScaleJob b) {
+        if (a.priority != b.priority)
+            return a.priority < b.priority;
+        return a.sequence < b.sequence;
+    }
+}
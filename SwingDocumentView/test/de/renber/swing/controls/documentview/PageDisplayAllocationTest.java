@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.print.Book;
+import java.awt.print.PageFormat;
+import java.awt.print.Printable;
+import java.lang.management.ManagementFactory;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+
+import de.renber.swing.controls.documentview.predefined.ContinuousFacingPagePreviewLayout;
+import de.renber.swing.controls.documentview.predefined.ContinuousPagePreviewLayout;
+import de.renber.swing.controls.documentview.predefined.FacingPagePreviewLayout;
+import de.renber.swing.controls.documentview.predefined.PageableSource;
+import de.renber.swing.controls.documentview.predefined.ShadowPageAdorner;
+import de.renber.swing.controls.documentview.predefined.SinglePagePreviewLayout;
+import de.renber.swing.controls.documentview.types.Page;
+import de.renber.swing.controls.documentview.types.PageAdorner;
+import de.renber.swing.controls.documentview.types.PageGeometry;
+import de.renber.swing.controls.documentview.types.PageSource;
+import de.renber.swing.controls.documentview.types.PageVisibility;
+import de.renber.swing.controls.documentview.types.PreviewLayout;
+import de.renber.swing.controls.documentview.types.caching.PageStore;
+
+/**
+ * Makes sure that painting an unchanged view does not allocate (measured with
+ * the allocation counter of the painting thread after the JIT has warmed up),
+ * for simple pages as well as for rendered, tiled and shadowed pages
+ * 
+ * Not covered are page numbers (PageNumberAdorner): Java2D looks up the font
+ * of a glyph vector again for every drawGlyphVector() call, which allocates
+ *
+ * @author berre
+ */
+public class PageDisplayAllocationTest extends TestCase {
+
+    // paints until the paint path has been compiled
+    private static final int WARMUP_PAINTS = 5000;
+    private static final int MEASURED_PAINTS = 2000;
+    // the JIT may need several rounds until the paint path runs without allocating
+    private static final int MAX_ROUNDS = 5;
+    // tolerance for allocations of the VM itself (e.g. while deoptimizing)
+    private static final long MAX_BYTES_PER_PAINT = 16;
+
+    public void testSinglePageLayout() throws Exception {
+        assertNoAllocations(new SinglePagePreviewLayout(), false);
+    }
+
+    public void testFacingPageLayout() throws Exception {
+        assertNoAllocations(new FacingPagePreviewLayout(), false);
+    }
+
+    public void testContinuousLayout() throws Exception {
+        assertNoAllocations(new ContinuousPagePreviewLayout(), false);
+    }
+
+    public void testContinuousFacingLayout() throws Exception {
+        assertNoAllocations(new ContinuousFacingPagePreviewLayout(), false);
+    }
+
+    public void testContinuousLayoutWithScrollBlitting() throws Exception {
+        assertNoAllocations(new ContinuousPagePreviewLayout(), true);
+    }
+
+    /**
+     * Rendered pages of a print job with shadows
+     */
+    public void testRenderedPagesWithShadows() throws Exception {
+        assertNoAllocations(new ContinuousFacingPagePreviewLayout(), false, createPrintJob(false), new ShadowPageAdorner(5, Color.BLACK), 0.5f);
+    }
+
+    /**
+     * Pages which are zoomed in far enough to be rendered in tiles
+     */
+    public void testTiledPagesWithShadows() throws Exception {
+        assertNoAllocations(new ContinuousPagePreviewLayout(), false, createPrintJob(true), new ShadowPageAdorner(5, Color.BLACK), 3f);
+    }
+
+    /**
+     * Pages which are too small for the shadow sprite
+     */
+    public void testSmallPagesWithShadows() throws Exception {
+        assertNoAllocations(new ContinuousPagePreviewLayout(), false, new TestPageSource(1000, 200, 300), new ShadowPageAdorner(5, Color.BLACK), 0.05f);
+    }
+
+    private void assertNoAllocations(PreviewLayout layout, boolean scrollBlitting) throws Exception {
+        assertNoAllocations(layout, scrollBlitting, new TestPageSource(1000, 600, 800), null, 1f);
+    }
+
+    private void assertNoAllocations(PreviewLayout layout, boolean scrollBlitting, PageSource pageSource, PageAdorner adorner, float zoomLevel) throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return; // the VM cannot measure allocations
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+            return;
+
+        final PageDisplay display = new PageDisplay();
+        try {
+            display.setSize(1000, 900);
+            display.validate();
+            display.setPreviewLayout(layout);
+            display.setScrollBlitting(scrollBlitting);
+            display.setPageAdorner(adorner);
+            display.setPageSource(pageSource);
+            display.setZoomLevel(zoomLevel);
+
+            final BufferedImage screen = new BufferedImage(1000, 900, BufferedImage.TYPE_INT_RGB);
+            waitForVisiblePages(display, screen);
+
+            final long[] bytesPerPaint = { Long.MAX_VALUE };
+            for (int round = 0; round < MAX_ROUNDS && bytesPerPaint[0] > MAX_BYTES_PER_PAINT; round++) {
+                // give the compiler time to finish
+                Thread.sleep(200);
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        long thread = Thread.currentThread().getId();
+                        paint(display, screen, WARMUP_PAINTS);
+
+                        long start = threads.getThreadAllocatedBytes(thread);
+                        paint(display, screen, MEASURED_PAINTS);
+                        long painted = threads.getThreadAllocatedBytes(thread) - start;
+
+                        // creating the graphics and its render context allocates (not part of the paint)
+                        start = threads.getThreadAllocatedBytes(thread);
+                        for (int i = 0; i < MEASURED_PAINTS; i++) {
+                            Graphics2D g = screen.createGraphics();
+                            g.getFontRenderContext();
+                            g.dispose();
+                        }
+                        long created = threads.getThreadAllocatedBytes(thread) - start;
+
+                        bytesPerPaint[0] = (painted - created) / MEASURED_PAINTS;
+                    }
+                });
+            }
+            assertTrue("A paint allocated " + bytesPerPaint[0] + " bytes.", bytesPerPaint[0] <= MAX_BYTES_PER_PAINT);
+        } finally {
+            display.freeResources();
+        }
+    }
+
+    /**
+     * Paints until all visible pages have been created and scaled
+     */
+    private void waitForVisiblePages(final PageDisplay display, BufferedImage screen) throws Exception {
+        for (int i = 0; i < 500; i++) {
+            paint(display, screen, 1);
+            PageGeometry sizes = display.layout.getPageSizes(display.zoomLevel, display.originalPageSizes);
+            boolean scaled = true;
+            for (PageVisibility visibility : display.getVisiblePages()) {
+                int pageIndex = visibility.getPageIndex();
+                Page page = display.bufferedPages.get(pageIndex);
+                scaled &= !PageStore.isPlaceholder(page) && page.isScaled(sizes.getWidth(pageIndex), sizes.getHeight(pageIndex));
+            }
+            if (scaled)
+                break;
+            Thread.sleep(20);
+        }
+        // let the repaints of the created pages happen
+        Thread.sleep(100);
+        paint(display, screen, 1);
+    }
+
+    /**
+     * Creates a print job whose pages show some text and shapes
+     */
+    private static PageSource createPrintJob(boolean tiled) {
+        Book book = new Book();
+        book.append(new Printable() {
+            @Override
+            public int print(Graphics g, PageFormat pageFormat, int pageIndex) {
+                g.setColor(Color.BLACK);
+                g.drawString("Page " + (pageIndex + 1), 72, 72);
+                g.setColor(Color.RED);
+                g.fillOval(100, 100, 300, 200);
+                return PAGE_EXISTS;
+            }
+        }, new PageFormat(), 200);
+        PageableSource source = new PageableSource(book);
+        source.setTiledRendering(tiled);
+        return source;
+    }
+
+    private static void paint(final PageDisplay display, final BufferedImage screen, final int count) {
+        Runnable paint = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    Graphics2D g = screen.createGraphics();
+                    display.paintComponent(g);
+                    g.dispose();
+                }
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            paint.run();
+        } else {
+            try {
+                SwingUtilities.invokeAndWait(paint);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the scroll blitting of the PageDisplay
+ *
+ * @author berre
+ */
+public class PageDisplayBlittingTest extends TestCase {
+
+    TestPageSource pageSource = new TestPageSource(3, 1000, 1400);
+    PageDisplay display;
+    BufferedImage screen;
+
+    @Override
+    protected void setUp() throws Exception {
+        display = new PageDisplay();
+        display.setAllowHiQualityScale(false);
+        display.setScrollBlitting(true);
+        display.setSize(400, 300);
+        display.validate();
+        display.setPageSource(pageSource);
+
+        screen = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        // wait until the visible pages have been created
+        for (int i = 0; i < 100 && getPixel(200, 150) != Color.BLUE.getRGB(); i++) {
+            Thread.sleep(20);
+            paint();
+        }
+        assertEquals(Color.BLUE.getRGB(), getPixel(200, 150));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        display.freeResources();
+    }
+
+    /**
+     * A repaint which is pending while the view is scrolled must be applied
+     * to the shifted back buffer contents
+     */
+    public void testPendingRepaintIsShiftedWithTheView() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                pageSource.pageColor = Color.RED;
+                display.repaint(0, 100, 50, 50, 50);
+                display.verticalScrollBar.setValue(display.verticalScrollBar.getValue() + 20);
+            }
+        });
+        paint();
+
+        // the repainted area moved up by the scroll distance
+        assertEquals(Color.RED.getRGB(), getPixel(125, 35));
+        assertEquals(Color.RED.getRGB(), getPixel(125, 75));
+        // the pixels which only have been shifted still show the old contents
+        assertEquals(Color.BLUE.getRGB(), getPixel(125, 85));
+        assertEquals(Color.BLUE.getRGB(), getPixel(200, 150));
+    }
+
+    /**
+     * Repaints which are requested from other threads (e.g. by the page scaler) are
+     * applied to the back buffer by the next paint
+     */
+    public void testRepaintFromAnotherThreadIsApplied() throws Exception {
+        pageSource.pageColor = Color.RED;
+        display.repaint(0, 100, 50, 50, 50);
+        display.repaint(0, 250, 200, 20, 20);
+        paint();
+
+        assertEquals(Color.RED.getRGB(), getPixel(125, 75));
+        assertEquals(Color.RED.getRGB(), getPixel(260, 210));
+        // the area between the requests is repainted as well (the dirty region is their bounding box)
+        assertEquals(Color.RED.getRGB(), getPixel(200, 150));
+        // outside of the requested areas the old contents are kept
+        assertEquals(Color.BLUE.getRGB(), getPixel(125, 250));
+    }
+
+    /**
+     * Paints the display to the screen image on the EDT (like Swing does)
+     */
+    private void paint() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                Graphics2D g = screen.createGraphics();
+                display.paintComponent(g);
+                g.dispose();
+            }
+        });
+    }
+
+    private int getPixel(int x, int y) {
+        return screen.getRGB(x, y);
+    }
+}
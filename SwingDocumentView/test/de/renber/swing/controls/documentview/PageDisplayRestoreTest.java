@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+
+import de.renber.swing.controls.documentview.types.Page;
+import de.renber.swing.controls.documentview.types.PageSource;
+import de.renber.swing.controls.documentview.types.caching.PersistablePage;
+import de.renber.swing.controls.documentview.types.caching.PersistentRenderCache;
+
+/**
+ * Tests how the PageDisplay restores pages from the render caches
+ *
+ * @author berre
+ */
+public class PageDisplayRestoreTest extends TestCase {
+
+    PageDisplay display;
+    BufferedImage screen = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+    // the threads which have restored pages
+    final Set<Thread> restoringThreads = Collections.synchronizedSet(new HashSet<Thread>());
+
+    @Override
+    protected void setUp() throws Exception {
+        display = new PageDisplay();
+        display.setSize(400, 300);
+        display.validate();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        display.freeResources();
+    }
+
+    /**
+     * Painting only schedules the pages, the (possibly slow) cache lookup
+     * happens on the scaler's worker
+     */
+    public void testPagesAreNotRestoredOnThePaintingThread() throws Exception {
+        display.setPageSource(new RestorableSource());
+        for (int i = 0; i < 100 && screen.getRGB(200, 150) != Color.GREEN.getRGB(); i++) {
+            paint();
+            Thread.sleep(20);
+        }
+        assertEquals(Color.GREEN.getRGB(), screen.getRGB(200, 150));
+
+        final Thread[] edt = new Thread[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                edt[0] = Thread.currentThread();
+            }
+        });
+        assertFalse(restoringThreads.isEmpty());
+        assertFalse(restoringThreads.contains(edt[0]));
+    }
+
+    /**
+     * Paints the display to the screen image on the EDT (like Swing does)
+     */
+    private void paint() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                Graphics2D g = screen.createGraphics();
+                display.paintComponent(g);
+                g.dispose();
+            }
+        });
+    }
+
+    /**
+     * Page source whose pages are only drawn once they have been restored
+     */
+    class RestorableSource implements PageSource {
+
+        final Dimension pageSize = new Dimension(1000, 1400);
+
+        @Override
+        public int getPageCount() {
+            return 3;
+        }
+
+        @Override
+        public Dimension getPageSize(int pageIndex) {
+            return pageSize;
+        }
+
+        @Override
+        public Page getPage(int pageIndex) {
+            return new RestorablePage(pageSize);
+        }
+
+        @Override
+        public void freeResources() {
+            // --
+        }
+    }
+
+    /**
+     * Page which is green once it has been restored from the render cache
+     */
+    class RestorablePage implements PersistablePage {
+
+        final Dimension pageSize;
+        volatile boolean restored = false;
+
+        RestorablePage(Dimension pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public void setRenderCache(PersistentRenderCache cache, String contentHash, int pageIndex) {
+            // --
+        }
+
+        @Override
+        public boolean restoreFromRenderCache(int w, int h) {
+            restoringThreads.add(Thread.currentThread());
+            restored = true;
+            return true;
+        }
+
+        @Override
+        public void draw(Graphics2D g, int x, int y, int w, int h) {
+            g.setColor(restored ? Color.GREEN : Color.WHITE);
+            g.fillRect(x, y, w, h);
+        }
+
+        @Override
+        public boolean isScaled(int w, int h) {
+            return restored;
+        }
+
+        @Override
+        public void hiQualityScale(int w, int h) {
+            // --
+        }
+
+        @Override
+        public Dimension getPageSize() {
+            return pageSize;
+        }
+
+        @Override
+        public void freeResources() {
+            // --
+        }
+    }
+}
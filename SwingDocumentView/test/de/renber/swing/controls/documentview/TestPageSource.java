@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+
+import de.renber.swing.controls.documentview.types.Page;
+import de.renber.swing.controls.documentview.types.PageSource;
+
+/**
+ * Page source for tests whose pages are filled with the current page color
+ * and never need to be scaled
+ *
+ * @author berre
+ */
+class TestPageSource implements PageSource {
+
+    final int pageCount;
+    final Dimension pageSize;
+    // the color all pages are painted with
+    volatile Color pageColor = Color.BLUE;
+
+    TestPageSource(int pageCount, int pageWidth, int pageHeight) {
+        this.pageCount = pageCount;
+        this.pageSize = new Dimension(pageWidth, pageHeight);
+    }
+
+    @Override
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    @Override
+    public Dimension getPageSize(int pageIndex) {
+        return pageSize;
+    }
+
+    @Override
+    public Page getPage(int pageIndex) {
+        return new Page() {
+            @Override
+            public void draw(Graphics2D g, int x, int y, int w, int h) {
+                g.setColor(pageColor);
+                g.fillRect(x, y, w, h);
+            }
+
+            @Override
+            public boolean isScaled(int w, int h) {
+                return true;
+            }
+
+            @Override
+            public void hiQualityScale(int w, int h) {
+                // --
+            }
+
+            @Override
+            public Dimension getPageSize() {
+                return pageSize;
+            }
+
+            @Override
+            public void freeResources() {
+                // --
+            }
+        };
+    }
+
+    @Override
+    public void freeResources() {
+        // --
+    }
+}
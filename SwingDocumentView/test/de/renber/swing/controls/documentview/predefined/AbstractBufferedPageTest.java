@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.predefined;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import de.renber.swing.controls.documentview.predefined.AbstractBufferedPage.ColorMode;
+import de.renber.swing.controls.documentview.types.RegionRenderablePage;
+import de.renber.swing.controls.documentview.types.caching.CompressedPageCache;
+import de.renber.swing.controls.documentview.types.caching.OffHeapPixelStore;
+import de.renber.swing.controls.documentview.types.caching.PageSpillCache;
+import de.renber.swing.controls.documentview.types.caching.PersistentRenderCache;
+
+/**
+ * Tests how the colour mode of an AbstractBufferedPage interacts with the caches
+ *
+ * @author berre
+ */
+public class AbstractBufferedPageTest extends TestCase {
+
+    static final String HASH = "0123abcd";
+    static final int WIDTH = 200;
+    static final int HEIGHT = 300;
+
+    File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("buffered-page-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Renderings are stored in the render cache in the colour mode they are shown in
+     * and only restored in that mode
+     */
+    public void testRenderCacheKeepsTheColourMode() {
+        PersistentRenderCache cache = new PersistentRenderCache(directory);
+        RedPage page = new RedPage(ColorMode.GRAYSCALE);
+        page.setRenderCache(cache, HASH, 0);
+        page.hiQualityScale(WIDTH, HEIGHT);
+
+        RedPage restored = new RedPage(ColorMode.GRAYSCALE);
+        restored.setRenderCache(cache, HASH, 0);
+        assertTrue(restored.restoreFromRenderCache(WIDTH, HEIGHT));
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, restored.levels[0].image.getType());
+        assertGray(draw(restored));
+
+        RedPage colored = new RedPage(ColorMode.COLOR);
+        colored.setRenderCache(cache, HASH, 0);
+        assertFalse(colored.restoreFromRenderCache(WIDTH, HEIGHT));
+    }
+
+    /**
+     * Changing the colour mode drops the renderings of the previous mode
+     */
+    public void testChangingTheColourModeDropsRenderings() {
+        CompressedPageCache compressed = new CompressedPageCache();
+        RedPage page = new RedPage(ColorMode.COLOR);
+        page.setCompressedCache(compressed, 0);
+        page.hiQualityScale(WIDTH, HEIGHT);
+        page.releaseBuffer();
+        assertTrue(compressed.contains(0, WIDTH, HEIGHT));
+
+        page.hiQualityScale(WIDTH, HEIGHT);
+        page.setColorMode(ColorMode.GRAYSCALE);
+        assertFalse(page.isScaled(WIDTH, HEIGHT));
+        assertFalse(compressed.contains(0, WIDTH, HEIGHT));
+
+        page.hiQualityScale(WIDTH, HEIGHT);
+        assertGray(draw(page));
+    }
+
+    /**
+     * A page which is created for the same index in another colour mode does not
+     * restore the colour renderings of its predecessor
+     */
+    public void testColourRenderingsAreNotRestoredInGrayscale() {
+        CompressedPageCache compressed = new CompressedPageCache();
+        RedPage page = new RedPage(ColorMode.COLOR);
+        page.setCompressedCache(compressed, 0);
+        page.hiQualityScale(WIDTH, HEIGHT);
+        page.releaseBuffer();
+
+        RedPage gray = new RedPage(ColorMode.GRAYSCALE);
+        gray.setCompressedCache(compressed, 0);
+        gray.hiQualityScale(WIDTH, HEIGHT);
+        assertEquals(1, gray.renderCount);
+        assertGray(draw(gray));
+    }
+
+    /**
+     * Without a pixel store renderings (including the ones restored from the spill cache)
+     * are kept in heap images, which are drawn without copying their pixels on every paint
+     */
+    public void testRenderingsAreKeptOnTheHeapByDefault() {
+        PageSpillCache spill = new PageSpillCache(WIDTH * HEIGHT * 4);
+        try {
+            RedPage page = new RedPage(ColorMode.COLOR);
+            assertNull(page.getPixelStore());
+            page.setSpillCache(spill, 0);
+            page.hiQualityScale(WIDTH, HEIGHT);
+            assertEquals(WIDTH * HEIGHT * 4, page.getBufferSize());
+            assertEquals(0, page.getOffHeapBufferSize());
+            assertNotNull(page.levels[0].image);
+
+            page.releaseBuffer();
+            assertTrue(page.restoreFromSpill(WIDTH, HEIGHT));
+            assertNotNull(page.levels[0].image);
+            assertNull(page.levels[0].offHeapImage);
+            assertEquals(0xff0000, draw(page).getRGB(WIDTH / 2, HEIGHT / 2) & 0xffffff);
+        } finally {
+            spill.close();
+        }
+    }
+
+    /**
+     * With a pixel store the renderings are moved out of the heap
+     */
+    public void testRenderingsAreMovedToThePixelStore() {
+        RedPage page = new RedPage(ColorMode.COLOR);
+        page.setPixelStore(new OffHeapPixelStore(16L * 1024 * 1024));
+        page.hiQualityScale(WIDTH, HEIGHT);
+        assertEquals(0, page.getBufferSize());
+        assertTrue(page.getOffHeapBufferSize() >= WIDTH * HEIGHT * 4);
+        assertEquals(0xff0000, draw(page).getRGB(WIDTH / 2, HEIGHT / 2) & 0xffffff);
+        page.releaseBuffer();
+    }
+
+    /**
+     * Tiles are kept in the raster type of the wrapped page's colour mode
+     */
+    public void testTilesUseTheColourMode() {
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, renderTile(new RedPage(ColorMode.GRAYSCALE)).getType());
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, renderTile(new RedPage(ColorMode.MONOCHROME)).getType());
+        assertEquals(BufferedImage.TYPE_INT_RGB, renderTile(new RedPage(ColorMode.COLOR)).getType());
+        // ColorMode.AUTO keeps tiles without colour in grayscale
+        assertEquals(BufferedImage.TYPE_INT_RGB, renderTile(new RedPage(ColorMode.AUTO)).getType());
+        RedPage grayPage = new RedPage(ColorMode.AUTO);
+        grayPage.color = Color.DARK_GRAY;
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, renderTile(grayPage).getType());
+    }
+
+    /**
+     * Renders the page in tiles and returns the top left one
+     */
+    private static BufferedImage renderTile(RedPage page) {
+        TiledPage tiled = new TiledPage(page, 100, 0);
+        tiled.hiQualityScale(WIDTH, HEIGHT);
+        BufferedImage tile = tiled.tiles.get(0, 0);
+        assertNotNull(tile);
+        return tile;
+    }
+
+    private static BufferedImage draw(AbstractBufferedPage page) {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        page.draw(g, 0, 0, WIDTH, HEIGHT);
+        g.dispose();
+        return img;
+    }
+
+    private static void assertGray(BufferedImage img) {
+        int rgb = img.getRGB(WIDTH / 2, HEIGHT / 2);
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        assertTrue("Not gray: " + Integer.toHexString(rgb), r == g && g == b && r != 0xff);
+    }
+
+    /**
+     * A page which is filled with red (or another colour)
+     */
+    static class RedPage extends AbstractBufferedPage implements RegionRenderablePage {
+
+        int renderCount = 0;
+        Color color = Color.RED;
+
+        RedPage(ColorMode colorMode) {
+            setColorMode(colorMode);
+        }
+
+        @Override
+        protected BufferedImage render(int w, int h) {
+            renderCount++;
+            BufferedImage img = new BufferedImage(w, h, getImageType());
+            Graphics2D g = img.createGraphics();
+            g.setColor(color);
+            g.fillRect(0, 0, w, h);
+            g.dispose();
+            return img;
+        }
+
+        @Override
+        public void renderRegion(Graphics2D g, int w, int h, Rectangle region) {
+            g.setColor(color);
+            g.fillRect(0, 0, region.width, region.height);
+        }
+
+        @Override
+        protected void drawPlaceholder(Graphics2D g, int x, int y, int w, int h) {
+            g.setColor(Color.WHITE);
+            g.fillRect(x, y, w, h);
+        }
+
+        @Override
+        public Dimension getPageSize() {
+            return new Dimension(WIDTH, HEIGHT);
+        }
+    }
+}
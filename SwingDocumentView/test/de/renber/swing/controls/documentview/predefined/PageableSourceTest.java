@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.predefined;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.print.Book;
+import java.awt.print.PageFormat;
+import java.awt.print.Paper;
+import java.awt.print.Printable;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import de.renber.swing.controls.documentview.types.ArrayPageGeometry;
+import de.renber.swing.controls.documentview.types.PageGeometry;
+import de.renber.swing.controls.documentview.types.PageVisibilityBuffer;
+import de.renber.swing.controls.documentview.types.PreviewLayout;
+import de.renber.swing.controls.documentview.types.RunLengthPageGeometry;
+
+/**
+ * Tests the page size runs of the PageableSource and the layouts which use them
+ *
+ * @author berre
+ */
+public class PageableSourceTest extends TestCase {
+
+    static final Printable EMPTY_PRINTABLE = new Printable() {
+        @Override
+        public int print(Graphics graphics, PageFormat pageFormat, int pageIndex) {
+            return PAGE_EXISTS;
+        }
+    };
+
+    /**
+     * Consecutive pages of the same size form a run, even if they use different PageFormats
+     */
+    public void testPagesAreGroupedIntoRuns() {
+        PageFormat a4 = createFormat(595, 842, PageFormat.PORTRAIT);
+        PageFormat letter = createFormat(612, 792, PageFormat.PORTRAIT);
+        Book book = new Book();
+        book.append(EMPTY_PRINTABLE, a4, 3);
+        book.append(EMPTY_PRINTABLE, letter, 2);
+        book.append(EMPTY_PRINTABLE, createFormat(612, 792, PageFormat.PORTRAIT), 1);
+        book.append(EMPTY_PRINTABLE, a4, 4);
+
+        PageableSource source = new PageableSource(book);
+        assertEquals(3, source.getPageSizeRunCount());
+        assertEquals(3, source.getPageSizeRunLength(0));
+        assertEquals(3, source.getPageSizeRunLength(1));
+        assertEquals(4, source.getPageSizeRunLength(2));
+        assertEquals(source.getPageSize(0), source.getPageSizeOfRun(0));
+        assertEquals(source.getPageSize(3), source.getPageSizeOfRun(1));
+        assertEquals(source.getPageSize(9), source.getPageSizeOfRun(2));
+    }
+
+    /**
+     * The layouts place the pages of a run-length geometry exactly like the pages
+     * of the equivalent array geometry
+     */
+    public void testLayoutsMatchTheArrayGeometry() {
+        Book book = new Book();
+        book.append(EMPTY_PRINTABLE, createFormat(595, 842, PageFormat.PORTRAIT), 57);
+        book.append(EMPTY_PRINTABLE, createFormat(595, 842, PageFormat.LANDSCAPE), 3);
+        book.append(EMPTY_PRINTABLE, createFormat(420, 595, PageFormat.PORTRAIT), 1);
+        book.append(EMPTY_PRINTABLE, createFormat(595, 842, PageFormat.PORTRAIT), 40);
+        PageableSource source = new PageableSource(book);
+
+        PageGeometry runs = getRunGeometry(source);
+        PageGeometry array = getArrayGeometry(source);
+        assertEquals(4, runs.getRunCount());
+        assertEquals(array.getPageCount(), runs.getPageCount());
+
+        PreviewLayout[] layouts = { new SinglePagePreviewLayout(), new FacingPagePreviewLayout(),
+                new ContinuousPagePreviewLayout(), new ContinuousFacingPagePreviewLayout() };
+        Dimension viewPort = new Dimension(800, 600);
+        PageVisibilityBuffer runPages = new PageVisibilityBuffer();
+        PageVisibilityBuffer arrayPages = new PageVisibilityBuffer();
+        for (PreviewLayout layout : layouts) {
+            String name = layout.getClass().getSimpleName();
+            for (float zoom : new float[] { 0.2f, 1f, 1.7f }) {
+                Dimension space = layout.getNeededSpace(zoom, array);
+                assertEquals(name, space, layout.getNeededSpace(zoom, runs));
+
+                for (int y = 0; y < space.height; y += Math.max(1, space.height / 200)) {
+                    Point scroll = new Point(Math.min(50, space.width), y);
+                    layout.getVisiblePages(viewPort, zoom, runs, scroll, runPages);
+                    layout.getVisiblePages(viewPort, zoom, array, scroll, arrayPages);
+                    assertEquals(name, arrayPages.size(), runPages.size());
+                    for (int i = 0; i < arrayPages.size(); i++) {
+                        assertEquals(name, arrayPages.getPageIndex(i), runPages.getPageIndex(i));
+                        assertEquals(name, arrayPages.getVisiblePercentage(i), runPages.getVisiblePercentage(i), 0.0001f);
+                    }
+                }
+
+                for (int page = 0; page < array.getPageCount(); page++) {
+                    assertEquals(name, layout.getPageBounds(viewPort, zoom, array, new Point(0, 0), page),
+                            layout.getPageBounds(viewPort, zoom, runs, new Point(0, 0), page));
+                    assertEquals(name, layout.ensureVisible(viewPort, zoom, array, page),
+                            layout.ensureVisible(viewPort, zoom, runs, page));
+                }
+            }
+        }
+    }
+
+    /**
+     * The offsets and the element lookup of the OffsetIndex match a simple summation
+     */
+    public void testOffsetIndexMatchesTheSummedExtents() {
+        Random random = new Random(42);
+        int spacing = 7;
+        OffsetIndex index = new OffsetIndex(spacing, 1);
+        int[] extents = new int[500];
+        int count = 0;
+        while (count < extents.length) {
+            int runLength = Math.min(extents.length - count, 1 + random.nextInt(30));
+            int extent = random.nextInt(4) == 0 ? 0 : 100 + random.nextInt(3) * 50;
+            index.add(runLength, extent);
+            for (int i = 0; i < runLength; i++) {
+                extents[count++] = extent;
+            }
+        }
+        assertEquals(extents.length, index.getCount());
+
+        int offset = 0;
+        int[] offsets = new int[extents.length + 1];
+        for (int i = 0; i < extents.length; i++) {
+            offsets[i] = offset;
+            assertEquals(offset, index.getOffset(i));
+            offset += extents[i] + spacing;
+        }
+        offsets[extents.length] = offset;
+        assertEquals(offset, index.getTotal());
+
+        for (int position = -10; position <= offset + 10; position += 3) {
+            // the first element which ends (including its spacing) at or after the position
+            int expected = 0;
+            while (expected < extents.length && offsets[expected + 1] < position) {
+                expected++;
+            }
+            assertEquals("position " + position, expected, index.findElement(position));
+        }
+    }
+
+    private static PageFormat createFormat(double width, double height, int orientation) {
+        Paper paper = new Paper();
+        paper.setSize(width, height);
+        PageFormat format = new PageFormat();
+        format.setPaper(paper);
+        format.setOrientation(orientation);
+        return format;
+    }
+
+    private static PageGeometry getRunGeometry(PageableSource source) {
+        int runCount = source.getPageSizeRunCount();
+        int[] runLengths = new int[runCount];
+        int[] widths = new int[runCount];
+        int[] heights = new int[runCount];
+        for (int r = 0; r < runCount; r++) {
+            runLengths[r] = source.getPageSizeRunLength(r);
+            widths[r] = source.getPageSizeOfRun(r).width;
+            heights[r] = source.getPageSizeOfRun(r).height;
+        }
+        return new RunLengthPageGeometry(runLengths, widths, heights);
+    }
+
+    private static PageGeometry getArrayGeometry(PageableSource source) {
+        int[] widths = new int[source.getPageCount()];
+        int[] heights = new int[source.getPageCount()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = source.getPageSize(i).width;
+            heights[i] = source.getPageSize(i).height;
+        }
+        return new ArrayPageGeometry(widths, heights);
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the eviction of the PageCache
+ *
+ * @author berre
+ */
+public class PageCacheTest extends TestCase {
+
+    /**
+     * Evicted pages are released in the background without holding the cache's lock
+     */
+    public void testEvictedPagesAreReleasedOutsideOfTheLock() throws Exception {
+        PageCache cache = new PageCache(1000, 0);
+        TestPage first = new TestPage(cache, 600);
+        TestPage second = new TestPage(cache, 600);
+        cache.update(first);
+        cache.update(second);
+
+        assertEquals(600, cache.getUsedBytes());
+        first.awaitRelease();
+        assertNotSame(Thread.currentThread(), first.releasingThread);
+        assertFalse(first.releasedWithLock);
+        assertFalse(second.released);
+    }
+
+    /**
+     * A page which has been pinned before its eviction has been carried out keeps its buffer
+     * (and is accounted for again)
+     */
+    public void testPinnedPagesAreNotReleased() throws Exception {
+        PageCache cache = new PageCache(1000, 0);
+        TestPage first = new TestPage(cache, 600);
+        TestPage second = new TestPage(cache, 600);
+        cache.update(first);
+        synchronized (cache) {
+            // evict the first page and pin it again before the releaser gets the lock
+            cache.update(second);
+            cache.setPinnedPages(Collections.singletonList(first));
+        }
+
+        // the pages are released in the order of their eviction
+        TestPage third = new TestPage(cache, 600);
+        cache.update(third);
+        second.awaitRelease();
+        assertFalse(first.released);
+        synchronized (cache) {
+            assertTrue(cache.entries.containsKey(first));
+        }
+    }
+
+    /**
+     * A page with a buffer of a fixed size which records its release
+     */
+    static class TestPage implements CacheablePage {
+
+        final PageCache cache;
+        final long size;
+        volatile boolean released = false;
+        volatile boolean releasedWithLock;
+        volatile Thread releasingThread;
+
+        TestPage(PageCache cache, long size) {
+            this.cache = cache;
+            this.size = size;
+        }
+
+        synchronized void awaitRelease() throws InterruptedException {
+            long end = System.currentTimeMillis() + 5000;
+            while (!released && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+            assertTrue(released);
+        }
+
+        @Override
+        public long getBufferSize() {
+            return released ? 0 : size;
+        }
+
+        @Override
+        public synchronized void releaseBuffer() {
+            releasingThread = Thread.currentThread();
+            releasedWithLock = Thread.holdsLock(cache);
+            released = true;
+            notifyAll();
+        }
+
+        @Override
+        public void draw(Graphics2D g, int x, int y, int w, int h) {
+            // --
+        }
+
+        @Override
+        public boolean isScaled(int w, int h) {
+            return !released;
+        }
+
+        @Override
+        public void hiQualityScale(int w, int h) {
+            // --
+        }
+
+        @Override
+        public Dimension getPageSize() {
+            return new Dimension(100, 100);
+        }
+
+        @Override
+        public void freeResources() {
+            releaseBuffer();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the PageSpillCache
+ *
+ * @author berre
+ */
+public class PageSpillCacheTest extends TestCase {
+
+    PageSpillCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        cache = new PageSpillCache(1024 * 1024);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cache.close();
+    }
+
+    /**
+     * A rendering is not returned while its pixels are being written
+     */
+    public void testRenderingIsNotReturnedBeforeItHasBeenWritten() {
+        final boolean[] visible = new boolean[1];
+        BufferedImage img = new BufferedImage(20, 10, BufferedImage.TYPE_3BYTE_BGR) {
+            @Override
+            public int[] getRGB(int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {
+                if (startY == 0)
+                    visible[0] = cache.contains(0, 20, 10) || cache.get(0, 20, 10) != null;
+                return super.getRGB(startX, startY, w, h, rgbArray, offset, scansize);
+            }
+        };
+        img.setRGB(5, 5, 0xff0000);
+
+        assertTrue(cache.put(0, img));
+        assertFalse(visible[0]);
+        assertTrue(cache.contains(0, 20, 10));
+
+        OffHeapImage restored = cache.get(0, 20, 10);
+        assertEquals(0xff0000, restored.getImage().getRGB(5, 5) & 0xffffff);
+        restored.release();
+    }
+
+    /**
+     * Only the current user may access the scratch file
+     */
+    public void testScratchFileIsPrivate() throws Exception {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+            return;
+
+        cache.put(0, new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cache.file.toPath())));
+    }
+}
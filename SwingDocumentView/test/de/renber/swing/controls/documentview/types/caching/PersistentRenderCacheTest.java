@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.caching;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the PersistentRenderCache
+ *
+ * @author berre
+ */
+public class PersistentRenderCacheTest extends TestCase {
+
+    static final String HASH = "0123abcd";
+
+    File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("render-cache-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    /**
+     * When a previous session left two renderings of the same bucket, the newer one is used
+     * and the older one is deleted
+     */
+    public void testScanKeepsTheNewestRenderingOfABucket() throws Exception {
+        // renderings are written to separate directories since put() replaces the rendering of a bucket
+        File older = store(600, 0xFF112233);
+        File newer = store(700, 0xFF445566);
+        older.setLastModified(System.currentTimeMillis() - 60000);
+        newer.setLastModified(System.currentTimeMillis() - 1000);
+
+        PersistentRenderCache cache = new PersistentRenderCache(directory);
+        OffHeapImage img = cache.get(HASH, 0, 700, 900);
+        assertNotNull(img);
+        assertEquals(700, img.getWidth());
+        assertEquals(0xFF445566, img.getImage().getRGB(10, 10));
+        assertEquals(newer.length(), cache.getUsedBytes());
+        assertFalse(older.exists());
+    }
+
+    public void testDefaultDirectoryIsNotShared() {
+        File tmp = new File(System.getProperty("java.io.tmpdir")).getAbsoluteFile();
+        for (File f = PersistentRenderCache.getDefaultDirectory().getAbsoluteFile(); f != null; f = f.getParentFile()) {
+            assertFalse(f.equals(tmp));
+        }
+    }
+
+    public void testDirectoryIsCreatedWithOwnerOnlyAccess() throws Exception {
+        File cacheDirectory = new File(directory, "cache");
+        PersistentRenderCache cache = new PersistentRenderCache(cacheDirectory);
+        assertTrue(cache.put(HASH, 0, createImage(100, 0xFF000000)));
+
+        assertTrue(cacheDirectory.isDirectory());
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheDirectory.toPath())));
+        }
+    }
+
+    /**
+     * Stores a rendering of page 0 with the given width and moves it to the test directory
+     */
+    private File store(int width, int rgb) throws IOException {
+        File tmp = Files.createTempDirectory("render-cache-test").toFile();
+        try {
+            assertTrue(new PersistentRenderCache(tmp).put(HASH, 0, createImage(width, rgb)));
+            File[] files = tmp.listFiles();
+            assertEquals(1, files.length);
+            File file = new File(directory, files[0].getName());
+            assertTrue(files[0].renameTo(file));
+            return file;
+        } finally {
+            delete(tmp);
+        }
+    }
+
+    private static BufferedImage createImage(int width, int rgb) {
+        BufferedImage img = new BufferedImage(width, width * 9 / 7, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, rgb);
+            }
+        }
+        return img;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * This file is part of the Java SwingPrintPreview Library
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Ren Bergelt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *******************************************************************************/
+package de.renber.swing.controls.documentview.types.scaling;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import de.renber.swing.controls.documentview.types.Page;
+
+/**
+ * Tests the PageScaler
+ *
+ * @author berre
+ */
+public class PageScalerTest extends TestCase {
+
+    static final int PAGE_COUNT = 8;
+
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final CountDownLatch scaled = new CountDownLatch(PAGE_COUNT);
+
+    /**
+     * In virtual thread mode no more jobs run at the same time than there are
+     * worker threads unless more concurrent jobs have been allowed
+     */
+    public void testVirtualThreadsRespectTheParallelism() throws Exception {
+        PageScaler scaler = new PageScaler();
+        assertEquals(1, scaler.getMaxConcurrentJobs());
+        scaler.setVirtualThreads(true);
+        scaler.enable();
+        try {
+            for (int i = 0; i < PAGE_COUNT; i++) {
+                scaler.enqeue(new SlowPage(), new Dimension(100, 100), PageScaler.HIGHEST_PRIORITY);
+            }
+            assertTrue(scaled.await(10, TimeUnit.SECONDS));
+        } finally {
+            scaler.disable();
+        }
+        assertEquals(1, maxRunning.get());
+
+        scaler.setParallelism(3);
+        assertEquals(3, scaler.getMaxConcurrentJobs());
+        scaler.setMaxConcurrentJobs(5);
+        assertEquals(5, scaler.getMaxConcurrentJobs());
+    }
+
+    /**
+     * Page whose rendering takes a while and which records how many pages are rendered at once
+     */
+    class SlowPage implements Page {
+
+        volatile boolean done = false;
+
+        @Override
+        public void hiQualityScale(int w, int h) {
+            int n = running.incrementAndGet();
+            int max;
+            while ((max = maxRunning.get()) < n && !maxRunning.compareAndSet(max, n)) {
+                // retry
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                // --
+            }
+            running.decrementAndGet();
+            done = true;
+            scaled.countDown();
+        }
+
+        @Override
+        public boolean isScaled(int w, int h) {
+            return done;
+        }
+
+        @Override
+        public void draw(Graphics2D g, int x, int y, int w, int h) {
+            // --
+        }
+
+        @Override
+        public Dimension getPageSize() {
+            return new Dimension(100, 100);
+        }
+
+        @Override
+        public void freeResources() {
+            // --
+        }
+    }
+}